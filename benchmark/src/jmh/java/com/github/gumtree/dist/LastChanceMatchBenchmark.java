@@ -0,0 +1,94 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtree.dist;
+
+import java.util.Random;
+
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the last chance match of the bottom-up matchers on containers below the default size
+ * threshold, with a reused matcher or a new matcher and a new store for each container.
+ * The allocation rates are reported when running with the gc profiler, <code>-prof gc</code>.
+ */
+public class LastChanceMatchBenchmark {
+    @State(Scope.Benchmark)
+    public static class TreeData {
+        @Param({"100", "500", "900"})
+        public int size;
+
+        public ITree src;
+
+        public ITree dst;
+
+        public final ZsMatcher matcher = new ZsMatcher();
+
+        @Setup
+        public void build() {
+            Random random = new Random(size);
+            src = new Tree(TypeSet.type("block"));
+            while (src.getMetrics().size < size) {
+                src.addChild(statement(random, 4));
+                src.updateMetrics();
+            }
+            dst = src.deepCopy();
+            for (ITree t : dst.preOrder())
+                if (t.isLeaf() && random.nextInt(10) == 0)
+                    t.setLabel("changed");
+            dst.getMetrics();
+        }
+
+        private static ITree statement(Random random, int depth) {
+            if (depth == 0 || random.nextInt(5) == 0)
+                return new Tree(TypeSet.type("name"), "v" + random.nextInt(30));
+            ITree statement = new Tree(TypeSet.type("expression" + random.nextInt(3)));
+            int children = 1 + random.nextInt(3);
+            for (int i = 0; i < children; i++)
+                statement.addChild(statement(random, depth - 1));
+            return statement;
+        }
+    }
+
+    @Benchmark
+    public void reusedMatcher(TreeData d, Blackhole bh) {
+        MappingStore mappings = new MappingStore(d.src, d.dst);
+        d.matcher.addAllowedMappings(d.src, d.dst, mappings);
+        bh.consume(mappings);
+    }
+
+    @Benchmark
+    public void newMatcherAndStore(TreeData d, Blackhole bh) {
+        MappingStore mappings = new MappingStore(d.src, d.dst);
+        MappingStore zsMappings = new ZsMatcher().match(d.src, d.dst, new MappingStore(d.src, d.dst));
+        for (Mapping m : zsMappings)
+            if (mappings.isMappingAllowed(m.first, m.second))
+                mappings.addMapping(m.first, m.second);
+        bh.consume(mappings);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares loading two versions of an XML tree, then matching them, with the regular and the lazy
+ * XML generators. The versions only differ by a few labels, as most versions of a file do.
+ */
+public class LazyXmlBenchmark {
+    @State(Scope.Benchmark)
+    public static class XmlData {
+        @Param({"10000", "100000", "1000000"})
+        public int size;
+
+        @Param({"false", "true"})
+        public boolean lazy;
+
+        public String src;
+
+        public String dst;
+
+        @Setup
+        public void build() {
+            Random random = new Random(size);
+            TreeContext ctx = new TreeContext();
+            ctx.setRoot(ctx.createTree(TypeSet.type("file")));
+            int nodes = 1;
+            while (nodes < size) {
+                ITree method = ctx.createTree(TypeSet.type("method"), "m" + nodes);
+                method.setParentAndUpdateChildren(ctx.getRoot());
+                nodes++;
+                for (int i = 0; i < 20 && nodes < size; i++, nodes += 4) {
+                    ITree statement = ctx.createTree(TypeSet.type("statement"));
+                    ITree assignment = ctx.createTree(TypeSet.type("assignment"), "=");
+                    ctx.createTree(TypeSet.type("name"), "v" + random.nextInt(100))
+                            .setParentAndUpdateChildren(assignment);
+                    ctx.createTree(TypeSet.type("literal"), Integer.toString(random.nextInt(size)))
+                            .setParentAndUpdateChildren(assignment);
+                    assignment.setParentAndUpdateChildren(statement);
+                    statement.setParentAndUpdateChildren(method);
+                }
+            }
+            src = TreeIoUtils.toXml(ctx).toString();
+            for (int i = 0; i < 20; i++) {
+                ITree method = ctx.getRoot().getChild(random.nextInt(ctx.getRoot().getChildren().size()));
+                if (!method.isLeaf())
+                    method.getChild(0).getChild(0).getChild(1).setLabel("changed");
+            }
+            dst = TreeIoUtils.toXml(ctx).toString();
+        }
+
+        TreeGenerator generator() {
+            return lazy ? TreeIoUtils.fromLazyXml() : TreeIoUtils.fromXml();
+        }
+    }
+
+    @Benchmark
+    public void loadAndMatchTopDown(XmlData d, Blackhole bh) throws IOException {
+        ITree src = d.generator().generateFrom().string(d.src).getRoot();
+        ITree dst = d.generator().generateFrom().string(d.dst).getRoot();
+        bh.consume(new GreedySubtreeMatcher().match(src, dst).size());
+    }
+
+    @Benchmark
+    public void loadAndMatch(XmlData d, Blackhole bh) throws IOException {
+        ITree src = d.generator().generateFrom().string(d.src).getRoot();
+        ITree dst = d.generator().generateFrom().string(d.dst).getRoot();
+        bh.consume(new CompositeMatchers.ClassicGumtree().match(src, dst).size());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtree.dist;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the queries and the iterations of a mapping store where every other node of a
+ * tree is mapped to its copy.
+ */
+public class MappingStoreBenchmark {
+    @State(Scope.Benchmark)
+    public static class MappingData {
+        @Param({"10000", "100000"})
+        public int size;
+
+        public ITree src;
+
+        public ITree dst;
+
+        public MappingStore mappings;
+
+        @Setup
+        public void build() {
+            src = bushy(10, size);
+            dst = src.deepCopy();
+            mappings = new MappingStore(src, dst);
+            Iterator<ITree> it = dst.preOrder().iterator();
+            boolean mapped = true;
+            for (ITree t : src.preOrder()) {
+                ITree other = it.next();
+                if (mapped)
+                    mappings.addMapping(t, other);
+                mapped = !mapped;
+            }
+        }
+
+        private static ITree bushy(int arity, int size) {
+            ITree root = new Tree(TypeSet.type("node"), "0");
+            Deque<ITree> queue = new ArrayDeque<>();
+            queue.add(root);
+            for (int i = 1; i < size; i++) {
+                ITree parent = queue.peek();
+                ITree child = new Tree(TypeSet.type("node"), Integer.toString(i));
+                parent.addChild(child);
+                queue.add(child);
+                if (parent.getChildren().size() == arity)
+                    queue.poll();
+            }
+            return root;
+        }
+    }
+
+    @Benchmark
+    public void isSrcMapped(MappingData d, Blackhole bh) {
+        for (ITree t : d.src.preOrder())
+            bh.consume(d.mappings.isSrcMapped(t));
+    }
+
+    @Benchmark
+    public void getDstForSrc(MappingData d, Blackhole bh) {
+        for (ITree t : d.src.preOrder())
+            bh.consume(d.mappings.getDstForSrc(t));
+    }
+
+    @Benchmark
+    public void iterateMappings(MappingData d, Blackhole bh) {
+        for (Mapping m : d.mappings)
+            bh.consume(m.second);
+    }
+
+    @Benchmark
+    public void iterateNumbers(MappingData d, Blackhole bh) {
+        MappingStore ms = d.mappings;
+        for (int i = ms.nextMappedSrc(0); i != MappingStore.NO_NODE; i = ms.nextMappedSrc(i + 1))
+            bh.consume(ms.getDstForSrc(i));
+    }
+}
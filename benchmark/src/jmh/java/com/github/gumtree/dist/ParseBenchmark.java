@@ -0,0 +1,116 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import java.io.IOException;
+
+import com.github.gumtreediff.gen.antlr3.json.AntlrJsonTreeGenerator;
+import com.github.gumtreediff.gen.jdt.JdtTreeGenerator;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the parse throughput of the JDT and ANTLR generators on generated sources, and the
+ * creation of the same trees node by node or with a {@link TreeContext.Builder}.
+ */
+public class ParseBenchmark {
+    @State(Scope.Benchmark)
+    public static class Sources {
+        @Param({"100", "1000"})
+        public int size;
+
+        public String java;
+
+        public String json;
+
+        public ITree javaTree;
+
+        @Setup
+        public void generate() throws IOException {
+            StringBuilder b = new StringBuilder("public class Generated {\n");
+            for (int i = 0; i < size; i++) {
+                b.append("    private int field").append(i).append(" = ").append(i).append(";\n");
+                b.append("    public int method").append(i).append("(int a, int b) {\n");
+                b.append("        if (a > b && field").append(i).append(" != 0)\n");
+                b.append("            return a * field").append(i).append(" + b;\n");
+                b.append("        return call(a, b, \"").append(i).append("\");\n");
+                b.append("    }\n");
+            }
+            java = b.append("}\n").toString();
+
+            b = new StringBuilder("[\n");
+            for (int i = 0; i < size; i++) {
+                if (i > 0)
+                    b.append(",\n");
+                b.append("  {\"id\": ").append(i).append(", \"name\": \"item").append(i)
+                        .append("\", \"tags\": [\"a\", \"b\", true, null], \"price\": ").append(i).append(".5}");
+            }
+            json = b.append("\n]\n").toString();
+
+            javaTree = new JdtTreeGenerator().generateFrom().string(java).getRoot();
+        }
+    }
+
+    @Benchmark
+    public TreeContext parseJdt(Sources s) throws IOException {
+        return new JdtTreeGenerator().generateFrom().string(s.java);
+    }
+
+    @Benchmark
+    public TreeContext parseAntlrJson(Sources s) throws IOException {
+        return new AntlrJsonTreeGenerator().generateFrom().string(s.json);
+    }
+
+    @Benchmark
+    public TreeContext createNodeByNode(Sources s) {
+        TreeContext context = new TreeContext();
+        create(context, s.javaTree, null);
+        return context;
+    }
+
+    @Benchmark
+    public TreeContext createWithBuilder(Sources s) {
+        TreeContext context = new TreeContext();
+        build(context.builder(s.javaTree.getMetrics().size), s.javaTree);
+        return context;
+    }
+
+    // Like the generators before the builder, each node is attached to its parent when created.
+    private static void create(TreeContext context, ITree model, ITree parent) {
+        ITree t = context.createTree(model.getType(), model.getLabel());
+        t.setPos(model.getPos());
+        t.setLength(model.getLength());
+        if (parent == null)
+            context.setRoot(t);
+        else
+            t.setParentAndUpdateChildren(parent);
+        for (ITree c : model.getChildren())
+            create(context, c, t);
+    }
+
+    private static void build(TreeContext.Builder builder, ITree model) {
+        builder.startNode(model.getType(), model.getLabel(), model.getPos(), model.getLength());
+        for (ITree c : model.getChildren())
+            build(builder, c);
+        builder.endNode();
+    }
+}
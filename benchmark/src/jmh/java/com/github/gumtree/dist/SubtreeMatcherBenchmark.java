@@ -0,0 +1,113 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtree.dist;
+
+import java.util.Random;
+
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.MultiMappingStore;
+import com.github.gumtreediff.matchers.heuristic.gt.AbstractSubtreeMatcher;
+import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the top-down phase of GumTree on files made of many similar statements, where each
+ * height holds many candidate subtrees.
+ */
+public class SubtreeMatcherBenchmark {
+    @State(Scope.Benchmark)
+    public static class TreeData {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int size;
+
+        public ITree src;
+
+        public ITree dst;
+
+        @Setup
+        public void build() {
+            Random random = new Random(size);
+            src = file(random, size);
+            dst = src.deepCopy();
+            for (ITree t : dst.preOrder())
+                if (t.isLeaf() && random.nextInt(20) == 0)
+                    t.setLabel("changed");
+            src.getMetrics();
+            dst.getMetrics();
+        }
+
+        private static ITree file(Random random, int size) {
+            ITree file = new Tree(TypeSet.type("file"));
+            int nodes = 1;
+            while (nodes < size) {
+                ITree method = new Tree(TypeSet.type("method"), "m" + nodes);
+                file.addChild(method);
+                nodes++;
+                for (int i = 0; i < 20 && nodes < size; i++, nodes += 4) {
+                    ITree statement = new Tree(TypeSet.type("statement"));
+                    ITree assignment = new Tree(TypeSet.type("assignment"), "=");
+                    assignment.addChild(new Tree(TypeSet.type("name"), "v" + random.nextInt(100)));
+                    assignment.addChild(new Tree(TypeSet.type("literal"), Integer.toString(random.nextInt(size))));
+                    statement.addChild(assignment);
+                    method.addChild(statement);
+                }
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Only finds the candidate mappings, without choosing among them.
+     */
+    private static class CandidateMatcher extends AbstractSubtreeMatcher {
+        int candidates;
+
+        @Override
+        public void filterMappings(MultiMappingStore multiMappings) {
+            candidates = multiMappings.size();
+        }
+    }
+
+    @Benchmark
+    public void findCandidates(TreeData d, Blackhole bh) {
+        CandidateMatcher matcher = new CandidateMatcher();
+        matcher.match(d.src, d.dst, new MappingStore(d.src, d.dst));
+        bh.consume(matcher.candidates);
+    }
+
+    @Benchmark
+    public void findCandidatesInParallel(TreeData d, Blackhole bh) {
+        CandidateMatcher matcher = new CandidateMatcher();
+        matcher.setParallelism(Runtime.getRuntime().availableProcessors());
+        matcher.match(d.src, d.dst, new MappingStore(d.src, d.dst));
+        bh.consume(matcher.candidates);
+    }
+
+    @Benchmark
+    public void greedySubtreeMatcher(TreeData d, Blackhole bh) {
+        bh.consume(new GreedySubtreeMatcher().match(d.src, d.dst).size());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import java.util.Iterator;
+
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TreeUtils;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the explicit-stack traversals of {@link TreeUtils} with recursive
+ * and iterator-based traversals, on a deep chain and on a bushy tree.
+ */
+public class TraversalBenchmark {
+    @State(Scope.Benchmark)
+    public static class TreeData {
+        @Param({"chain", "bushy"})
+        public String shape;
+
+        public ITree tree;
+
+        @Setup
+        public void build() {
+            if ("chain".equals(shape))
+                tree = chain(2000);
+            else
+                tree = bushy(8, 5);
+        }
+
+        // Kept below the depth where the recursive traversals overflow with a default stack.
+        private static ITree chain(int depth) {
+            ITree root = new Tree(TypeSet.type("node"), "0");
+            ITree current = root;
+            for (int i = 1; i < depth; i++) {
+                ITree child = new Tree(TypeSet.type("node"), Integer.toString(i));
+                current.addChild(child);
+                current = child;
+            }
+            return root;
+        }
+
+        private static ITree bushy(int arity, int depth) {
+            ITree root = new Tree(TypeSet.type("node"), Integer.toString(depth));
+            if (depth > 0)
+                for (int i = 0; i < arity; i++)
+                    root.addChild(bushy(arity, depth - 1));
+            return root;
+        }
+    }
+
+    @Benchmark
+    public void preOrderRecursive(TreeData d, Blackhole bh) {
+        preOrder(d.tree, bh);
+    }
+
+    @Benchmark
+    public void preOrderIterator(TreeData d, Blackhole bh) {
+        for (Iterator<ITree> it = TreeUtils.preOrderIterator(d.tree); it.hasNext(); )
+            bh.consume(it.next());
+    }
+
+    @Benchmark
+    public void preOrderExplicitStack(TreeData d, Blackhole bh) {
+        TreeUtils.preOrder(d.tree, bh::consume);
+    }
+
+    @Benchmark
+    public void postOrderRecursive(TreeData d, Blackhole bh) {
+        postOrder(d.tree, bh);
+    }
+
+    @Benchmark
+    public void postOrderIterator(TreeData d, Blackhole bh) {
+        for (Iterator<ITree> it = TreeUtils.postOrderIterator(d.tree); it.hasNext(); )
+            bh.consume(it.next());
+    }
+
+    @Benchmark
+    public void postOrderExplicitStack(TreeData d, Blackhole bh) {
+        TreeUtils.postOrder(d.tree, bh::consume);
+    }
+
+    @Benchmark
+    public void breadthFirstIterator(TreeData d, Blackhole bh) {
+        for (Iterator<ITree> it = TreeUtils.breadthFirstIterator(d.tree); it.hasNext(); )
+            bh.consume(it.next());
+    }
+
+    @Benchmark
+    public void breadthFirstExplicitQueue(TreeData d, Blackhole bh) {
+        TreeUtils.breadthFirst(d.tree, bh::consume);
+    }
+
+    @Benchmark
+    public void isomorphism(TreeData d, Blackhole bh) {
+        bh.consume(d.tree.isIsomorphicTo(d.tree));
+    }
+
+    @Benchmark
+    public void deepCopy(TreeData d, Blackhole bh) {
+        bh.consume(d.tree.deepCopy());
+    }
+
+    private static void preOrder(ITree tree, Blackhole bh) {
+        bh.consume(tree);
+        for (ITree child : tree.getChildren())
+            preOrder(child, bh);
+    }
+
+    private static void postOrder(ITree tree, Blackhole bh) {
+        for (ITree child : tree.getChildren())
+            postOrder(child, bh);
+        bh.consume(tree);
+    }
+}
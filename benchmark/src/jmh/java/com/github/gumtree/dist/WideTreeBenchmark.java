@@ -0,0 +1,75 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtree.dist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the lookup of child positions on a node with many siblings, such as a big
+ * array initializer, compared with a linear search in a plain list.
+ */
+public class WideTreeBenchmark {
+    @State(Scope.Benchmark)
+    public static class TreeData {
+        @Param({"10000", "50000"})
+        public int width;
+
+        public ITree tree;
+
+        public List<ITree> plainChildren;
+
+        @Setup(Level.Invocation)
+        public void build() {
+            tree = new Tree(TypeSet.type("array"));
+            for (int i = 0; i < width; i++)
+                tree.addChild(new Tree(TypeSet.type("literal"), Integer.toString(i)));
+            plainChildren = new ArrayList<>(tree.getChildren());
+        }
+    }
+
+    @Benchmark
+    public void positionInParent(TreeData d, Blackhole bh) {
+        for (ITree child : d.tree.getChildren())
+            bh.consume(child.positionInParent());
+    }
+
+    @Benchmark
+    public void linearIndexOf(TreeData d, Blackhole bh) {
+        for (ITree child : d.plainChildren)
+            bh.consume(d.plainChildren.indexOf(child));
+    }
+
+    @Benchmark
+    public void insertThenLookup(TreeData d, Blackhole bh) {
+        ITree last = d.tree.getChild(d.width - 1);
+        for (int i = 0; i < 100; i++) {
+            d.tree.insertChild(new Tree(TypeSet.type("literal"), "new"), d.width / 2);
+            bh.consume(last.positionInParent());
+        }
+    }
+}
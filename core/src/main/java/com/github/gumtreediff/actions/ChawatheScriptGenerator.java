@@ -24,23 +24,31 @@ import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.FakeTree;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeOverlay;
 import com.github.gumtreediff.tree.TreeUtils;
 
 import java.util.*;
 
 /**
  * An edit script generator based upon Chawathe algorithm.
+ * The source tree is transformed through a {@link TreeOverlay}, therefore the trees of the mappings
+ * are neither copied nor modified, and can be frozen.
  */
 public class ChawatheScriptGenerator implements EditScriptGenerator {
     private ITree origSrc;
 
-    private ITree cpySrc;
-
     private ITree origDst;
 
     private MappingStore origMappings;
 
-    private MappingStore cpyMappings;
+    // Mappings of the nodes created by the generator, which do not belong to the original trees.
+    private MappingStore addedMappings;
+
+    private TreeOverlay src;
+
+    private ITree srcFakeRoot;
+
+    private ITree dstFakeRoot;
 
     private Set<ITree> dstInOrder;
 
@@ -48,9 +56,7 @@ public class ChawatheScriptGenerator implements EditScriptGenerator {
 
     private EditScript actions;
 
-    private Map<ITree, ITree> origToCopy;
-
-    private Map<ITree, ITree> copyToOrig;
+    private Map<ITree, ITree> insertedToDst;
 
     @Override
     public EditScript computeActions(MappingStore ms) {
@@ -61,68 +67,55 @@ public class ChawatheScriptGenerator implements EditScriptGenerator {
 
     public void initWith(MappingStore ms) {
         this.origSrc = ms.src;
-        this.cpySrc = this.origSrc.deepCopy();
         this.origDst = ms.dst;
         this.origMappings = ms;
-
-        origToCopy = new HashMap<>();
-        copyToOrig = new HashMap<>();
-        Iterator<ITree> cpyTreeIterator = TreeUtils.preOrderIterator(cpySrc);
-        for (ITree origTree: TreeUtils.preOrder(origSrc)) {
-            ITree cpyTree = cpyTreeIterator.next();
-            origToCopy.put(origTree, cpyTree);
-            copyToOrig.put(cpyTree, origTree);
-        }
-
-        cpyMappings = new MappingStore(ms.src, ms.dst);
-        for (Mapping m: origMappings)
-            cpyMappings.addMapping(origToCopy.get(m.first), m.second);
+        addedMappings = new MappingStore(ms.src, ms.dst);
+        insertedToDst = new HashMap<>();
     }
 
     public EditScript generate() {
-        ITree srcFakeRoot = new FakeTree(cpySrc);
-        ITree dstFakeRoot = new FakeTree(origDst);
-        cpySrc.setParent(srcFakeRoot);
-        origDst.setParent(dstFakeRoot);
+        srcFakeRoot = new FakeTree();
+        dstFakeRoot = new FakeTree();
+        src = new TreeOverlay(srcFakeRoot);
+        src.insertChild(srcFakeRoot, origSrc, 0);
 
         actions = new EditScript();
         dstInOrder = new HashSet<>();
         srcInOrder = new HashSet<>();
 
-        cpyMappings.addMapping(srcFakeRoot, dstFakeRoot);
+        addedMappings.addMapping(srcFakeRoot, dstFakeRoot);
 
         List<ITree> bfsDst = TreeUtils.breadthFirst(origDst);
         for (ITree x: bfsDst) {
             ITree w;
-            ITree y = x.getParent();
-            ITree z = cpyMappings.getSrcForDst(y);
+            ITree y = getDstParent(x);
+            ITree z = getSrcForDst(y);
 
-            if (!cpyMappings.isDstMapped(x)) {
+            if (!isDstMapped(x)) {
                 int k = findPos(x);
                 // Insertion case : insert new node.
                 w = new FakeTree();
                 // In order to use the real nodes from the second tree, we
                 // furnish x instead of w
-                Action ins = new Insert(x, copyToOrig.get(z), k);
+                Action ins = new Insert(x, getOriginal(z), k);
                 actions.add(ins);
-                copyToOrig.put(w, x);
-                cpyMappings.addMapping(w, x);
-                z.insertChild(w, k);
+                insertedToDst.put(w, x);
+                addedMappings.addMapping(w, x);
+                src.insertChild(z, w, k);
             } else {
-                w = cpyMappings.getSrcForDst(x);
-                if (!x.equals(origDst)) { // TODO => x != origDst // Case of the root
-                    ITree v = w.getParent();
-                    if (!w.getLabel().equals(x.getLabel())) {
-                        actions.add(new Update(copyToOrig.get(w), x.getLabel()));
-                        w.setLabel(x.getLabel());
+                w = getSrcForDst(x);
+                if (x != origDst) { // Case of the root
+                    ITree v = src.getParent(w);
+                    if (!src.hasSameLabel(w, x)) {
+                        actions.add(new Update(getOriginal(w), x.getLabel()));
+                        src.setLabel(w, x.getLabel());
                     }
-                    if (!z.equals(v)) {
+                    if (z != v) {
                         int k = findPos(x);
-                        Action mv = new Move(copyToOrig.get(w), copyToOrig.get(z), k);
+                        Action mv = new Move(getOriginal(w), getOriginal(z), k);
                         actions.add(mv);
-                        int oldk = w.positionInParent();
-                        w.getParent().getChildren().remove(oldk);
-                        z.insertChild(w, k);
+                        src.removeChild(v, src.positionInParent(w));
+                        src.insertChild(z, w, k);
                     }
                 }
             }
@@ -132,27 +125,28 @@ public class ChawatheScriptGenerator implements EditScriptGenerator {
             alignChildren(w, x);
         }
 
-        for (ITree w : cpySrc.postOrder())
-            if (!cpyMappings.isSrcMapped(w))
-                actions.add(new Delete(copyToOrig.get(w)));
+        for (ITree w : src.postOrder(origSrc))
+            if (!isSrcMapped(w))
+                actions.add(new Delete(getOriginal(w)));
 
         return actions;
     }
 
     private void alignChildren(ITree w, ITree x) {
-        srcInOrder.removeAll(w.getChildren());
+        List<ITree> srcChildren = src.getChildren(w);
+        srcInOrder.removeAll(srcChildren);
         dstInOrder.removeAll(x.getChildren());
 
         List<ITree> s1 = new ArrayList<>();
-        for (ITree c: w.getChildren())
-            if (cpyMappings.isSrcMapped(c))
-                if (x.getChildren().contains(cpyMappings.getDstForSrc(c)))
+        for (ITree c: srcChildren)
+            if (isSrcMapped(c))
+                if (x.getChildren().contains(getDstForSrc(c)))
                     s1.add(c);
 
         List<ITree> s2 = new ArrayList<>();
         for (ITree c: x.getChildren())
-            if (cpyMappings.isDstMapped(c))
-                if (w.getChildren().contains(cpyMappings.getSrcForDst(c)))
+            if (isDstMapped(c))
+                if (srcChildren.contains(getSrcForDst(c)))
                     s2.add(c);
 
         List<Mapping> lcs = lcs(s1, s2);
@@ -163,55 +157,75 @@ public class ChawatheScriptGenerator implements EditScriptGenerator {
         }
 
         for (ITree a : s1) {
-            for (ITree b: s2 ) {
-                if (origMappings.has(a, b)) {
-                    if (!lcs.contains(new Mapping(a, b))) {
-                        int k = findPos(b);
-                        Action mv = new Move(copyToOrig.get(a), copyToOrig.get(w), k);
-                        actions.add(mv);
-                        int oldk = a.positionInParent();
-                        w.getChildren().add(k, a);
-                        if (k  < oldk ) // FIXME this is an ugly way to patch the index
-                            oldk ++;
-                        a.getParent().getChildren().remove(oldk);
-                        a.setParent(w);
-                        srcInOrder.add(a);
-                        dstInOrder.add(b);
-                    }
-                }
+            ITree b = getDstForSrc(a);
+            if (!lcs.contains(new Mapping(a, b))) {
+                int oldk = src.positionInParent(a);
+                int k = findPos(b);
+                // The position is found while the node is still at its former position.
+                if (k > oldk)
+                    k--;
+                actions.add(new Move(getOriginal(a), getOriginal(w), k));
+                src.removeChild(w, oldk);
+                src.insertChild(w, a, k);
+                srcInOrder.add(a);
+                dstInOrder.add(b);
             }
         }
     }
 
     private int findPos(ITree x) {
-        ITree y = x.getParent();
-        List<ITree> siblings = y.getChildren();
-
-        for (ITree c : siblings) {
-            if (dstInOrder.contains(c)) {
-                if (c.equals(x)) return 0;
-                else break;
-            }
-        }
+        if (x == origDst)
+            return 0;
+        List<ITree> siblings = x.getParent().getChildren();
 
         int xpos = x.positionInParent();
         ITree v = null;
-        for (int i = 0; i < xpos; i++) {
+        for (int i = xpos - 1; i >= 0; i--) {
             ITree c = siblings.get(i);
-            if (dstInOrder.contains(c)) v = c;
+            if (dstInOrder.contains(c)) {
+                v = c;
+                break;
+            }
         }
 
         //if (v == null) throw new RuntimeException("No rightmost sibling in order");
         if (v == null) return 0;
 
-        ITree u = cpyMappings.getSrcForDst(v);
-        // siblings = u.getParent().getChildren();
-        // int upos = siblings.indexOf(u);
-        int upos = u.positionInParent();
-        // int r = 0;
-        // for (int i = 0; i <= upos; i++)
-        // if (srcInOrder.contains(siblings.get(i))) r++;
-        return upos + 1;
+        ITree u = getSrcForDst(v);
+        return src.positionInParent(u) + 1;
+    }
+
+    private ITree getDstParent(ITree x) {
+        return x == origDst ? dstFakeRoot : x.getParent();
+    }
+
+    /**
+     * Returns the node of the source tree corresponding to a node of the overlay, which is
+     * the destination node for inserted nodes.
+     */
+    private ITree getOriginal(ITree w) {
+        if (w == srcFakeRoot)
+            return null;
+        ITree x = insertedToDst.get(w);
+        return x == null ? w : x;
+    }
+
+    private boolean isSrcMapped(ITree w) {
+        return origMappings.isSrcMapped(w) || addedMappings.isSrcMapped(w);
+    }
+
+    private boolean isDstMapped(ITree x) {
+        return origMappings.isDstMapped(x) || addedMappings.isDstMapped(x);
+    }
+
+    private ITree getSrcForDst(ITree x) {
+        ITree w = addedMappings.getSrcForDst(x);
+        return w == null ? origMappings.getSrcForDst(x) : w;
+    }
+
+    private ITree getDstForSrc(ITree w) {
+        ITree x = addedMappings.getDstForSrc(w);
+        return x == null ? origMappings.getDstForSrc(w) : x;
     }
 
     private List<Mapping> lcs(List<ITree> x, List<ITree> y) {
@@ -222,14 +236,14 @@ public class ChawatheScriptGenerator implements EditScriptGenerator {
         int[][] opt = new int[m + 1][n + 1];
         for (int i = m - 1; i >= 0; i--) {
             for (int j = n - 1; j >= 0; j--) {
-                if (cpyMappings.getSrcForDst(y.get(j)).equals(x.get(i))) opt[i][j] = opt[i + 1][j + 1] + 1;
+                if (getSrcForDst(y.get(j)).equals(x.get(i))) opt[i][j] = opt[i + 1][j + 1] + 1;
                 else  opt[i][j] = Math.max(opt[i + 1][j], opt[i][j + 1]);
             }
         }
 
         int i = 0, j = 0;
         while (i < m && j < n) {
-            if (cpyMappings.getSrcForDst(y.get(j)).equals(x.get(i))) {
+            if (getSrcForDst(y.get(j)).equals(x.get(i))) {
                 lcs.add(new Mapping(x.get(i), y.get(j)));
                 i++;
                 j++;
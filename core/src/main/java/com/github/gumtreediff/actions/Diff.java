@@ -44,6 +44,7 @@ public class Diff {
                                String treeGenerator, String matcher) throws IOException {
         TreeContext src = TreeGenerators.getInstance().getTree(srcFile, treeGenerator);
         TreeContext dst = TreeGenerators.getInstance().getTree(dstFile, treeGenerator);
+        dst.setLabels(src.getLabels());
         MappingStore mappings = Matchers.getInstance()
                 .getMatcherWithFallback(matcher).match(src.getRoot(), dst.getRoot());
         EditScript editScript = new SimplifiedChawatheScriptGenerator().computeActions(mappings);
@@ -23,8 +23,7 @@ import com.github.gumtreediff.actions.model.*;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.ITree;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
  * A script generator, based upon the Chawathe algorithm,
@@ -53,11 +52,12 @@ public class SimplifiedChawatheScriptGenerator implements EditScriptGenerator {
                 deletedTrees.put(a.getNode(), a);
 
 
+        Set<ITree> addedSubtrees = completeSubtrees(addedTrees.keySet());
         for (ITree t : addedTrees.keySet()) {
-            if (addedTrees.keySet().contains(t.getParent()) && addedTrees.keySet().containsAll(t.getDescendants()))
+            if (addedTrees.keySet().contains(t.getParent()) && addedSubtrees.contains(t))
                 actions.remove(addedTrees.get(t));
             else {
-                if (t.getChildren().size() > 0 && addedTrees.keySet().containsAll(t.getDescendants())) {
+                if (t.getChildren().size() > 0 && addedSubtrees.contains(t)) {
                     Insert originalAction = (Insert) addedTrees.get(t);
                     TreeInsert ti = new TreeInsert(originalAction.getNode(),
                             originalAction.getParent(), originalAction.getPosition());
@@ -69,11 +69,12 @@ public class SimplifiedChawatheScriptGenerator implements EditScriptGenerator {
             }
         }
 
+        Set<ITree> deletedSubtrees = completeSubtrees(deletedTrees.keySet());
         for (ITree t : deletedTrees.keySet()) {
-            if (deletedTrees.keySet().contains(t.getParent()) && deletedTrees.keySet().containsAll(t.getDescendants()))
+            if (deletedTrees.keySet().contains(t.getParent()) && deletedSubtrees.contains(t))
                 actions.remove(deletedTrees.get(t));
             else {
-                if (t.getChildren().size() > 0 && deletedTrees.keySet().containsAll(t.getDescendants())) {
+                if (t.getChildren().size() > 0 && deletedSubtrees.contains(t)) {
                     Delete originalAction = (Delete) deletedTrees.get(t);
                     TreeDelete ti = new TreeDelete(originalAction.getNode());
                     int index = actions.lastIndexOf(originalAction);
@@ -84,4 +85,25 @@ public class SimplifiedChawatheScriptGenerator implements EditScriptGenerator {
             }
         }
     }
+
+    /**
+     * Returns the nodes of the given set whose descendants all belong to the set.
+     * Nodes are visited in post-order, so that each node is decided from its children.
+     */
+    private static Set<ITree> completeSubtrees(Set<ITree> trees) {
+        List<ITree> sorted = new ArrayList<>(trees);
+        sorted.sort(Comparator.comparingInt(t -> t.getMetrics().position));
+        Set<ITree> complete = new HashSet<>();
+        for (ITree t : sorted) {
+            boolean allChildren = true;
+            for (ITree c : t.getChildren())
+                if (!complete.contains(c)) {
+                    allChildren = false;
+                    break;
+                }
+            if (allChildren)
+                complete.add(t);
+        }
+        return complete;
+    }
 }
@@ -23,6 +23,8 @@ package com.github.gumtreediff.actions.model;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
 
+import java.util.Objects;
+
 public class Update extends Action {
     private String value;
 
@@ -54,6 +56,6 @@ public class Update extends Action {
             return false;
 
         Update a = (Update) o;
-        return value == a.value;
+        return Objects.equals(value, a.value);
     }
 }
@@ -42,6 +42,7 @@ import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
@@ -63,6 +64,27 @@ public final class TreeIoUtils {
         return generator;
     }
 
+    /**
+     * Returns a generator loading XML trees into a compact store.
+     * @see com.github.gumtreediff.tree.CompactTreeStore
+     */
+    public static TreeGenerator fromCompactXml() {
+        XmlInternalGenerator generator = new XmlInternalGenerator();
+        generator.setCompact(true);
+        return generator;
+    }
+
+    /**
+     * Returns a generator loading XML trees lazily: the children of a node are only created
+     * when they are first accessed.
+     * @see com.github.gumtreediff.tree.LazyTree
+     */
+    public static TreeGenerator fromLazyXml() {
+        XmlInternalGenerator generator = new XmlInternalGenerator();
+        generator.setLazy(true);
+        return generator;
+    }
+
     public static TreeSerializer toXml(TreeContext ctx) {
         return toXml(ctx, ctx.getRoot());
     }
@@ -230,6 +252,11 @@ public final class TreeIoUtils {
         }
 
         protected void writeTree(TreeFormatter formatter, ITree root) throws Exception {
+            // The exported metadata are resolved once, then looked up in each node.
+            List<MetadataKey<Object>> keys = serializers.keys();
+            MetadataSerializer[] nodeSerializers = new MetadataSerializer[keys.size()];
+            for (int i = 0; i < nodeSerializers.length; i++)
+                nodeSerializers[i] = serializers.get(keys.get(i).name);
             formatter.startSerialization();
             if (context != null)
                 writeAttributes(formatter, context.getMetadata());
@@ -242,7 +269,11 @@ public final class TreeIoUtils {
                         try {
                             assert tree != null;
                             formatter.startTree(tree);
-                            writeAttributes(formatter, tree.getMetadata());
+                            for (int i = 0; i < nodeSerializers.length; i++) {
+                                Object value = tree.getMetadata(keys.get(i));
+                                if (value != null)
+                                    formatter.serializeAttribute(keys.get(i).name, nodeSerializers[i].toString(value));
+                            }
                             formatter.endTreeProlog(tree);
                         } catch (Exception e) {
                             forwardException(e);
@@ -764,12 +795,36 @@ public final class TreeIoUtils {
             defaultUnserializers.add(LENGTH, Integer::parseInt);
         }
 
+        private boolean compact = false;
+
+        private boolean lazy = false;
+
         public XmlInternalGenerator() {
             unserializers.addAll(defaultUnserializers);
         }
 
+        /**
+         * Sets whether the loaded trees are stored in a compact store or not.
+         * @see CompactTreeStore
+         */
+        public void setCompact(boolean compact) {
+            this.compact = compact;
+        }
+
+        /**
+         * Sets whether the nodes of the loaded trees are only created when they are first accessed.
+         * @see LazyTree
+         */
+        public void setLazy(boolean lazy) {
+            this.lazy = lazy;
+        }
+
         @Override
         protected TreeContext generate(Reader source) throws IOException {
+            if (compact)
+                return generateCompact(source);
+            if (lazy)
+                return generateLazy(source);
             XMLInputFactory fact = XMLInputFactory.newInstance();
             TreeContext context = new TreeContext();
             try {
@@ -809,6 +864,72 @@ public final class TreeIoUtils {
             return null;
         }
 
+        private TreeContext generateCompact(Reader source) {
+            XMLInputFactory fact = XMLInputFactory.newInstance();
+            TreeContext context = new TreeContext();
+            try {
+                CompactTreeStore.Builder builder = new CompactTreeStore.Builder(16, context.getLabels());
+                XMLEventReader r = fact.createXMLEventReader(source);
+                while (r.hasNext()) {
+                    XMLEvent e = r.nextEvent();
+                    if (e instanceof StartElement) {
+                        StartElement s = (StartElement) e;
+                        if (!s.getName().getLocalPart().equals("tree")) // FIXME need to deal with options
+                            continue;
+                        Type type = type(s.getAttributeByName(TYPE).getValue());
+                        builder.startNode(type, labelForAttribute(s, LABEL));
+                        Iterator<?> it = s.getAttributes();
+                        while (it.hasNext()) {
+                            Attribute a = (Attribute) it.next();
+                            unserializers.load(builder, a.getName().getLocalPart(), a.getValue());
+                        }
+                    } else if (e instanceof EndElement) {
+                        if (!((EndElement) e).getName().getLocalPart().equals("tree")) // FIXME need to deal with option
+                            continue;
+                        builder.endNode();
+                    }
+                }
+                context.setRoot(builder.build().getRoot());
+                return context;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+
+        private TreeContext generateLazy(Reader source) {
+            XMLInputFactory fact = XMLInputFactory.newInstance();
+            TreeContext context = new TreeContext();
+            try {
+                LazyTree.Builder builder = new LazyTree.Builder(16, context.getLabels());
+                XMLEventReader r = fact.createXMLEventReader(source);
+                while (r.hasNext()) {
+                    XMLEvent e = r.nextEvent();
+                    if (e instanceof StartElement) {
+                        StartElement s = (StartElement) e;
+                        if (!s.getName().getLocalPart().equals("tree")) // FIXME need to deal with options
+                            continue;
+                        Type type = type(s.getAttributeByName(TYPE).getValue());
+                        builder.startNode(type, labelForAttribute(s, LABEL));
+                        Iterator<?> it = s.getAttributes();
+                        while (it.hasNext()) {
+                            Attribute a = (Attribute) it.next();
+                            unserializers.load(builder, a.getName().getLocalPart(), a.getValue());
+                        }
+                    } else if (e instanceof EndElement) {
+                        if (!((EndElement) e).getName().getLocalPart().equals("tree")) // FIXME need to deal with option
+                            continue;
+                        builder.endNode();
+                    }
+                }
+                context.setRoot(builder.build());
+                return context;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+
         private static String labelForAttribute(StartElement s, QName attrName) {
             Attribute attr = s.getAttributeByName(attrName);
             return attr == null ? ITree.NO_LABEL : attr.getValue();
@@ -0,0 +1,168 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtreediff.matchers;
+
+import java.util.Arrays;
+
+import com.github.gumtreediff.tree.AncestorIndex;
+import com.github.gumtreediff.tree.ITree;
+
+/**
+ * Finds the dst candidates of the src nodes during a bottom-up pass: the unmapped ancestors of the
+ * dst nodes mapped to descendants of a src node, having the type of the src node. Each candidate
+ * comes with its number of common descendants with the src node, as counted by
+ * {@link MappingStore#numberOfCommonDescendants(ITree, ITree)}, so that the similarity of the
+ * candidates is computed without scanning their descendants again.
+ * The index is built once per pass and reads the current mappings at each query. The descendants,
+ * partners and ancestors are walked by their numbers, so that only the candidates are created in
+ * lazy trees. The scratch arrays are indexed by the pre-order numbers of the dst tree, which must
+ * not be modified meanwhile.
+ */
+public final class CandidateIndex {
+    private static final int NO_NODE = -1;
+
+    private final MappingStore mappings;
+
+    private final AncestorIndex dstAncestors;
+
+    // The number of partners below each visited dst node.
+    private final int[] counts;
+
+    private final boolean[] visited;
+
+    // The pre-order number and the size of the dst root of the store, numbered in the whole dst tree.
+    private final int dstBase;
+
+    private final int dstSize;
+
+    // The visited dst nodes, in the order they were visited, then sorted by pre-order number.
+    private int[] visits = new int[16];
+
+    private int[] sortedVisits = new int[16];
+
+    private ITree[] candidates = new ITree[16];
+
+    private int[] commonDescendants = new int[16];
+
+    private int size;
+
+    public CandidateIndex(MappingStore mappings) {
+        this.mappings = mappings;
+        this.dstAncestors = AncestorIndex.of(mappings.dst);
+        int treeSize = dstAncestors.size();
+        counts = new int[treeSize];
+        visited = new boolean[treeSize];
+        dstBase = mappings.dst.getMetrics().preOrder;
+        dstSize = mappings.dst.getMetrics().size;
+    }
+
+    /**
+     * Finds the candidates of the given src node, replacing the previous ones, and returns their
+     * number. The candidates are ordered by their first visit, walking up from the partners of the
+     * descendants of the src node in pre-order. The root of the dst tree may be a candidate.
+     * @throws IllegalArgumentException if the src node is not in the src tree of the store.
+     */
+    public int find(ITree src) {
+        int s = mappings.getSrcNumber(src);
+        if (s == NO_NODE)
+            throw new IllegalArgumentException("The node " + src + " is not in the src tree");
+        int visitCount = 0;
+        int end = s + src.getMetrics().size;
+        for (int i = s + 1; i < end; i++) {
+            int partner = mappings.getDstNumberForSrc(i);
+            if (partner == NO_NODE || partner >= dstSize)
+                continue;
+            int id = dstAncestors.getParent(partner + dstBase);
+            if (id == NO_NODE)
+                continue;
+            counts[id]++;
+            while (!visited[id]) {
+                visited[id] = true;
+                if (visitCount == visits.length)
+                    visits = Arrays.copyOf(visits, visitCount * 2);
+                visits[visitCount++] = id;
+                id = dstAncestors.getParent(id);
+                if (id == NO_NODE)
+                    break;
+            }
+        }
+
+        // Children have greater pre-order numbers than their parents, therefore a single sweep in
+        // decreasing pre-order propagates the counts of partners up to all the visited ancestors.
+        if (sortedVisits.length < visitCount)
+            sortedVisits = new int[visits.length];
+        System.arraycopy(visits, 0, sortedVisits, 0, visitCount);
+        Arrays.sort(sortedVisits, 0, visitCount);
+        for (int k = visitCount - 1; k >= 0; k--) {
+            int id = sortedVisits[k];
+            int parent = dstAncestors.getParent(id);
+            if (parent != NO_NODE)
+                counts[parent] += counts[id];
+        }
+
+        size = 0;
+        for (int k = 0; k < visitCount; k++) {
+            int id = visits[k];
+            // The mapped nodes are skipped first, so that the nodes of lazy trees are not created.
+            ITree node = isDstMapped(id) ? null : dstAncestors.getNode(id);
+            if (node != null && node.getType() == src.getType()) {
+                if (size == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, size * 2);
+                    commonDescendants = Arrays.copyOf(commonDescendants, size * 2);
+                }
+                candidates[size] = node;
+                commonDescendants[size++] = counts[id];
+            }
+            counts[id] = 0;
+            visited[id] = false;
+        }
+        return size;
+    }
+
+    private boolean isDstMapped(int id) {
+        int d = id - dstBase;
+        if (d >= 0 && d < dstSize)
+            return mappings.isDstNumberMapped(d);
+        return mappings.isDstMapped(dstAncestors.getNode(id));
+    }
+
+    /**
+     * Returns the number of candidates found by the last call to {@link #find(ITree)}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the candidate with the given index.
+     */
+    public ITree getCandidate(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Returns the number of common descendants of the src node and the candidate with the given
+     * index.
+     */
+    public int getCommonDescendants(int index) {
+        return commonDescendants[index];
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtreediff.matchers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.github.gumtreediff.tree.ITree;
+
+/**
+ * A mapping store that can be modified by several threads, for instance by matcher phases running
+ * on independent subtrees. Only the nodes of the src and dst trees can be mapped, and the trees
+ * must not be modified while the store is in use.
+ * The nodes are numbered by their pre-order number, and the mappings are stored in two atomic
+ * arrays. A thread adds a mapping by claiming its src node then its dst node with compare-and-set
+ * operations: the mapping exists once the dst node is claimed, and its src node is released if the
+ * dst node was already mapped. {@link #tryAddMapping(ITree, ITree)} therefore atomically checks
+ * {@link #isMappingAllowed(ITree, ITree)} and adds the mapping. Reads take no lock.
+ */
+public class ConcurrentMappingStore {
+    public final ITree src;
+    public final ITree dst;
+
+    private final ITree[] srcNodes;
+    private final ITree[] dstNodes;
+
+    private final int srcBase;
+    private final int dstBase;
+
+    /**
+     * The dst number claimed by each src node. The claim is a mapping only when the dst node is
+     * claimed by the src node in return.
+     */
+    private final AtomicIntegerArray srcToDst;
+
+    /**
+     * The src number mapped to each dst node.
+     */
+    private final AtomicIntegerArray dstToSrc;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public ConcurrentMappingStore(ITree src, ITree dst) {
+        this.src = src;
+        this.dst = dst;
+        srcNodes = numberNodes(src);
+        dstNodes = numberNodes(dst);
+        srcBase = src.getMetrics().preOrder;
+        dstBase = dst.getMetrics().preOrder;
+        srcToDst = newSlots(srcNodes.length);
+        dstToSrc = newSlots(dstNodes.length);
+    }
+
+    /**
+     * Copies the mappings of the given store, which must only map nodes of its trees.
+     */
+    public ConcurrentMappingStore(MappingStore ms) {
+        this(ms.src, ms.dst);
+        for (Mapping m : ms)
+            if (!tryAddMapping(m.first, m.second))
+                throw new IllegalArgumentException("Can not copy the mapping " + m);
+    }
+
+    private static ITree[] numberNodes(ITree root) {
+        ITree[] nodes = new ITree[root.getMetrics().size];
+        int i = 0;
+        for (ITree t : root.preOrder())
+            nodes[i++] = t;
+        return nodes;
+    }
+
+    private static AtomicIntegerArray newSlots(int length) {
+        AtomicIntegerArray slots = new AtomicIntegerArray(length);
+        for (int i = 0; i < length; i++)
+            slots.setPlain(i, MappingStore.NO_NODE);
+        return slots;
+    }
+
+    private int srcNumber(ITree t) {
+        return number(t, srcNodes, srcBase);
+    }
+
+    private int dstNumber(ITree t) {
+        return number(t, dstNodes, dstBase);
+    }
+
+    private static int number(ITree t, ITree[] nodes, int base) {
+        int n = t.getMetrics().preOrder - base;
+        if (n < 0 || n >= nodes.length || nodes[n] != t)
+            throw new IllegalArgumentException("The node " + t + " is not in the trees of the store");
+        return n;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Maps the given nodes if they have the same type and are both unmapped, as a single atomic
+     * operation. Returns true if the mapping has been added.
+     */
+    public boolean tryAddMapping(ITree src, ITree dst) {
+        if (!src.hasSameType(dst))
+            return false;
+        int s = srcNumber(src);
+        int d = dstNumber(dst);
+        while (true) {
+            if (dstToSrc.getAcquire(d) != MappingStore.NO_NODE)
+                return false;
+            if (srcToDst.compareAndSet(s, MappingStore.NO_NODE, d)) {
+                if (dstToSrc.compareAndSet(d, MappingStore.NO_NODE, s)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                srcToDst.setRelease(s, MappingStore.NO_NODE);
+                return false;
+            }
+            int claimed = srcToDst.getAcquire(s);
+            if (claimed != MappingStore.NO_NODE && dstToSrc.getAcquire(claimed) == s)
+                return false;
+            // Another thread is claiming or releasing the src node, it only has one step left.
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Removes the mapping between the given nodes as a single atomic operation. Returns true if
+     * the nodes were mapped together.
+     */
+    public boolean removeMapping(ITree src, ITree dst) {
+        int s = srcNumber(src);
+        int d = dstNumber(dst);
+        if (!dstToSrc.compareAndSet(d, s, MappingStore.NO_NODE))
+            return false;
+        srcToDst.setRelease(s, MappingStore.NO_NODE);
+        size.decrementAndGet();
+        return true;
+    }
+
+    public ITree getDstForSrc(ITree src) {
+        int s = srcNumber(src);
+        int d = srcToDst.getAcquire(s);
+        return d != MappingStore.NO_NODE && dstToSrc.getAcquire(d) == s ? dstNodes[d] : null;
+    }
+
+    public ITree getSrcForDst(ITree dst) {
+        int s = dstToSrc.getAcquire(dstNumber(dst));
+        return s == MappingStore.NO_NODE ? null : srcNodes[s];
+    }
+
+    public boolean isSrcMapped(ITree src) {
+        return getDstForSrc(src) != null;
+    }
+
+    public boolean isDstMapped(ITree dst) {
+        return dstToSrc.getAcquire(dstNumber(dst)) != MappingStore.NO_NODE;
+    }
+
+    public boolean has(ITree src, ITree dst) {
+        return dstToSrc.getAcquire(dstNumber(dst)) == srcNumber(src);
+    }
+
+    /**
+     * Returns true if the given nodes have the same type and are both unmapped. As other threads
+     * may map them in the meantime, use {@link #tryAddMapping(ITree, ITree)} to map them.
+     */
+    public boolean isMappingAllowed(ITree src, ITree dst) {
+        return src.hasSameType(dst) && !isSrcMapped(src) && !isDstMapped(dst);
+    }
+
+    /**
+     * Returns a single-threaded store with the current mappings. The mappings added concurrently
+     * with this call may or may not be copied.
+     */
+    public MappingStore toMappingStore() {
+        MappingStore ms = new MappingStore(src, dst);
+        for (int d = 0; d < dstNodes.length; d++) {
+            int s = dstToSrc.getAcquire(d);
+            if (s != MappingStore.NO_NODE)
+                ms.addMapping(srcNodes[s], dstNodes[d]);
+        }
+        return ms;
+    }
+}
@@ -20,6 +20,6 @@
 package com.github.gumtreediff.matchers;
 
 public enum ConfigurationOptions {
-    GT_BUM_SMT, GT_BUM_SMT_SBUP, GT_BUM_SZT, GT_CD_LSIM, GT_CD_ML, GT_CD_SSIM1, GT_CD_SSIM2, GT_STM_MH, GT_XYM_SIM,
-    GUMTREE_MATCH_GT_MINH;
+    GT_BUM_SMT, GT_BUM_SMT_SBUP, GT_BUM_SZT, GT_CD_LSIM, GT_CD_ML, GT_CD_SSIM1, GT_CD_SSIM2, GT_STM_MH, GT_STM_PAR,
+    GT_XYM_SIM, GUMTREE_MATCH_GT_MINH;
 }
@@ -22,33 +22,74 @@ package com.github.gumtreediff.matchers;
 
 import java.util.*;
 
+import com.github.gumtreediff.tree.FakeTree;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.LazyTree;
+import com.github.gumtreediff.tree.TreeMetrics;
 
 /**
- * Stores the mappings between the nodes of a src and dst trees.
+ * Stores the mappings between the nodes of a src and dst trees. The nodes of both trees are
+ * numbered by their pre-order number, and the mappings are stored in arrays indexed by these
+ * numbers. The other nodes, for instance nodes added to a tree after the creation of the store,
+ * receive numbers after the last node of the tree. The numbers change when a tree is modified.
+ * The descendants of identical lazy subtrees are mapped by their numbers, and only created when
+ * they are requested, see {@link #addMappingRecursively(ITree, ITree)}.
+ * The changes of the mappings can be recorded and undone, see {@link #mark()}.
  */
 public class MappingStore implements Iterable<Mapping> {
+    /**
+     * The number returned when there is no such node.
+     */
+    public static final int NO_NODE = -1;
+
     public final ITree src;
     public final ITree dst;
 
-    private Map<ITree, ITree> srcToDst;
-    private Map<ITree, ITree> dstToSrc;
+    private final Numbering srcNumbers;
+    private final Numbering dstNumbers;
+
+    private int[] srcToDst;
+    private int[] dstToSrc;
+
+    private int size;
+
+    /**
+     * The src and dst nodes of the recorded changes, or null when changes are not recorded.
+     */
+    private ITree[] journal;
+
+    private boolean[] journalAdditions;
 
+    private int journalSize;
+
+    private List<Listener> listeners;
+
+    /**
+     * Copies the mappings of the given store, but not its journal and listeners.
+     */
     public MappingStore(MappingStore ms) {
         this(ms.src, ms.dst);
-        for (Mapping m : ms)
-            addMapping(m.first, m.second);
+        for (int i = ms.nextMappedSrc(0); i != NO_NODE; i = ms.nextMappedSrc(i + 1))
+            addMapping(ms.getSrc(i), ms.getDstForSrc(i));
     }
 
     public MappingStore(ITree src, ITree dst) {
         this.src = src;
         this.dst = dst;
-        srcToDst = new HashMap<>();
-        dstToSrc = new HashMap<>();
+        srcNumbers = new Numbering(src);
+        dstNumbers = new Numbering(dst);
+        srcToDst = newSlots(srcNumbers.nodes.length);
+        dstToSrc = newSlots(dstNumbers.nodes.length);
+    }
+
+    private static int[] newSlots(int length) {
+        int[] slots = new int[length];
+        Arrays.fill(slots, NO_NODE);
+        return slots;
     }
 
     public int size() {
-        return srcToDst.size();
+        return size;
     }
 
     public Set<Mapping> asSet() {
@@ -56,59 +97,284 @@ public class MappingStore implements Iterable<Mapping> {
 
             @Override
             public Iterator<Mapping> iterator() {
-                Iterator<ITree> it = srcToDst.keySet().iterator();
+                checkNumbers();
                 return new Iterator<Mapping>() {
+                    private int next = nextMappedSrc(0);
+
                     @Override
                     public boolean hasNext() {
-                        return it.hasNext();
+                        return next != NO_NODE;
                     }
 
                     @Override
                     public Mapping next() {
-                        ITree src = it.next();
-                        if (src == null) return null;
-                        return new Mapping(src, srcToDst.get(src));
+                        if (next == NO_NODE)
+                            throw new NoSuchElementException();
+                        Mapping m = new Mapping(getSrc(next), getDstForSrc(next));
+                        next = nextMappedSrc(next + 1);
+                        return m;
                     }
                 };
             }
 
             @Override
             public int size() {
-                return srcToDst.keySet().size();
+                return size;
             }
         };
     }
 
+    /**
+     * Returns the number of the first mapped src node whose number is greater or equal to the given
+     * one, or {@link #NO_NODE} if there is none. Unlike {@link #iterator()}, iterating the mappings
+     * with numbers allocates nothing:
+     * <pre>
+     * for (int i = ms.nextMappedSrc(0); i != MappingStore.NO_NODE; i = ms.nextMappedSrc(i + 1))
+     *     visit(ms.getSrc(i), ms.getDstForSrc(i));
+     * </pre>
+     * The numbers are only valid as long as the trees are not modified.
+     */
+    public int nextMappedSrc(int from) {
+        for (int i = Math.max(from, 0); i < srcToDst.length; i++)
+            if (srcToDst[i] != NO_NODE)
+                return i;
+        return NO_NODE;
+    }
+
+    /**
+     * Returns the number of the first mapped dst node whose number is greater or equal to the given
+     * one, or {@link #NO_NODE} if there is none.
+     * @see #nextMappedSrc(int)
+     */
+    public int nextMappedDst(int from) {
+        for (int i = Math.max(from, 0); i < dstToSrc.length; i++)
+            if (dstToSrc[i] != NO_NODE)
+                return i;
+        return NO_NODE;
+    }
+
+    /**
+     * Returns the mapped src node with the given number.
+     */
+    public ITree getSrc(int srcNumber) {
+        return srcNumbers.node(srcNumber);
+    }
+
+    /**
+     * Returns the mapped dst node with the given number.
+     */
+    public ITree getDst(int dstNumber) {
+        return dstNumbers.node(dstNumber);
+    }
+
+    /**
+     * Returns the dst node mapped to the src node with the given number, or null.
+     */
+    public ITree getDstForSrc(int srcNumber) {
+        int d = srcToDst[srcNumber];
+        return d == NO_NODE ? null : dstNumbers.node(d);
+    }
+
+    /**
+     * Returns the src node mapped to the dst node with the given number, or null.
+     */
+    public ITree getSrcForDst(int dstNumber) {
+        int s = dstToSrc[dstNumber];
+        return s == NO_NODE ? null : srcNumbers.node(s);
+    }
+
     public void addMapping(ITree src, ITree dst) {
-        srcToDst.put(src, dst);
-        dstToSrc.put(dst, src);
+        checkNumbers();
+        unmapSrc(srcNumbers.find(src));
+        unmapDst(dstNumbers.find(dst));
+        link(src, dst);
+        changed(src, dst, true);
     }
 
+    private void link(ITree src, ITree dst) {
+        int s = srcNumbers.assign(src);
+        int d = dstNumbers.assign(dst);
+        if (s >= srcToDst.length)
+            srcToDst = grow(srcToDst, srcNumbers.nodes.length);
+        if (d >= dstToSrc.length)
+            dstToSrc = grow(dstToSrc, dstNumbers.nodes.length);
+        srcToDst[s] = d;
+        dstToSrc[d] = s;
+        size++;
+    }
+
+    private static int[] grow(int[] slots, int length) {
+        int oldLength = slots.length;
+        slots = Arrays.copyOf(slots, length);
+        Arrays.fill(slots, oldLength, length, NO_NODE);
+        return slots;
+    }
+
+    /**
+     * Maps the given isomorphic trees node by node. When the children of both nodes have not been
+     * read from their lazy sources, and the changes are neither recorded nor listened to, the
+     * descendants are mapped by their numbers, and only created when they are requested.
+     */
     public void addMappingRecursively(ITree src, ITree dst) {
         addMapping(src, dst);
+        if (journal == null && listeners == null && srcNumbers.isUnread(src) && dstNumbers.isUnread(dst)) {
+            int s = srcNumbers.treeNumber(src);
+            int d = dstNumbers.treeNumber(dst);
+            int descendants = src.getMetrics().size - 1;
+            for (int i = 1; i <= descendants; i++) {
+                unmapSrc(s + i);
+                unmapDst(d + i);
+                srcNumbers.assignUnread(s + i);
+                dstNumbers.assignUnread(d + i);
+                srcToDst[s + i] = d + i;
+                dstToSrc[d + i] = s + i;
+            }
+            size += descendants;
+            return;
+        }
         for (int i = 0; i < src.getChildren().size(); i++)
             addMappingRecursively(src.getChild(i), dst.getChild(i));
     }
 
     public void removeMapping(ITree src, ITree dst) {
-        srcToDst.remove(src);
-        dstToSrc.remove(dst);
+        checkNumbers();
+        unmapSrc(srcNumbers.find(src));
+        unmapDst(dstNumbers.find(dst));
+    }
+
+    private void unmapSrc(int s) {
+        if (s == NO_NODE || srcToDst[s] == NO_NODE)
+            return;
+        int d = srcToDst[s];
+        ITree src = srcNumbers.node(s);
+        ITree dst = dstNumbers.node(d);
+        srcToDst[s] = NO_NODE;
+        dstToSrc[d] = NO_NODE;
+        srcNumbers.release(s);
+        dstNumbers.release(d);
+        size--;
+        changed(src, dst, false);
+    }
+
+    private void unmapDst(int d) {
+        if (d == NO_NODE || dstToSrc[d] == NO_NODE)
+            return;
+        unmapSrc(dstToSrc[d]);
+    }
+
+    private void changed(ITree src, ITree dst, boolean added) {
+        if (journal != null) {
+            if (2 * journalSize == journal.length) {
+                journal = Arrays.copyOf(journal, journal.length * 2);
+                journalAdditions = Arrays.copyOf(journalAdditions, journalAdditions.length * 2);
+            }
+            journal[2 * journalSize] = src;
+            journal[2 * journalSize + 1] = dst;
+            journalAdditions[journalSize++] = added;
+        }
+        if (listeners != null) {
+            for (Listener listener : listeners) {
+                if (added)
+                    listener.mappingAdded(src, dst);
+                else
+                    listener.mappingRemoved(src, dst);
+            }
+        }
+    }
+
+    /**
+     * Returns a mark of the current mappings, to restore them later with {@link #rollbackTo(int)}.
+     * The first mark starts recording the changes of the mappings in a journal, which costs a few
+     * references per change, until {@link #discardJournal()} is called.
+     */
+    public int mark() {
+        if (journal == null) {
+            journal = new ITree[64];
+            journalAdditions = new boolean[32];
+        }
+        return journalSize;
+    }
+
+    /**
+     * Undoes the changes made since the given mark, most recent first. The listeners are notified
+     * of each undone change. The marks taken after the given one become invalid.
+     * @throws IllegalArgumentException if the mark is not valid.
+     */
+    public void rollbackTo(int mark) {
+        if (journal == null || mark < 0 || mark > journalSize)
+            throw new IllegalArgumentException("Invalid mark: " + mark);
+        ITree[] entries = journal;
+        journal = null;
+        for (int i = journalSize - 1; i >= mark; i--) {
+            if (journalAdditions[i])
+                removeMapping(entries[2 * i], entries[2 * i + 1]);
+            else
+                addMapping(entries[2 * i], entries[2 * i + 1]);
+        }
+        Arrays.fill(entries, 2 * mark, 2 * journalSize, null);
+        journal = entries;
+        journalSize = mark;
+    }
+
+    /**
+     * Stops recording the changes of the mappings, invalidating all the marks.
+     */
+    public void discardJournal() {
+        journal = null;
+        journalAdditions = null;
+        journalSize = 0;
+    }
+
+    public void addListener(Listener listener) {
+        if (listeners == null)
+            listeners = new ArrayList<>();
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        if (listeners != null && listeners.remove(listener) && listeners.isEmpty())
+            listeners = null;
     }
 
     public ITree getDstForSrc(ITree src) {
-        return srcToDst.get(src);
+        checkNumbers();
+        int s = srcNumbers.find(src);
+        return s == NO_NODE ? null : getDstForSrc(s);
     }
 
     public ITree getSrcForDst(ITree dst) {
-        return dstToSrc.get(dst);
+        checkNumbers();
+        int d = dstNumbers.find(dst);
+        return d == NO_NODE ? null : getSrcForDst(d);
     }
 
     public boolean isSrcMapped(ITree src) {
-        return srcToDst.containsKey(src);
+        checkNumbers();
+        return srcNumbers.find(src) != NO_NODE;
     }
 
     public boolean isDstMapped(ITree dst) {
-        return dstToSrc.containsKey(dst);
+        checkNumbers();
+        return dstNumbers.find(dst) != NO_NODE;
+    }
+
+    /**
+     * Returns the number of the given node of the src tree, or {@link #NO_NODE} if it is not in the tree.
+     */
+    int getSrcNumber(ITree src) {
+        checkNumbers();
+        return srcNumbers.treeNumber(src);
+    }
+
+    /**
+     * Returns the number of the dst node mapped to the src node with the given number, or {@link #NO_NODE}.
+     */
+    int getDstNumberForSrc(int srcNumber) {
+        return srcToDst[srcNumber];
+    }
+
+    boolean isDstNumberMapped(int dstNumber) {
+        return dstToSrc[dstNumber] != NO_NODE;
     }
 
     public boolean areBothUnmapped(ITree src, ITree dst) {
@@ -132,23 +398,95 @@ public class MappingStore implements Iterable<Mapping> {
     }
 
     public boolean hasUnmappedSrcChildren(ITree t) {
-        for (ITree c : t.getDescendants())
-            if (!isSrcMapped(c))
+        checkNumbers();
+        int n = srcNumbers.treeNumber(t);
+        int descendants = t.getMetrics().size - 1;
+        if (n != NO_NODE)
+            return srcNumbers.countMapped(n + 1, n + 1 + descendants) < descendants;
+        for (int i = 0; i < descendants; i++)
+            if (!isSrcMapped(t.getDescendant(i)))
                 return true;
 
         return false;
     }
 
     public boolean hasUnmappedDstChildren(ITree t) {
-        for (ITree c : t.getDescendants())
-            if (!isDstMapped(c))
+        checkNumbers();
+        int n = dstNumbers.treeNumber(t);
+        int descendants = t.getMetrics().size - 1;
+        if (n != NO_NODE)
+            return dstNumbers.countMapped(n + 1, n + 1 + descendants) < descendants;
+        for (int i = 0; i < descendants; i++)
+            if (!isDstMapped(t.getDescendant(i)))
                 return true;
 
         return false;
     }
 
+    /**
+     * Returns the number of descendants of the given src node mapped to descendants of the given
+     * dst node. The mapped descendants of the nodes of both trees are counted as mappings are added
+     * and removed, and the descendants are recognized by their interval of pre-order numbers,
+     * therefore nothing is allocated. The descendants of one of the nodes are either all visited,
+     * or only the mapped ones, each found in logarithmic time, whichever is cheaper.
+     */
+    public int numberOfCommonDescendants(ITree src, ITree dst) {
+        checkNumbers();
+        int s = srcNumbers.treeNumber(src);
+        int d = dstNumbers.treeNumber(dst);
+        if (s == NO_NODE || d == NO_NODE) {
+            int common = 0;
+            int descendants = src.getMetrics().size - 1;
+            for (int i = 0; i < descendants; i++) {
+                ITree m = getDstForSrc(src.getDescendant(i));
+                if (m != null && m.isDescendantOf(dst))
+                    common++;
+            }
+            return common;
+        }
+
+        int srcEnd = s + src.getMetrics().size;
+        int dstEnd = d + dst.getMetrics().size;
+        int srcMapped = srcNumbers.countMapped(s + 1, srcEnd);
+        int dstMapped = dstNumbers.countMapped(d + 1, dstEnd);
+        int max = Math.min(srcMapped, dstMapped);
+        if (max == 0)
+            return 0;
+        long srcCost = Math.min(srcEnd - s, (long) srcMapped * srcNumbers.findCost());
+        long dstCost = Math.min(dstEnd - d, (long) dstMapped * dstNumbers.findCost());
+        if (srcCost <= dstCost)
+            return countPartners(srcNumbers, srcToDst, s + 1, srcEnd, srcMapped, d + 1, dstEnd, max);
+        else
+            return countPartners(dstNumbers, dstToSrc, d + 1, dstEnd, dstMapped, s + 1, srcEnd, max);
+    }
+
+    /**
+     * Returns the number of mapped nodes numbered in the first given interval whose partner is
+     * numbered in the second one, counting at most the given number of nodes.
+     */
+    private static int countPartners(Numbering numbers, int[] partners, int from, int to, int mapped,
+                                     int partnerFrom, int partnerTo, int max) {
+        int common = 0;
+        // Nodes outside the trees are numbered after them, so the interval only holds descendants.
+        if ((long) mapped * numbers.findCost() < to - from) {
+            int first = numbers.countMapped(0, from);
+            for (int k = first; k < first + mapped && common < max; k++) {
+                int m = partners[numbers.findMapped(k)];
+                if (m >= partnerFrom && m < partnerTo)
+                    common++;
+            }
+        } else {
+            for (int i = from; i < to && common < max; i++) {
+                int m = partners[i];
+                if (m >= partnerFrom && m < partnerTo)
+                    common++;
+            }
+        }
+        return common;
+    }
+
     public boolean has(ITree src, ITree dst) {
-        return srcToDst.get(src) == dst;
+        return getDstForSrc(src) == dst;
     }
 
     @Override
@@ -167,4 +505,213 @@ public class MappingStore implements Iterable<Mapping> {
     public boolean isMappingAllowed(ITree src, ITree dst) {
         return src.hasSameType(dst) && areBothUnmapped(src, dst);
     }
+
+    /**
+     * Receives the changes of the mappings of a store, including the changes undone by
+     * {@link #rollbackTo(int)}.
+     */
+    public interface Listener {
+        void mappingAdded(ITree src, ITree dst);
+
+        void mappingRemoved(ITree src, ITree dst);
+    }
+
+    /**
+     * Numbers the nodes again if one of the trees has been modified since they were numbered.
+     */
+    private void checkNumbers() {
+        if (srcNumbers.isOutdated() || dstNumbers.isOutdated()) {
+            ITree[] srcs = new ITree[size];
+            ITree[] dsts = new ITree[size];
+            int n = 0;
+            for (int i = nextMappedSrc(0); i != NO_NODE; i = nextMappedSrc(i + 1)) {
+                srcs[n] = getSrc(i);
+                dsts[n++] = getDstForSrc(i);
+            }
+            srcNumbers.reset();
+            dstNumbers.reset();
+            srcToDst = newSlots(srcNumbers.nodes.length);
+            dstToSrc = newSlots(dstNumbers.nodes.length);
+            size = 0;
+            for (int i = 0; i < n; i++)
+                link(srcs[i], dsts[i]);
+        }
+    }
+
+    /**
+     * Numbers the mapped nodes of a tree. A node of the tree takes its pre-order number, the other
+     * nodes take the next number after the last node of the tree. The mapped nodes of the tree are
+     * also counted in a Fenwick tree, to count the mapped descendants of a node, or find the k-th
+     * mapped node, in logarithmic time.
+     */
+    private static final class Numbering {
+        /**
+         * Stands for the mapped nodes of a lazy tree which have not been created yet.
+         */
+        private static final ITree UNREAD = new FakeTree();
+
+        private final ITree root;
+
+        private final LazyTree lazyRoot;
+
+        /**
+         * The metrics of the root when the nodes were numbered, replaced when the tree is modified.
+         */
+        private TreeMetrics rootMetrics;
+
+        private int base;
+
+        private int treeSize;
+
+        /**
+         * The mapped node of each number, null for a free number, {@link #UNREAD} for a node of a lazy
+         * tree numbered as in its source, which is created by {@link #node(int)}.
+         */
+        ITree[] nodes;
+
+        private int next;
+
+        private Map<ITree, Integer> others;
+
+        private int[] mapped;
+
+        Numbering(ITree root) {
+            this.root = root;
+            lazyRoot = root instanceof LazyTree ? (LazyTree) root : null;
+            reset();
+        }
+
+        void reset() {
+            rootMetrics = root == null ? null : root.getMetrics();
+            base = root == null ? 0 : rootMetrics.preOrder;
+            treeSize = root == null ? 0 : rootMetrics.size;
+            nodes = new ITree[treeSize + 1];
+            next = treeSize;
+            others = null;
+            mapped = new int[treeSize + 1];
+        }
+
+        boolean isOutdated() {
+            return root != null && root.getMetrics() != rootMetrics;
+        }
+
+        /**
+         * Returns the number of the given mapped node, or {@link #NO_NODE} if it is not mapped.
+         */
+        int find(ITree t) {
+            int n = preOrderNumber(t);
+            if (n != NO_NODE && (nodes[n] == t || nodes[n] == UNREAD && treeNumber(t) == n))
+                return n;
+            if (others != null) {
+                Integer i = others.get(t);
+                if (i != null)
+                    return i;
+            }
+            return NO_NODE;
+        }
+
+        int assign(ITree t) {
+            int n = treeNumber(t);
+            if (n != NO_NODE) {
+                nodes[n] = t;
+                count(n, 1);
+                return n;
+            }
+            if (others == null)
+                others = new IdentityHashMap<>();
+            n = next++;
+            if (n == nodes.length)
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            nodes[n] = t;
+            others.put(t, n);
+            return n;
+        }
+
+        ITree node(int n) {
+            ITree t = nodes[n];
+            return t == UNREAD ? lazyRoot.getNode(base + n) : t;
+        }
+
+        /**
+         * Returns true if the given node belongs to the tree, has not been expanded, and its descendants
+         * are numbered as in its source, so that they can be mapped without being created.
+         */
+        boolean isUnread(ITree t) {
+            if (lazyRoot == null || !(t instanceof LazyTree))
+                return false;
+            LazyTree l = (LazyTree) t;
+            return !l.isExpanded() && l.isUnmodified() && lazyRoot.hasSameSource(l) && treeNumber(t) != NO_NODE;
+        }
+
+        void assignUnread(int n) {
+            nodes[n] = UNREAD;
+            count(n, 1);
+        }
+
+        void release(int n) {
+            if (n >= treeSize)
+                others.remove(nodes[n]);
+            else
+                count(n, -1);
+            nodes[n] = null;
+        }
+
+        /**
+         * Returns the pre-order number of the given node if it belongs to the tree, or {@link #NO_NODE}.
+         */
+        int treeNumber(ITree t) {
+            int n = preOrderNumber(t);
+            if (n == NO_NODE || nodes[n] == t || t == root)
+                return n;
+            return t.isDescendantOf(root) ? n : NO_NODE;
+        }
+
+        /**
+         * Returns the number of mapped nodes of the tree numbered from the first given number
+         * included to the second one excluded.
+         */
+        int countMapped(int from, int to) {
+            return countBefore(to) - countBefore(from);
+        }
+
+        /**
+         * Returns the number of the mapped node of the tree preceded by k mapped nodes.
+         */
+        int findMapped(int k) {
+            int n = 0;
+            for (int step = Integer.highestOneBit(treeSize); step > 0; step >>= 1) {
+                if (n + step <= treeSize && mapped[n + step] <= k) {
+                    n += step;
+                    k -= mapped[n];
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Returns the number of steps of {@link #findMapped(int)}.
+         */
+        int findCost() {
+            return Integer.SIZE - Integer.numberOfLeadingZeros(treeSize);
+        }
+
+        private int countBefore(int n) {
+            int count = 0;
+            for (int i = n; i > 0; i -= i & -i)
+                count += mapped[i];
+            return count;
+        }
+
+        private void count(int n, int delta) {
+            for (int i = n + 1; i <= treeSize; i += i & -i)
+                mapped[i] += delta;
+        }
+
+        private int preOrderNumber(ITree t) {
+            if (treeSize == 0 || t == null)
+                return NO_NODE;
+            int n = t.getMetrics().preOrder - base;
+            return n >= 0 && n < treeSize ? n : NO_NODE;
+        }
+    }
 }
@@ -1,119 +1,481 @@
-/*
- * This file is part of GumTree.
- *
- * GumTree is free software: you can redistribute it and/or modify
- * it under the terms of the GNU Lesser General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- *
- * GumTree is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU Lesser General Public License for more details.
- *
- * You should have received a copy of the GNU Lesser General Public License
- * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
- *
- * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
- * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
- */
-
-package com.github.gumtreediff.matchers;
-
-import java.util.*;
-import java.util.stream.Collectors;
-
-import com.github.gumtreediff.tree.ITree;
-
-public class MultiMappingStore implements Iterable<Mapping> {
-    private Map<ITree, Set<ITree>> srcToDsts;
-    private Map<ITree, Set<ITree>> dstToSrcs;
-
-    public MultiMappingStore(Set<Mapping> mappings) {
-        this();
-        for (Mapping m: mappings)
-            addMapping(m.first, m.second);
-    }
-
-    public MultiMappingStore() {
-        srcToDsts = new  HashMap<>();
-        dstToSrcs = new HashMap<>();
-    }
-
-    public Set<Mapping> getMappings() {
-        Set<Mapping> mappings = new HashSet<>();
-        for (ITree src : srcToDsts.keySet())
-            for (ITree dst: srcToDsts.get(src))
-                mappings.add(new Mapping(src, dst));
-        return mappings;
-    }
-
-    public void addMapping(ITree src, ITree dst) {
-        if (!srcToDsts.containsKey(src))
-            srcToDsts.put(src, new HashSet<>());
-        srcToDsts.get(src).add(dst);
-        if (!dstToSrcs.containsKey(dst))
-            dstToSrcs.put(dst, new HashSet<>());
-        dstToSrcs.get(dst).add(src);
-    }
-
-    public void removeMapping(ITree src, ITree dst) {
-        srcToDsts.get(src).remove(dst);
-        dstToSrcs.get(dst).remove(src);
-    }
-
-    public int size() {
-        return getMappings().size();
-    }
-
-    public Set<ITree> getDsts(ITree src) {
-        return srcToDsts.get(src);
-    }
-
-    public Set<ITree> getSrcs(ITree dst) {
-        return dstToSrcs.get(dst);
-    }
-
-    public Set<ITree> allMappedSrcs() {
-        return srcToDsts.keySet();
-    }
-
-    public Set<ITree> allMappedDsts() {
-        return dstToSrcs.keySet();
-    }
-
-    public boolean hasSrc(ITree src) {
-        return srcToDsts.containsKey(src);
-    }
-
-    public boolean hasDst(ITree dst) {
-        return dstToSrcs.containsKey(dst);
-    }
-
-    public boolean has(ITree src, ITree dst) {
-        return srcToDsts.get(src).contains(dst);
-    }
-
-    public boolean isSrcUnique(ITree src) {
-        return getDsts(src).size() == 1;
-    }
-
-    public boolean isDstUnique(ITree dst) {
-        return getSrcs(dst).size() == 1;
-    }
-
-    @Override
-    public String toString() {
-        StringBuilder b = new StringBuilder();
-        for (ITree t : srcToDsts.keySet()) {
-            String l = srcToDsts.get(t).stream().map(Object::toString).collect(Collectors.joining(", "));
-            b.append(String.format("%s -> %s", t.toString(), l)).append('\n');
-        }
-        return b.toString();
-    }
-
-    @Override
-    public Iterator<Mapping> iterator() {
-        return getMappings().iterator();
-    }
-}
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import com.github.gumtreediff.tree.ITree;
+
+/**
+ * Stores several mappings per node. The mappings are collected as packed pairs of node numbers,
+ * then sorted and indexed in both directions, in compressed arrays of adjacency, when they are
+ * first queried. Adding all the mappings before querying them is therefore the fastest way to
+ * fill a store, for instance with {@link #addSrc(ITree)}, {@link #addDst(ITree)} and
+ * {@link #addMapping(int, int)}, which do not look up the nodes for each pair. A removal only
+ * updates the adjacency arrays of its two nodes, and the pairs are rebuilt from these arrays, still
+ * sorted, when a mapping is added again.
+ */
+public class MultiMappingStore implements Iterable<Mapping> {
+    private final Numbering srcs = new Numbering();
+    private final Numbering dsts = new Numbering();
+
+    /**
+     * The mappings, as the number of the src node in the high bits and the number of the dst node
+     * in the low bits. Once sorted, the pairs have no duplicates.
+     */
+    private long[] pairs = new long[16];
+    private int pairCount;
+
+    private boolean sorted = true;
+
+    // True if the pairs do not contain mappings removed from the adjacency arrays.
+    private boolean compacted = true;
+
+    private boolean indexed = true;
+
+    // The dst nodes of a src node s are numbered in dstsOfSrcs[dstOffsets[s]..dstEnds[s]).
+    private int[] dstOffsets = new int[1];
+    private int[] dstEnds = new int[0];
+    private int[] dstsOfSrcs = new int[0];
+
+    // The src nodes of a dst node d are numbered in srcsOfDsts[srcOffsets[d]..srcEnds[d]).
+    private int[] srcOffsets = new int[1];
+    private int[] srcEnds = new int[0];
+    private int[] srcsOfDsts = new int[0];
+
+    private int mappedSrcCount;
+    private int mappedDstCount;
+
+    public MultiMappingStore(Set<Mapping> mappings) {
+        this();
+        for (Mapping m: mappings)
+            addMapping(m.first, m.second);
+    }
+
+    public MultiMappingStore() {
+    }
+
+    public Set<Mapping> getMappings() {
+        Set<Mapping> mappings = new HashSet<>();
+        for (Mapping m : this)
+            mappings.add(m);
+        return mappings;
+    }
+
+    public void addMapping(ITree src, ITree dst) {
+        addMapping(addSrc(src), addDst(dst));
+    }
+
+    /**
+     * Returns the number of the given src node, numbering it if needed.
+     */
+    public int addSrc(ITree src) {
+        int count = srcs.count;
+        int n = srcs.add(src);
+        if (srcs.count != count)
+            indexed = false;
+        return n;
+    }
+
+    /**
+     * Returns the number of the given dst node, numbering it if needed.
+     */
+    public int addDst(ITree dst) {
+        int count = dsts.count;
+        int n = dsts.add(dst);
+        if (dsts.count != count)
+            indexed = false;
+        return n;
+    }
+
+    /**
+     * Adds a mapping between the nodes with the given numbers.
+     * @see #addSrc(ITree)
+     * @see #addDst(ITree)
+     */
+    public void addMapping(int src, int dst) {
+        if (!compacted)
+            compact();
+        long p = pair(src, dst);
+        if (pairCount > 0 && p <= pairs[pairCount - 1])
+            sorted = false;
+        if (pairCount == pairs.length)
+            pairs = Arrays.copyOf(pairs, pairCount * 2);
+        pairs[pairCount++] = p;
+        indexed = false;
+    }
+
+    private static long pair(int src, int dst) {
+        return ((long) src << 32) | dst;
+    }
+
+    public void removeMapping(ITree src, ITree dst) {
+        index();
+        int s = srcs.find(src);
+        int d = dsts.find(dst);
+        if (s == -1 || d == -1)
+            return;
+        int i = Arrays.binarySearch(dstsOfSrcs, dstOffsets[s], dstEnds[s], d);
+        if (i < 0)
+            return;
+        System.arraycopy(dstsOfSrcs, i + 1, dstsOfSrcs, i, --dstEnds[s] - i);
+        if (dstEnds[s] == dstOffsets[s])
+            mappedSrcCount--;
+        int j = Arrays.binarySearch(srcsOfDsts, srcOffsets[d], srcEnds[d], s);
+        System.arraycopy(srcsOfDsts, j + 1, srcsOfDsts, j, --srcEnds[d] - j);
+        if (srcEnds[d] == srcOffsets[d])
+            mappedDstCount--;
+        pairCount--;
+        compacted = false;
+    }
+
+    public int size() {
+        index();
+        return pairCount;
+    }
+
+    /**
+     * Returns the number of dst nodes mapped to the given src node.
+     */
+    public int getDstCount(ITree src) {
+        index();
+        int s = srcs.find(src);
+        return s == -1 ? 0 : dstEnds[s] - dstOffsets[s];
+    }
+
+    /**
+     * Returns the dst node at the given index among the dst nodes mapped to the given src node.
+     * Together with {@link #getDstCount(ITree)}, it iterates the mappings of a node without
+     * allocating.
+     */
+    public ITree getDst(ITree src, int index) {
+        index();
+        return dsts.nodes[dstsOfSrcs[dstOffsets[srcs.find(src)] + index]];
+    }
+
+    /**
+     * Returns the number of src nodes mapped to the given dst node.
+     */
+    public int getSrcCount(ITree dst) {
+        index();
+        int d = dsts.find(dst);
+        return d == -1 ? 0 : srcEnds[d] - srcOffsets[d];
+    }
+
+    /**
+     * Returns the src node at the given index among the src nodes mapped to the given dst node.
+     */
+    public ITree getSrc(ITree dst, int index) {
+        index();
+        return srcs.nodes[srcsOfDsts[srcOffsets[dsts.find(dst)] + index]];
+    }
+
+    public Set<ITree> getDsts(ITree src) {
+        index();
+        int s = srcs.find(src);
+        if (s == -1)
+            return Collections.emptySet();
+        return new NodeSet(dsts, dstsOfSrcs, dstOffsets[s], dstEnds[s]);
+    }
+
+    public Set<ITree> getSrcs(ITree dst) {
+        index();
+        int d = dsts.find(dst);
+        if (d == -1)
+            return Collections.emptySet();
+        return new NodeSet(srcs, srcsOfDsts, srcOffsets[d], srcEnds[d]);
+    }
+
+    public Set<ITree> allMappedSrcs() {
+        return new MappedNodeSet(true);
+    }
+
+    public Set<ITree> allMappedDsts() {
+        return new MappedNodeSet(false);
+    }
+
+    public boolean hasSrc(ITree src) {
+        return getDstCount(src) > 0;
+    }
+
+    public boolean hasDst(ITree dst) {
+        return getSrcCount(dst) > 0;
+    }
+
+    public boolean has(ITree src, ITree dst) {
+        index();
+        int s = srcs.find(src);
+        int d = dsts.find(dst);
+        return s != -1 && d != -1 && Arrays.binarySearch(dstsOfSrcs, dstOffsets[s], dstEnds[s], d) >= 0;
+    }
+
+    public boolean isSrcUnique(ITree src) {
+        return getDstCount(src) == 1;
+    }
+
+    public boolean isDstUnique(ITree dst) {
+        return getSrcCount(dst) == 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (ITree t : allMappedSrcs()) {
+            String l = getDsts(t).stream().map(Object::toString).collect(Collectors.joining(", "));
+            b.append(String.format("%s -> %s", t.toString(), l)).append('\n');
+        }
+        return b.toString();
+    }
+
+    @Override
+    public Iterator<Mapping> iterator() {
+        index();
+        return new Iterator<Mapping>() {
+            private int src = skipUnmapped(0);
+
+            private int next = src < dstEnds.length ? dstOffsets[src] : 0;
+
+            private int skipUnmapped(int s) {
+                while (s < dstEnds.length && dstOffsets[s] == dstEnds[s])
+                    s++;
+                return s;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return src < dstEnds.length;
+            }
+
+            @Override
+            public Mapping next() {
+                if (src >= dstEnds.length)
+                    throw new NoSuchElementException();
+                Mapping m = new Mapping(srcs.nodes[src], dsts.nodes[dstsOfSrcs[next++]]);
+                if (next == dstEnds[src]) {
+                    src = skipUnmapped(src + 1);
+                    if (src < dstEnds.length)
+                        next = dstOffsets[src];
+                }
+                return m;
+            }
+        };
+    }
+
+    /**
+     * Rebuilds the pairs from the adjacency arrays, after some mappings have been removed. The
+     * pairs remain sorted.
+     */
+    private void compact() {
+        int n = 0;
+        for (int s = 0; s < dstEnds.length; s++)
+            for (int i = dstOffsets[s]; i < dstEnds[s]; i++)
+                pairs[n++] = pair(s, dstsOfSrcs[i]);
+        pairCount = n;
+        compacted = true;
+    }
+
+    /**
+     * Sorts the pairs if needed, removes the duplicates, and rebuilds the adjacency arrays.
+     */
+    private void index() {
+        if (indexed)
+            return;
+        if (!compacted)
+            compact();
+        if (!sorted) {
+            Arrays.sort(pairs, 0, pairCount);
+            int n = 0;
+            for (int i = 0; i < pairCount; i++)
+                if (n == 0 || pairs[i] != pairs[n - 1])
+                    pairs[n++] = pairs[i];
+            pairCount = n;
+            sorted = true;
+        }
+
+        dstOffsets = new int[srcs.count + 1];
+        srcOffsets = new int[dsts.count + 1];
+        for (int i = 0; i < pairCount; i++) {
+            dstOffsets[(int) (pairs[i] >>> 32) + 1]++;
+            srcOffsets[(int) pairs[i] + 1]++;
+        }
+        mappedSrcCount = countMapped(dstOffsets);
+        mappedDstCount = countMapped(srcOffsets);
+        for (int i = 0; i < srcs.count; i++)
+            dstOffsets[i + 1] += dstOffsets[i];
+        for (int i = 0; i < dsts.count; i++)
+            srcOffsets[i + 1] += srcOffsets[i];
+
+        // The pairs are sorted by src node, so the src nodes of each dst node are sorted too.
+        dstsOfSrcs = new int[pairCount];
+        srcsOfDsts = new int[pairCount];
+        srcEnds = Arrays.copyOf(srcOffsets, dsts.count);
+        for (int i = 0; i < pairCount; i++) {
+            int d = (int) pairs[i];
+            dstsOfSrcs[i] = d;
+            srcsOfDsts[srcEnds[d]++] = (int) (pairs[i] >>> 32);
+        }
+        dstEnds = Arrays.copyOfRange(dstOffsets, 1, srcs.count + 1);
+        indexed = true;
+    }
+
+    private static int countMapped(int[] counts) {
+        int mapped = 0;
+        for (int i = 1; i < counts.length; i++)
+            if (counts[i] > 0)
+                mapped++;
+        return mapped;
+    }
+
+    /**
+     * Numbers the nodes of one side of the mappings in the order they are added.
+     */
+    private static final class Numbering {
+        private final Map<ITree, Integer> numbers = new IdentityHashMap<>();
+
+        ITree[] nodes = new ITree[16];
+
+        int count;
+
+        int add(ITree t) {
+            Integer n = numbers.get(t);
+            if (n != null)
+                return n;
+            if (count == nodes.length)
+                nodes = Arrays.copyOf(nodes, count * 2);
+            nodes[count] = t;
+            numbers.put(t, count);
+            return count++;
+        }
+
+        int find(ITree t) {
+            Integer n = numbers.get(t);
+            return n == null ? -1 : n;
+        }
+    }
+
+    /**
+     * The nodes mapped to a given node, whose numbers are in a range of an adjacency array.
+     */
+    private static final class NodeSet extends AbstractSet<ITree> {
+        private final Numbering numbering;
+
+        private final int[] adjacency;
+
+        private final int from;
+
+        private final int to;
+
+        NodeSet(Numbering numbering, int[] adjacency, int from, int to) {
+            this.numbering = numbering;
+            this.adjacency = adjacency;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<ITree> iterator() {
+            return new Iterator<ITree>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public ITree next() {
+                    if (next >= to)
+                        throw new NoSuchElementException();
+                    return numbering.nodes[adjacency[next++]];
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof ITree))
+                return false;
+            int n = numbering.find((ITree) o);
+            return n != -1 && Arrays.binarySearch(adjacency, from, to, n) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * The nodes of one side having at least one mapping.
+     */
+    private final class MappedNodeSet extends AbstractSet<ITree> {
+        private final boolean src;
+
+        MappedNodeSet(boolean src) {
+            this.src = src;
+        }
+
+        @Override
+        public Iterator<ITree> iterator() {
+            index();
+            Numbering numbering = src ? srcs : dsts;
+            int[] offsets = src ? dstOffsets : srcOffsets;
+            int[] ends = src ? dstEnds : srcEnds;
+            return new Iterator<ITree>() {
+                private int next = skipUnmapped(0);
+
+                private int skipUnmapped(int i) {
+                    while (i < numbering.count && offsets[i] == ends[i])
+                        i++;
+                    return i;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < numbering.count;
+                }
+
+                @Override
+                public ITree next() {
+                    if (next >= numbering.count)
+                        throw new NoSuchElementException();
+                    ITree t = numbering.nodes[next];
+                    next = skipUnmapped(next + 1);
+                    return t;
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof ITree))
+                return false;
+            return src ? hasSrc((ITree) o) : hasDst((ITree) o);
+        }
+
+        @Override
+        public int size() {
+            index();
+            return src ? mappedSrcCount : mappedDstCount;
+        }
+    }
+}
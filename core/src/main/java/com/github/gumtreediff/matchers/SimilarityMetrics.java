@@ -21,46 +21,55 @@ package com.github.gumtreediff.matchers;
 
 import com.github.gumtreediff.tree.ITree;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class SimilarityMetrics {
     private SimilarityMetrics() {}
 
     public static double chawatheSimilarity(ITree src, ITree dst, MappingStore mappings) {
-        int max = Math.max(src.getDescendants().size(), dst.getDescendants().size());
-        return (double) numberOfCommonDescendants(src, dst, mappings) / (double) max;
+        return chawatheSimilarity(src, dst, numberOfCommonDescendants(src, dst, mappings));
+    }
+
+    /**
+     * Returns the chawathe similarity of the given trees, knowing their number of common descendants.
+     * The other similarities also have such variants, used with a {@link CandidateIndex}.
+     */
+    public static double chawatheSimilarity(ITree src, ITree dst, int commonDescendants) {
+        int max = Math.max(numberOfDescendants(src), numberOfDescendants(dst));
+        return (double) commonDescendants / (double) max;
     }
 
     public static double overlapSimilarity(ITree src, ITree dst, MappingStore mappings) {
-        int min = Math.min(src.getDescendants().size(), dst.getDescendants().size());
-        return (double) numberOfCommonDescendants(src, dst, mappings) / (double) min;
+        return overlapSimilarity(src, dst, numberOfCommonDescendants(src, dst, mappings));
+    }
+
+    public static double overlapSimilarity(ITree src, ITree dst, int commonDescendants) {
+        int min = Math.min(numberOfDescendants(src), numberOfDescendants(dst));
+        return (double) commonDescendants / (double) min;
     }
 
     public static double diceSimilarity(ITree src, ITree dst, MappingStore mappings) {
-        double commonDescendants = (double) numberOfCommonDescendants(src, dst, mappings);
-        return (2D * commonDescendants)
-                / ((double) src.getDescendants().size() + (double) dst.getDescendants().size());
+        return diceSimilarity(src, dst, numberOfCommonDescendants(src, dst, mappings));
+    }
+
+    public static double diceSimilarity(ITree src, ITree dst, int commonDescendants) {
+        return (2D * (double) commonDescendants)
+                / ((double) numberOfDescendants(src) + (double) numberOfDescendants(dst));
     }
 
     public static double jaccardSimilarity(ITree src, ITree dst, MappingStore mappings) {
-        double num = (double) numberOfCommonDescendants(src, dst, mappings);
-        double den = (double) src.getDescendants().size() + (double) dst.getDescendants().size() - num;
+        return jaccardSimilarity(src, dst, numberOfCommonDescendants(src, dst, mappings));
+    }
+
+    public static double jaccardSimilarity(ITree src, ITree dst, int commonDescendants) {
+        double num = (double) commonDescendants;
+        double den = (double) numberOfDescendants(src) + (double) numberOfDescendants(dst) - num;
         return num / den;
     }
 
     private static int numberOfCommonDescendants(ITree src, ITree dst, MappingStore mappings) {
-        Set<ITree> dstDescendants = new HashSet<>(dst.getDescendants());
-        int common = 0;
-
-        for (ITree t : src.getDescendants()) {
-            if (mappings.isSrcMapped(t)) {
-                ITree m = mappings.getDstForSrc(t);
-                if (dstDescendants.contains(m))
-                    common++;
-            }
-        }
+        return mappings.numberOfCommonDescendants(src, dst);
+    }
 
-        return common;
+    private static int numberOfDescendants(ITree tree) {
+        return tree.getMetrics().size - 1;
     }
 }
@@ -22,6 +22,7 @@ package com.github.gumtreediff.matchers.heuristic;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.MetadataKey;
 import com.github.gumtreediff.tree.TreeUtils;
 
 import java.util.HashMap;
@@ -34,7 +35,7 @@ public class IdMatcher implements Matcher {
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
         Map<String, Set<ITree>> srcCandidateMappings = new HashMap<>();
         for (ITree t: TreeUtils.preOrder(src)) {
-            String id = (String) t.getMetadata("id");
+            String id = t.getMetadata(MetadataKey.ID);
             if (id != null) {
                 if (!srcCandidateMappings.containsKey(id))
                     srcCandidateMappings.put(id, new HashSet<>());
@@ -44,7 +45,7 @@ public class IdMatcher implements Matcher {
 
         Map<String, Set<ITree>> dstCandidateMappings = new HashMap<>();
         for (ITree t: TreeUtils.preOrder(dst)) {
-            String id = (String) t.getMetadata("id");
+            String id = t.getMetadata(MetadataKey.ID);
             if (id != null) {
                 if (!dstCandidateMappings.containsKey(id))
                     dstCandidateMappings.put(id, new HashSet<>());
@@ -20,20 +20,16 @@
 
 package com.github.gumtreediff.matchers.heuristic;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import com.github.gumtreediff.matchers.CandidateIndex;
 import com.github.gumtreediff.matchers.ConfigurableMatcher;
 import com.github.gumtreediff.matchers.ConfigurationOptions;
 import com.github.gumtreediff.matchers.GumTreeProperties;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
-import com.github.gumtreediff.tree.Type;
+import com.github.gumtreediff.tree.TypeSet;
 import com.google.common.collect.Sets;
 
 /**
@@ -50,6 +46,11 @@ public class XyBottomUpMatcher implements ConfigurableMatcher {
 
     protected double simThreshold = DEFAULT_SIM_THRESHOLD;
 
+    // Scratch histograms of children types, indexed by type id and reset after each use.
+    private int[] srcTypeCounts = new int[0];
+    private int[] dstTypeCounts = new int[0];
+    private ITree[] dstTypeChildren = new ITree[0];
+
     public XyBottomUpMatcher() {
 
     }
@@ -61,18 +62,19 @@ public class XyBottomUpMatcher implements ConfigurableMatcher {
 
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
-
+        CandidateIndex candidates = new CandidateIndex(mappings);
         for (ITree iSrc : src.postOrder()) {
             if (iSrc.isRoot()) {
                 mappings.addMapping(iSrc, dst);
                 lastChanceMatch(mappings, iSrc, dst);
             } else if (!(mappings.isSrcMapped(iSrc) || iSrc.isLeaf())) {
-                Set<ITree> candidates = getDstCandidates(mappings, iSrc);
+                candidates.find(iSrc);
                 ITree best = null;
                 double max = -1D;
 
-                for (ITree cand : candidates) {
-                    double sim = SimilarityMetrics.jaccardSimilarity(iSrc, cand, mappings);
+                for (int i = 0; i < candidates.size(); i++) {
+                    ITree cand = candidates.getCandidate(i);
+                    double sim = SimilarityMetrics.jaccardSimilarity(iSrc, cand, candidates.getCommonDescendants(i));
                     if (sim > max && sim >= simThreshold) {
                         max = sim;
                         best = cand;
@@ -88,48 +90,33 @@ public class XyBottomUpMatcher implements ConfigurableMatcher {
         return mappings;
     }
 
-    private Set<ITree> getDstCandidates(MappingStore mappings, ITree src) {
-        Set<ITree> seeds = new HashSet<>();
-        for (ITree c : src.getDescendants()) {
-            ITree m = mappings.getDstForSrc(c);
-            if (m != null)
-                seeds.add(m);
-        }
-        Set<ITree> candidates = new HashSet<>();
-        Set<ITree> visited = new HashSet<>();
-        for (ITree seed : seeds) {
-            while (seed.getParent() != null) {
-                ITree parent = seed.getParent();
-                if (visited.contains(parent))
-                    break;
-                visited.add(parent);
-                if (parent.getType() == src.getType() && !mappings.isDstMapped(parent))
-                    candidates.add(parent);
-                seed = parent;
-            }
+    private void lastChanceMatch(MappingStore mappings, ITree src, ITree dst) {
+        int types = TypeSet.size();
+        if (srcTypeCounts.length < types) {
+            srcTypeCounts = new int[types];
+            dstTypeCounts = new int[types];
+            dstTypeChildren = new ITree[types];
         }
 
-        return candidates;
-    }
+        for (ITree c : src.getChildren())
+            srcTypeCounts[c.getType().id]++;
+        for (ITree c : dst.getChildren()) {
+            dstTypeCounts[c.getType().id]++;
+            dstTypeChildren[c.getType().id] = c;
+        }
 
-    private void lastChanceMatch(MappingStore mappings, ITree src, ITree dst) {
-        Map<Type, List<ITree>> srcKinds = new HashMap<>();
-        Map<Type, List<ITree>> dstKinds = new HashMap<>();
         for (ITree c : src.getChildren()) {
-            if (!srcKinds.containsKey(c.getType()))
-                srcKinds.put(c.getType(), new ArrayList<>());
-            srcKinds.get(c.getType()).add(c);
+            int type = c.getType().id;
+            if (srcTypeCounts[type] == 1 && dstTypeCounts[type] == 1)
+                mappings.addMapping(c, dstTypeChildren[type]);
         }
+
+        for (ITree c : src.getChildren())
+            srcTypeCounts[c.getType().id] = 0;
         for (ITree c : dst.getChildren()) {
-            if (!dstKinds.containsKey(c.getType()))
-                dstKinds.put(c.getType(), new ArrayList<>());
-            dstKinds.get(c.getType()).add(c);
+            dstTypeCounts[c.getType().id] = 0;
+            dstTypeChildren[c.getType().id] = null;
         }
-
-        for (Type t : srcKinds.keySet())
-            if (dstKinds.get(t) != null && srcKinds.get(t).size() == dstKinds.get(t).size()
-                    && srcKinds.get(t).size() == 1)
-                mappings.addMapping(srcKinds.get(t).get(0), dstKinds.get(t).get(0));
     }
 
     public double getSim_threshold() {
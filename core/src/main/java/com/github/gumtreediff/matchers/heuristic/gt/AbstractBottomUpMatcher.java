@@ -20,17 +20,12 @@
 
 package com.github.gumtreediff.matchers.heuristic.gt;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import com.github.gumtreediff.matchers.ConfigurableMatcher;
 import com.github.gumtreediff.matchers.ConfigurationOptions;
 import com.github.gumtreediff.matchers.GumTreeProperties;
-import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
-import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
 import com.google.common.collect.Sets;
@@ -43,6 +38,8 @@ public abstract class AbstractBottomUpMatcher implements ConfigurableMatcher {
     protected int size_threshold = DEFAULT_SIZE_THRESHOLD;
     protected double sim_threshold = DEFAULT_SIM_THRESHOLD;
 
+    private final ZsMatcher zsMatcher = new ZsMatcher();
+
     public AbstractBottomUpMatcher() {
 
     }
@@ -53,40 +50,9 @@ public abstract class AbstractBottomUpMatcher implements ConfigurableMatcher {
         sim_threshold = properties.tryConfigure(ConfigurationOptions.GT_BUM_SMT, sim_threshold);
     }
 
-    protected List<ITree> getDstCandidates(MappingStore mappings, ITree src) {
-        List<ITree> seeds = new ArrayList<>();
-        for (ITree c : src.getDescendants()) {
-            if (mappings.isSrcMapped(c))
-                seeds.add(mappings.getDstForSrc(c));
-        }
-        List<ITree> candidates = new ArrayList<>();
-        Set<ITree> visited = new HashSet<>();
-        for (ITree seed : seeds) {
-            while (seed.getParent() != null) {
-                ITree parent = seed.getParent();
-                if (visited.contains(parent))
-                    break;
-                visited.add(parent);
-                if (parent.getType() == src.getType() && !(mappings.isDstMapped(parent) || parent.isRoot()))
-                    candidates.add(parent);
-                seed = parent;
-            }
-        }
-
-        return candidates;
-    }
-
     protected void lastChanceMatch(MappingStore mappings, ITree src, ITree dst) {
-        if (src.getMetrics().size < size_threshold || dst.getMetrics().size < size_threshold) {
-            Matcher m = new ZsMatcher();
-            MappingStore zsMappings = m.match(src, dst, new MappingStore(src, dst));
-            for (Mapping candidate : zsMappings) {
-                ITree srcCand = candidate.first;
-                ITree dstCand = candidate.second;
-                if (mappings.isMappingAllowed(srcCand, dstCand))
-                    mappings.addMapping(srcCand, dstCand);
-            }
-        }
+        if (src.getMetrics().size < size_threshold || dst.getMetrics().size < size_threshold)
+            zsMatcher.addAllowedMappings(src, dst, mappings);
     }
 
     public int getSize_threshold() {
@@ -21,8 +21,14 @@
 package com.github.gumtreediff.matchers.heuristic.gt;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 import com.github.gumtreediff.matchers.ConfigurableMatcher;
 import com.github.gumtreediff.matchers.ConfigurationOptions;
@@ -32,13 +38,28 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.SparseAssignment;
 import com.google.common.collect.Sets;
 
 public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
     private static final int DEFAULT_MIN_HEIGHT = 2;
 
+    private static final int DEFAULT_PARALLELISM = 1;
+
+    /**
+     * The number of trees below which a task of the parallel mode is not split.
+     */
+    private static final int PARALLEL_GRAIN = 256;
+
     protected int min_height = DEFAULT_MIN_HEIGHT;
 
+    /**
+     * The number of threads verifying and scoring the candidate trees, 1 to match sequentially.
+     */
+    protected int parallelism = DEFAULT_PARALLELISM;
+
+    private ForkJoinPool pool;
+
     protected ITree src;
     protected ITree dst;
     protected MappingStore mappings;
@@ -50,13 +71,31 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
     @Override
     public void configure(GumTreeProperties properties) {
         min_height = properties.tryConfigure(ConfigurationOptions.GT_STM_MH, min_height);
+        parallelism = properties.tryConfigure(ConfigurationOptions.GT_STM_PAR, parallelism);
     }
 
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
+        if (parallelism <= 1)
+            return match(src, dst, mappings, null);
+
+        // The trees are read concurrently, therefore their metrics are computed first. The children of
+        // lazy trees are created under a lock, when first accessed.
+        src.getMetrics();
+        dst.getMetrics();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return match(src, dst, mappings, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private MappingStore match(ITree src, ITree dst, MappingStore mappings, ForkJoinPool pool) {
         this.src = src;
         this.dst = dst;
         this.mappings = mappings;
+        this.pool = pool;
 
         MultiMappingStore multiMappings = new MultiMappingStore();
 
@@ -69,28 +108,33 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
 
             List<ITree> currentHeightSrcTrees = srcTrees.pop();
             List<ITree> currentHeightDstTrees = dstTrees.pop();
-
-            boolean[] marksForSrcTrees = new boolean[currentHeightSrcTrees.size()];
-            boolean[] marksForDstTrees = new boolean[currentHeightDstTrees.size()];
-
-            for (int i = 0; i < currentHeightSrcTrees.size(); i++) {
-                for (int j = 0; j < currentHeightDstTrees.size(); j++) {
-                    ITree srcg = currentHeightSrcTrees.get(i);
-                    ITree dstg = currentHeightDstTrees.get(j);
-
-                    if (srcg.isIsomorphicTo(dstg)) {
-                        multiMappings.addMapping(srcg, dstg);
-                        marksForSrcTrees[i] = true;
-                        marksForDstTrees[j] = true;
-                    }
+            IsomorphicTrees[] srcGroups = findIsomorphicTrees(currentHeightSrcTrees, currentHeightDstTrees);
+
+            // The trees are numbered in the store when their first mapping is found, in the order
+            // of the lists whether the groups have been found in parallel or not.
+            int[] srcNumbers = new int[currentHeightSrcTrees.size()];
+            int[] dstNumbers = new int[currentHeightDstTrees.size()];
+            Arrays.fill(srcNumbers, -1);
+            Arrays.fill(dstNumbers, -1);
+            for (int i = 0; i < srcGroups.length; i++) {
+                IsomorphicTrees group = srcGroups[i];
+                if (group == null)
+                    continue;
+
+                srcNumbers[i] = multiMappings.addSrc(currentHeightSrcTrees.get(i));
+                for (int k = 0; k < group.size; k++) {
+                    int j = group.indexes[k];
+                    if (dstNumbers[j] == -1)
+                        dstNumbers[j] = multiMappings.addDst(currentHeightDstTrees.get(j));
+                    multiMappings.addMapping(srcNumbers[i], dstNumbers[j]);
                 }
             }
 
-            for (int i = 0; i < marksForSrcTrees.length; i++)
-                if (marksForSrcTrees[i] == false)
+            for (int i = 0; i < srcNumbers.length; i++)
+                if (srcNumbers[i] == -1)
                     srcTrees.open(currentHeightSrcTrees.get(i));
-            for (int j = 0; j < marksForDstTrees.length; j++)
-                if (marksForDstTrees[j] == false)
+            for (int j = 0; j < dstNumbers.length; j++)
+                if (dstNumbers[j] == -1)
                     dstTrees.open(currentHeightDstTrees.get(j));
             srcTrees.updateHeight();
             dstTrees.updateHeight();
@@ -98,9 +142,126 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
         }
 
         filterMappings(multiMappings);
+        this.pool = null;
         return this.mappings;
     }
 
+    /**
+     * Returns the group of dst trees isomorphic to each src tree, or null if there is none.
+     * Only the trees with the same fingerprint can be isomorphic, and the dst trees of a
+     * fingerprint are grouped by isomorphism, so each src tree is verified once per group.
+     */
+    private IsomorphicTrees[] findIsomorphicTrees(List<ITree> srcs, List<ITree> dsts) {
+        Map<Long, Bucket> buckets = new HashMap<>();
+        for (int j = 0; j < dsts.size(); j++)
+            buckets.computeIfAbsent(dsts.get(j).getMetrics().fingerprint, fingerprint -> new Bucket()).add(j);
+
+        Bucket[] allBuckets = buckets.values().toArray(new Bucket[0]);
+        forEach(allBuckets.length, b -> allBuckets[b].group(dsts));
+
+        IsomorphicTrees[] srcGroups = new IsomorphicTrees[srcs.size()];
+        forEach(srcGroups.length, i -> {
+            ITree srcg = srcs.get(i);
+            Bucket bucket = buckets.get(srcg.getMetrics().fingerprint);
+            if (bucket != null)
+                srcGroups[i] = bucket.find(srcg);
+        });
+        return srcGroups;
+    }
+
+    /**
+     * Applies the given action to the integers from 0 to the given count excluded, in parallel in
+     * the parallel mode. The action must only read the trees and the mappings.
+     */
+    void forEach(int count, IntConsumer action) {
+        if (pool == null || count < 2 * PARALLEL_GRAIN) {
+            for (int i = 0; i < count; i++)
+                action.accept(i);
+        } else
+            pool.invoke(new RangeTask(action, 0, count));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient IntConsumer action;
+
+        private final int from;
+
+        private final int to;
+
+        RangeTask(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                for (int i = from; i < to; i++)
+                    action.accept(i);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(action, from, middle), new RangeTask(action, middle, to));
+            }
+        }
+    }
+
+    /**
+     * The indexes of the dst trees of the current height having the same fingerprint.
+     */
+    private static final class Bucket {
+        private final IsomorphicTrees trees = new IsomorphicTrees(null);
+
+        private List<IsomorphicTrees> groups;
+
+        void add(int index) {
+            trees.add(index);
+        }
+
+        void group(List<ITree> dsts) {
+            groups = new ArrayList<>(1);
+            for (int k = 0; k < trees.size; k++) {
+                ITree tree = dsts.get(trees.indexes[k]);
+                IsomorphicTrees group = find(tree);
+                if (group == null) {
+                    group = new IsomorphicTrees(tree);
+                    groups.add(group);
+                }
+                group.add(trees.indexes[k]);
+            }
+        }
+
+        IsomorphicTrees find(ITree tree) {
+            for (IsomorphicTrees group : groups)
+                if (group.representative.isIsomorphicTo(tree))
+                    return group;
+            return null;
+        }
+    }
+
+    /**
+     * The indexes of isomorphic dst trees of the current height, in increasing order.
+     */
+    private static final class IsomorphicTrees {
+        final ITree representative;
+
+        int[] indexes = new int[1];
+
+        int size;
+
+        IsomorphicTrees(ITree representative) {
+            this.representative = representative;
+        }
+
+        void add(int index) {
+            if (size == indexes.length)
+                indexes = Arrays.copyOf(indexes, size * 2);
+            indexes[size++] = index;
+        }
+    }
+
     private void popLarger(PriorityTreeList srcTrees, PriorityTreeList dstTrees) {
         if (srcTrees.peekHeight() > dstTrees.peekHeight())
             srcTrees.open();
@@ -111,7 +272,13 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
     public abstract void filterMappings(MultiMappingStore multiMappings);
 
     protected double sim(ITree src, ITree dst) {
-        double jaccard = SimilarityMetrics.jaccardSimilarity(src.getParent(), dst.getParent(), mappings);
+        return sim(src, dst, SimilarityMetrics.jaccardSimilarity(src.getParent(), dst.getParent(), mappings));
+    }
+
+    /**
+     * Returns the similarity of the given trees, knowing the jaccard similarity of their parents.
+     */
+    protected double sim(ITree src, ITree dst, double jaccard) {
         int posSrc = (src.isRoot()) ? 0 : src.getParent().getChildPosition(src);
         int posDst = (dst.isRoot()) ? 0 : dst.getParent().getChildPosition(dst);
         int maxSrcPos = (src.isRoot()) ? 1 : src.getParent().getChildren().size();
@@ -123,13 +290,91 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
         return 100 * jaccard + 10 * pos + po;
     }
 
+    /**
+     * Computes the similarity of each candidate mapping. The jaccard similarity of the parents is
+     * the costly part, and sibling candidates share their parents, so it is computed once per pair
+     * of parents, in parallel in the parallel mode. The mappings are not modified meanwhile.
+     */
+    double[] sims(Candidates candidates) {
+        // The parents are keyed by their pre-order numbers, which are not negative, unlike their
+        // offsets from the matched trees when a candidate is one of these trees.
+        long[] parents = new long[candidates.size];
+        for (int k = 0; k < candidates.size; k++) {
+            ITree srcParent = candidates.srcs[k].getParent();
+            ITree dstParent = candidates.dsts[k].getParent();
+            if (srcParent == null || dstParent == null)
+                parents[k] = -1L;
+            else
+                parents[k] = (long) srcParent.getMetrics().preOrder << 32 | dstParent.getMetrics().preOrder;
+        }
+
+        long[] distinctParents = Arrays.stream(parents).filter(key -> key != -1L).sorted().distinct().toArray();
+        ITree[] srcParents = new ITree[distinctParents.length];
+        ITree[] dstParents = new ITree[distinctParents.length];
+        for (int k = 0; k < candidates.size; k++) {
+            if (parents[k] != -1L) {
+                int p = Arrays.binarySearch(distinctParents, parents[k]);
+                srcParents[p] = candidates.srcs[k].getParent();
+                dstParents[p] = candidates.dsts[k].getParent();
+            }
+        }
+        // Any pending renumbering of the mapped nodes is done before the concurrent reads.
+        mappings.isSrcMapped(src);
+        double[] jaccards = new double[distinctParents.length];
+        forEach(jaccards.length,
+                p -> jaccards[p] = SimilarityMetrics.jaccardSimilarity(srcParents[p], dstParents[p], mappings));
+
+        double[] sims = new double[candidates.size];
+        for (int k = 0; k < candidates.size; k++) {
+            double jaccard = parents[k] == -1L ? 0D : jaccards[Arrays.binarySearch(distinctParents, parents[k])];
+            sims[k] = sim(candidates.srcs[k], candidates.dsts[k], jaccard);
+        }
+        return sims;
+    }
+
+    /**
+     * Maps the given candidates along an assignment of minimal cost, the cost of a candidate being
+     * 111 minus its similarity. Above {@link SparseAssignment#DEFAULT_MAX_EDGES} candidates, the
+     * assignment is greedy.
+     */
+    void assignBestMappings(Candidates candidates) {
+        double[] sims = sims(candidates);
+        Map<ITree, Integer> rows = new HashMap<>();
+        Map<ITree, Integer> columns = new HashMap<>();
+        List<ITree> srcs = new ArrayList<>();
+        List<ITree> dsts = new ArrayList<>();
+        int[] edgeRows = new int[candidates.size];
+        int[] edgeColumns = new int[candidates.size];
+        for (int k = 0; k < candidates.size; k++) {
+            edgeRows[k] = indexOf(candidates.srcs[k], rows, srcs);
+            edgeColumns[k] = indexOf(candidates.dsts[k], columns, dsts);
+        }
+
+        SparseAssignment assignment = new SparseAssignment(srcs.size(), dsts.size());
+        for (int k = 0; k < candidates.size; k++)
+            assignment.addEdge(edgeRows[k], edgeColumns[k], 111D - sims[k]);
+        int[] solution = assignment.execute();
+        for (int i = 0; i < solution.length; i++)
+            if (solution[i] != -1)
+                mappings.addMappingRecursively(srcs.get(i), dsts.get(solution[i]));
+    }
+
+    private static int indexOf(ITree tree, Map<ITree, Integer> indexes, List<ITree> trees) {
+        Integer index = indexes.get(tree);
+        if (index == null) {
+            index = trees.size();
+            indexes.put(tree, index);
+            trees.add(tree);
+        }
+        return index;
+    }
+
     protected int getMaxTreeSize() {
         return Math.max(src.getMetrics().size, dst.getMetrics().size);
     }
 
     protected void retainBestMapping(List<Mapping> mappingList, Set<ITree> srcIgnored, Set<ITree> dstIgnored) {
-        while (mappingList.size() > 0) {
-            Mapping mapping = mappingList.remove(0);
+        for (Mapping mapping : mappingList) {
             if (!(srcIgnored.contains(mapping.first) || dstIgnored.contains(mapping.second))) {
                 mappings.addMappingRecursively(mapping.first, mapping.second);
                 srcIgnored.add(mapping.first);
@@ -138,6 +383,7 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
                 dstIgnored.addAll(mapping.second.getDescendants());
             }
         }
+        mappingList.clear();
     }
 
     private static class PriorityTreeList {
@@ -235,10 +481,38 @@ public abstract class AbstractSubtreeMatcher implements ConfigurableMatcher {
         this.min_height = minHeight;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @Override
     public Set<ConfigurationOptions> getApplicableOptions() {
 
-        return Sets.newHashSet(ConfigurationOptions.GT_STM_MH);
+        return Sets.newHashSet(ConfigurationOptions.GT_STM_MH, ConfigurationOptions.GT_STM_PAR);
+    }
+
+    /**
+     * Candidate mappings, as two parallel arrays.
+     */
+    static final class Candidates {
+        ITree[] srcs = new ITree[16];
+
+        ITree[] dsts = new ITree[16];
+
+        int size;
+
+        void add(ITree src, ITree dst) {
+            if (size == srcs.length) {
+                srcs = Arrays.copyOf(srcs, size * 2);
+                dsts = Arrays.copyOf(dsts, size * 2);
+            }
+            srcs[size] = src;
+            dsts[size++] = dst;
+        }
     }
 
 }
@@ -23,13 +23,8 @@ package com.github.gumtreediff.matchers.heuristic.gt;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
-import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.utils.Pair;
@@ -41,12 +36,14 @@ public class CliqueSubtreeMatcher extends AbstractSubtreeMatcher {
     @Override
     public void filterMappings(MultiMappingStore multiMappings) {
         TIntObjectHashMap<Pair<List<ITree>, List<ITree>>> cliques = new TIntObjectHashMap<>();
-        for (Mapping m : multiMappings) {
-            int hash = m.first.getMetrics().hash;
+        for (ITree src : multiMappings.allMappedSrcs()) {
+            int hash = src.getMetrics().hash;
             if (!cliques.containsKey(hash))
                 cliques.put(hash, new Pair<>(new ArrayList<>(), new ArrayList<>()));
-            cliques.get(hash).first.add(m.first);
-            cliques.get(hash).second.add(m.second);
+            for (int i = 0; i < multiMappings.getDstCount(src); i++) {
+                cliques.get(hash).first.add(src);
+                cliques.get(hash).second.add(multiMappings.getDst(src, i));
+            }
         }
 
         List<Pair<List<ITree>, List<ITree>>> ccliques = new ArrayList<>();
@@ -63,22 +60,13 @@ public class CliqueSubtreeMatcher extends AbstractSubtreeMatcher {
         Collections.sort(ccliques, new CliqueComparator());
 
         for (Pair<List<ITree>, List<ITree>> clique : ccliques) {
-            List<Mapping> cliqueAsMappings = fromClique(clique);
-            Collections.sort(cliqueAsMappings, new MappingComparator(cliqueAsMappings));
-            Set<ITree> srcIgnored = new HashSet<>();
-            Set<ITree> dstIgnored = new HashSet<>();
-            retainBestMapping(cliqueAsMappings, srcIgnored, dstIgnored);
+            Candidates candidates = new Candidates();
+            for (int i = 0; i < clique.first.size(); i++)
+                candidates.add(clique.first.get(i), clique.second.get(i));
+            assignBestMappings(candidates);
         }
     }
 
-    private List<Mapping> fromClique(Pair<List<ITree>, List<ITree>> clique) {
-        List<Mapping> cliqueAsMappings = new ArrayList<Mapping>();
-        for (ITree src : clique.first)
-            for (ITree dst : clique.first)
-                cliqueAsMappings.add(new Mapping(src, dst));
-        return cliqueAsMappings;
-    }
-
     private class CliqueComparator implements Comparator<Pair<List<ITree>, List<ITree>>> {
 
         @Override
@@ -111,61 +99,4 @@ public class CliqueSubtreeMatcher extends AbstractSubtreeMatcher {
 
     }
 
-    private class MappingComparator implements Comparator<Mapping> {
-
-        private Map<Mapping, double[]> simMap = new HashMap<>();
-
-        public MappingComparator(List<Mapping> mappings) {
-            for (Mapping mapping : mappings)
-                simMap.put(mapping, sims(mapping.first, mapping.second));
-        }
-
-        @Override
-        public int compare(Mapping m1, Mapping m2) {
-            double[] sims1 = simMap.get(m1);
-            double[] sims2 = simMap.get(m2);
-            for (int i = 0; i < sims1.length; i++) {
-                if (sims1[i] != sims2[i])
-                    return -1 * Double.compare(sims2[i], sims2[i]);
-            }
-            return 0;
-        }
-
-        private Map<ITree, List<ITree>> srcDescendants = new HashMap<>();
-
-        private Map<ITree, Set<ITree>> dstDescendants = new HashMap<>();
-
-        protected int numberOfCommonDescendants(ITree src, ITree dst) {
-            if (!srcDescendants.containsKey(src))
-                srcDescendants.put(src, src.getDescendants());
-            if (!dstDescendants.containsKey(dst))
-                dstDescendants.put(dst, new HashSet<>(dst.getDescendants()));
-
-            int common = 0;
-
-            for (ITree t : srcDescendants.get(src)) {
-                ITree m = mappings.getDstForSrc(t);
-                if (m != null && dstDescendants.get(dst).contains(m))
-                    common++;
-            }
-
-            return common;
-        }
-
-        protected double[] sims(ITree src, ITree dst) {
-            double[] sims = new double[4];
-            sims[0] = jaccardSimilarity(src.getParent(), dst.getParent());
-            sims[1] = src.positionInParent() - dst.positionInParent();
-            sims[2] = src.getMetrics().position - dst.getMetrics().position;
-            sims[3] = src.getMetrics().position;
-            return sims;
-        }
-
-        protected double jaccardSimilarity(ITree src, ITree dst) {
-            double num = (double) numberOfCommonDescendants(src, dst);
-            double den = (double) srcDescendants.get(src).size() + (double) dstDescendants.get(dst).size() - num;
-            return num / den;
-        }
-    }
-
 }
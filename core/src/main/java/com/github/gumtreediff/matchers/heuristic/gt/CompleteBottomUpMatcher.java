@@ -23,6 +23,7 @@ package com.github.gumtreediff.matchers.heuristic.gt;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import com.github.gumtreediff.matchers.CandidateIndex;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
@@ -39,6 +40,7 @@ import com.github.gumtreediff.tree.ITree;
 public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher implements Matcher {
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
+        CandidateIndex candidates = new CandidateIndex(mappings);
         for (ITree t : src.postOrder()) {
             if (t.isRoot()) {
                 mappings.addMapping(t, dst);
@@ -48,13 +50,15 @@ public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher implements
                 List<ITree> srcCandidates = t.getParents().stream().filter(p -> p.getType() == t.getType())
                         .collect(Collectors.toList());
 
-                List<ITree> dstCandidates = getDstCandidates(mappings, t);
+                candidates.find(t);
                 ITree srcBest = null;
                 ITree dstBest = null;
                 double max = -1D;
                 for (ITree srcCand : srcCandidates) {
-                    for (ITree dstCand : dstCandidates) {
-
+                    for (int i = 0; i < candidates.size(); i++) {
+                        ITree dstCand = candidates.getCandidate(i);
+                        if (dstCand.isRoot())
+                            continue;
                         double sim = SimilarityMetrics.jaccardSimilarity(srcCand, dstCand, mappings);
                         if (sim > max && sim >= sim_threshold) {
                             max = sim;
@@ -20,11 +20,11 @@
 
 package com.github.gumtreediff.matchers.heuristic.gt;
 
-import java.util.List;
-
+import com.github.gumtreediff.matchers.CandidateIndex;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeUtils;
 
 /**
  * Match the nodes using a bottom-up approach. It browse the nodes of the source
@@ -32,23 +32,29 @@ import com.github.gumtreediff.tree.ITree;
  * selected trees might be mapped. The two trees are mapped if they are mappable
  * and have a dice coefficient greater than SIM_THRESHOLD. Whenever two trees
  * are mapped a exact ZS algorithm is applied to look to possibly forgotten
- * nodes.
+ * nodes. The subtrees whose nodes are all mapped are skipped, without reading
+ * their descendants.
  */
 public class GreedyBottomUpMatcher extends AbstractBottomUpMatcher {
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
-
-        for (ITree t : src.postOrder()) {
+        CandidateIndex candidates = new CandidateIndex(mappings);
+        Iterable<ITree> trees = () -> TreeUtils.postOrderIterator(src,
+                t -> mappings.isSrcMapped(t) && !mappings.hasUnmappedSrcChildren(t));
+        for (ITree t : trees) {
             if (t.isRoot()) {
                 mappings.addMapping(t, dst);
                 lastChanceMatch(mappings, t, dst);
                 break;
             } else if (!(mappings.isSrcMapped(t) || t.isLeaf())) {
-                List<ITree> candidates = getDstCandidates(mappings, t);
+                candidates.find(t);
                 ITree best = null;
                 double max = -1D;
-                for (ITree cand : candidates) {
-                    double sim = SimilarityMetrics.diceSimilarity(t, cand, mappings);
+                for (int i = 0; i < candidates.size(); i++) {
+                    ITree cand = candidates.getCandidate(i);
+                    if (cand.isRoot())
+                        continue;
+                    double sim = SimilarityMetrics.diceSimilarity(t, cand, candidates.getCommonDescendants(i));
                     if (sim > max && sim >= sim_threshold) {
                         max = sim;
                         best = cand;
@@ -20,13 +20,10 @@
 
 package com.github.gumtreediff.matchers.heuristic.gt;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
-import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
 
@@ -34,12 +31,12 @@ public class GreedySubtreeMatcher extends AbstractSubtreeMatcher {
     @Override
     public void filterMappings(MultiMappingStore multiMappings) {
         // Select unique mappings first and extract ambiguous mappings.
-        List<Mapping> ambiguousList = new ArrayList<>();
+        Candidates ambiguous = new Candidates();
         Set<ITree> ignored = new HashSet<>();
         for (ITree src : multiMappings.allMappedSrcs()) {
             boolean isMappingUnique = false;
             if (multiMappings.isSrcUnique(src)) {
-                ITree dst = multiMappings.getDsts(src).iterator().next();
+                ITree dst = multiMappings.getDst(src, 0);
                 if (multiMappings.isDstUnique(dst)) {
                     mappings.addMappingRecursively(src, dst);
                     isMappingUnique = true;
@@ -47,22 +44,85 @@ public class GreedySubtreeMatcher extends AbstractSubtreeMatcher {
             }
 
             if (!(ignored.contains(src) || isMappingUnique)) {
-                Set<ITree> adsts = multiMappings.getDsts(src);
-                Set<ITree> asrcs = multiMappings.getSrcs(multiMappings.getDsts(src).iterator().next());
-                for (ITree asrc : asrcs)
-                    for (ITree adst : adsts)
-                        ambiguousList.add(new Mapping(asrc, adst));
-                ignored.addAll(asrcs);
+                ITree dst = multiMappings.getDst(src, 0);
+                int srcCount = multiMappings.getSrcCount(dst);
+                int dstCount = multiMappings.getDstCount(src);
+                for (int i = 0; i < srcCount; i++) {
+                    ITree asrc = multiMappings.getSrc(dst, i);
+                    for (int j = 0; j < dstCount; j++)
+                        ambiguous.add(asrc, multiMappings.getDst(src, j));
+                    ignored.add(asrc);
+                }
+            }
+        }
+        if (ambiguous.size == 0)
+            return;
+
+        // Rank the mappings by score, then select the best ambiguous mappings.
+        int[] order = rank(ambiguous, sims(ambiguous));
+        boolean[] srcIgnored = new boolean[src.getMetrics().size];
+        boolean[] dstIgnored = new boolean[dst.getMetrics().size];
+        for (int k : order) {
+            ITree asrc = ambiguous.srcs[k];
+            ITree adst = ambiguous.dsts[k];
+            int s = asrc.getMetrics().preOrder - src.getMetrics().preOrder;
+            int d = adst.getMetrics().preOrder - dst.getMetrics().preOrder;
+            if (!(srcIgnored[s] || dstIgnored[d])) {
+                mappings.addMappingRecursively(asrc, adst);
+                Arrays.fill(srcIgnored, s, s + asrc.getMetrics().size, true);
+                Arrays.fill(dstIgnored, d, d + adst.getMetrics().size, true);
             }
         }
+    }
 
-        // Rank the mappings by score.
-        Set<ITree> srcIgnored = new HashSet<>();
-        Set<ITree> dstIgnored = new HashSet<>();
-        Collections.sort(ambiguousList, new SiblingsMappingComparator(ambiguousList, mappings, getMaxTreeSize()));
+    /**
+     * Returns the indexes of the candidates by decreasing score, then by increasing post-order
+     * position of their src and dst trees, then in the order they were found.
+     */
+    private static int[] rank(Candidates candidates, double[] scores) {
+        int[] srcPositions = new int[candidates.size];
+        int[] dstPositions = new int[candidates.size];
+        for (int k = 0; k < candidates.size; k++) {
+            srcPositions[k] = candidates.srcs[k].getMetrics().position;
+            dstPositions[k] = candidates.dsts[k].getMetrics().position;
+        }
+        IndexComparator comparator = (a, b) -> {
+            int c = Double.compare(scores[b], scores[a]);
+            if (c == 0)
+                c = Integer.compare(srcPositions[a], srcPositions[b]);
+            if (c == 0)
+                c = Integer.compare(dstPositions[a], dstPositions[b]);
+            return c == 0 ? Integer.compare(a, b) : c;
+        };
 
-        // Select the best ambiguous mappings
-        retainBestMapping(ambiguousList, srcIgnored, dstIgnored);
+        int[] order = new int[candidates.size];
+        for (int k = 0; k < order.length; k++)
+            order[k] = k;
+        mergeSort(order, new int[order.length], 0, order.length, comparator);
+        return order;
+    }
+
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private static void mergeSort(int[] values, int[] buffer, int from, int to, IndexComparator comparator) {
+        if (to - from < 2)
+            return;
+        int middle = (from + to) >>> 1;
+        mergeSort(values, buffer, from, middle, comparator);
+        mergeSort(values, buffer, middle, to, comparator);
+        if (comparator.compare(values[middle - 1], values[middle]) <= 0)
+            return;
+        System.arraycopy(values, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j >= to || i < middle && comparator.compare(buffer[i], buffer[j]) <= 0)
+                values[k] = buffer[i++];
+            else
+                values[k] = buffer[j++];
+        }
     }
 
 }
@@ -30,7 +30,6 @@ import java.util.Set;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
-import com.github.gumtreediff.utils.HungarianAlgorithm;
 
 public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher implements Matcher {
 
@@ -55,28 +54,14 @@ public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher implements M
         Collections.sort(ambiguousList, new MultiMappingComparator());
 
         for (MultiMappingStore ambiguous : ambiguousList) {
-            System.out.println("hungarian try.");
-            List<ITree> lstSrcs = new ArrayList<>(ambiguous.allMappedSrcs());
-            List<ITree> lstDsts = new ArrayList<>(ambiguous.allMappedDsts());
-            double[][] matrix = new double[lstSrcs.size()][lstDsts.size()];
-            for (int i = 0; i < lstSrcs.size(); i++)
-                for (int j = 0; j < lstDsts.size(); j++)
-                    matrix[i][j] = cost(lstSrcs.get(i), lstDsts.get(j));
-
-            HungarianAlgorithm hgAlg = new HungarianAlgorithm(matrix);
-            int[] solutions = hgAlg.execute();
-            for (int i = 0; i < solutions.length; i++) {
-                int dstIdx = solutions[i];
-                if (dstIdx != -1)
-                    mappings.addMappingRecursively(lstSrcs.get(i), lstDsts.get(dstIdx));
-            }
+            Candidates candidates = new Candidates();
+            for (ITree asrc : ambiguous.allMappedSrcs())
+                for (ITree adst : ambiguous.getDsts(asrc))
+                    candidates.add(asrc, adst);
+            assignBestMappings(candidates);
         }
     }
 
-    private double cost(ITree src, ITree dst) {
-        return 111D - sim(src, dst);
-    }
-
     private static class MultiMappingComparator implements Comparator<MultiMappingStore> {
 
         @Override
@@ -87,12 +72,12 @@ public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher implements M
         public int impact(MultiMappingStore m) {
             int impact = 0;
             for (ITree src : m.allMappedSrcs()) {
-                int pSize = src.getParents().size();
+                int pSize = src.getMetrics().depth;
                 if (pSize > impact)
                     impact = pSize;
             }
             for (ITree src : m.allMappedDsts()) {
-                int pSize = src.getParents().size();
+                int pSize = src.getMetrics().depth;
                 if (pSize > impact)
                     impact = pSize;
             }
@@ -21,12 +21,10 @@
 package com.github.gumtreediff.matchers.heuristic.gt;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import com.github.gumtreediff.matchers.CandidateIndex;
 import com.github.gumtreediff.matchers.ConfigurableMatcher;
 import com.github.gumtreediff.matchers.ConfigurationOptions;
 import com.github.gumtreediff.matchers.GumTreeProperties;
@@ -34,7 +32,8 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeUtils;
-import com.github.gumtreediff.tree.Type;
+import com.github.gumtreediff.tree.TypeSet;
+import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.utils.SequenceAlgorithms;
 import com.google.common.collect.Sets;
 
@@ -44,6 +43,11 @@ public class SimpleBottomUpMatcher implements ConfigurableMatcher {
 
     protected double sim_threshold = DEFAULT_SIM_THRESHOLD;
 
+    // Histograms of children types, indexed by type id and reset after each use.
+    private int[] srcHistogram = new int[0];
+    private int[] dstHistogram = new int[0];
+    private ITree[] dstHistogramChildren = new ITree[0];
+
     public SimpleBottomUpMatcher() {
 
     }
@@ -55,21 +59,24 @@ public class SimpleBottomUpMatcher implements ConfigurableMatcher {
 
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
-
+        CandidateIndex candidates = new CandidateIndex(mappings);
         for (ITree t : src.postOrder()) {
             if (t.isRoot()) {
                 mappings.addMapping(t, dst);
                 lastChanceMatch(mappings, t, dst);
                 break;
             } else if (!(mappings.isSrcMapped(t) || t.isLeaf())) {
-                List<ITree> candidates = getDstCandidates(mappings, t);
+                candidates.find(t);
                 ITree best = null;
                 double max = -1D;
-                int tSize = t.getDescendants().size();
-
-                for (ITree cand : candidates) {
-                    double threshold = 1D / (1D + Math.log(cand.getDescendants().size() + tSize));
-                    double sim = SimilarityMetrics.chawatheSimilarity(t, cand, mappings);
+                int tSize = t.getMetrics().size - 1;
+
+                for (int i = 0; i < candidates.size(); i++) {
+                    ITree cand = candidates.getCandidate(i);
+                    if (cand.isRoot())
+                        continue;
+                    double threshold = 1D / (1D + Math.log(cand.getMetrics().size - 1 + tSize));
+                    double sim = SimilarityMetrics.chawatheSimilarity(t, cand, candidates.getCommonDescendants(i));
                     if (sim > max && sim >= threshold) {
                         max = sim;
                         best = cand;
@@ -87,30 +94,6 @@ public class SimpleBottomUpMatcher implements ConfigurableMatcher {
         return mappings;
     }
 
-    protected List<ITree> getDstCandidates(MappingStore mappings, ITree src) {
-        List<ITree> seeds = new ArrayList<>();
-        for (ITree c : src.getDescendants()) {
-            ITree m = mappings.getDstForSrc(c);
-            if (m != null)
-                seeds.add(m);
-        }
-        List<ITree> candidates = new ArrayList<>();
-        Set<ITree> visited = new HashSet<>();
-        for (ITree seed : seeds) {
-            while (seed.getParent() != null) {
-                ITree parent = seed.getParent();
-                if (visited.contains(parent))
-                    break;
-                visited.add(parent);
-                if (parent.getType() == src.getType() && !mappings.isDstMapped(parent) && !parent.isRoot())
-                    candidates.add(parent);
-                seed = parent;
-            }
-        }
-
-        return candidates;
-    }
-
     protected void lastChanceMatch(MappingStore mappings, ITree src, ITree dst) {
         lcsEqualMatching(mappings, src, dst);
         lcsStructureMatching(mappings, src, dst);
@@ -151,28 +134,41 @@ public class SimpleBottomUpMatcher implements ConfigurableMatcher {
         List<ITree> srcChildren = src.getChildren();
         List<ITree> dstChildren = dst.getChildren();
 
-        Map<Type, List<ITree>> srcHistogram = new HashMap<>();
+        int types = TypeSet.size();
+        if (srcHistogram.length < types) {
+            srcHistogram = new int[types];
+            dstHistogram = new int[types];
+            dstHistogramChildren = new ITree[types];
+        }
+
+        for (ITree c : srcChildren)
+            srcHistogram[c.getType().id]++;
+        for (ITree c : dstChildren) {
+            dstHistogram[c.getType().id]++;
+            dstHistogramChildren[c.getType().id] = c;
+        }
+
+        List<Pair<ITree, ITree>> pairs = new ArrayList<>();
         for (ITree c : srcChildren) {
-            if (!srcHistogram.containsKey(c.getType()))
-                srcHistogram.put(c.getType(), new ArrayList<>());
-            srcHistogram.get(c.getType()).add(c);
+            int type = c.getType().id;
+            if (srcHistogram[type] == 1 && dstHistogram[type] == 1)
+                pairs.add(new Pair<>(c, dstHistogramChildren[type]));
         }
 
-        Map<Type, List<ITree>> dstHistogram = new HashMap<>();
+        // The histograms are reset before recursing since they are shared by all calls.
+        for (ITree c : srcChildren)
+            srcHistogram[c.getType().id] = 0;
         for (ITree c : dstChildren) {
-            if (!dstHistogram.containsKey(c.getType()))
-                dstHistogram.put(c.getType(), new ArrayList<>());
-            dstHistogram.get(c.getType()).add(c);
+            dstHistogram[c.getType().id] = 0;
+            dstHistogramChildren[c.getType().id] = null;
         }
 
-        for (Type t : srcHistogram.keySet()) {
-            if (dstHistogram.containsKey(t) && srcHistogram.get(t).size() == 1 && dstHistogram.get(t).size() == 1) {
-                ITree t1 = srcHistogram.get(t).get(0);
-                ITree t2 = dstHistogram.get(t).get(0);
-                if (mappings.areBothUnmapped(t1, t2)) {
-                    mappings.addMapping(t1, t2);
-                    lastChanceMatch(mappings, t1, t2);
-                }
+        for (Pair<ITree, ITree> pair : pairs) {
+            ITree t1 = pair.first;
+            ITree t2 = pair.second;
+            if (mappings.areBothUnmapped(t1, t2)) {
+                mappings.addMapping(t1, t2);
+                lastChanceMatch(mappings, t1, t2);
             }
         }
     }
@@ -24,202 +24,289 @@ import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.simmetrics.StringMetric;
 import org.simmetrics.StringMetrics;
 
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 
+/**
+ * Matches the nodes along an optimal edit script, computed with the algorithm of Zhang and Shasha.
+ * A matcher can be reused, also by several threads. It keeps the distance matrices and post-order
+ * arrays of its last match, and only grows them when a pair of trees does not fit. A match started
+ * while another one is running gets new arrays, freed after the match.
+ */
 public class ZsMatcher implements Matcher {
+    /**
+     * The number of cells above which the matrices and label costs are not kept for the next match.
+     */
+    private static final int MAX_RETAINED_CELLS = 1 << 21;
 
-    private MappingStore mappings = null;
-    private ZsTree zsSrc;
-    private ZsTree zsDst;
+    private static final double[] NO_COSTS = new double[0];
 
-    private double[][] treeDist;
-    private double[][] forestDist;
+    // The workspace of the last match, taken by the next one.
+    private final AtomicReference<Workspace> idleWorkspace = new AtomicReference<>();
 
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
-        this.zsSrc = new ZsTree(src);
-        this.zsDst = new ZsTree(dst);
-        this.mappings = mappings;
-        this.match();
+        match(src, dst, mappings, false);
         return mappings;
     }
 
-    private static ITree getFirstLeaf(ITree t) {
-        ITree current = t;
-        while (!current.isLeaf())
-            current = current.getChild(0);
+    /**
+     * Adds to the given store the mappings found between the given trees that the store allows,
+     * see {@link MappingStore#isMappingAllowed(ITree, ITree)}.
+     */
+    public void addAllowedMappings(ITree src, ITree dst, MappingStore mappings) {
+        match(src, dst, mappings, true);
+    }
 
-        return current;
+    private void match(ITree src, ITree dst, MappingStore mappings, boolean onlyAllowed) {
+        Workspace workspace = idleWorkspace.getAndSet(null);
+        if (workspace == null)
+            workspace = new Workspace();
+        try {
+            workspace.load(src, dst);
+            workspace.mappings = mappings;
+            workspace.onlyAllowed = onlyAllowed;
+            workspace.match();
+        } finally {
+            workspace.release();
+            idleWorkspace.set(workspace);
+        }
     }
 
-    private double[][] computeTreeDist() {
+    private static final class Workspace {
+        private final ZsTree zsSrc = new ZsTree();
+        private final ZsTree zsDst = new ZsTree();
+
+        private final StringMetric qGrams = StringMetrics.qGramsDistance();
+
+        // The labels of both trees are numbered, so that the update cost of each pair of labels is only
+        // computed once, the costs not computed yet being NaN.
+        private final Map<String, Integer> srcLabels = new HashMap<>();
+        private final Map<String, Integer> dstLabels = new HashMap<>();
+        private double[] labelCosts = NO_COSTS;
+        private boolean cacheLabelCosts;
+
+        private MappingStore mappings;
+        private boolean onlyAllowed;
+
+        private double[][] treeDist;
+        private double[][] forestDist;
+
+        private void load(ITree src, ITree dst) {
+            zsSrc.load(src, srcLabels);
+            zsDst.load(dst, dstLabels);
+            long labelPairs = (long) srcLabels.size() * dstLabels.size();
+            cacheLabelCosts = labelPairs <= MAX_RETAINED_CELLS;
+            if (cacheLabelCosts) {
+                if (labelCosts.length < labelPairs)
+                    labelCosts = new double[(int) labelPairs];
+                Arrays.fill(labelCosts, 0, (int) labelPairs, Double.NaN);
+            }
+        }
 
-        treeDist = new double[zsSrc.nodeCount + 1][zsDst.nodeCount + 1];
-        forestDist = new double[zsSrc.nodeCount + 1][zsDst.nodeCount + 1];
+        private void release() {
+            zsSrc.clear();
+            zsDst.clear();
+            srcLabels.clear();
+            dstLabels.clear();
+            mappings = null;
+            long cells = labelCosts.length;
+            if (treeDist != null)
+                cells += 2L * treeDist.length * treeDist[0].length;
+            if (cells > MAX_RETAINED_CELLS) {
+                treeDist = null;
+                forestDist = null;
+                labelCosts = NO_COSTS;
+            }
+        }
 
-        for (int i = 1; i < zsSrc.kr.length; i++)
-            for (int j = 1; j < zsDst.kr.length; j++)
-                forestDist(zsSrc.kr[i], zsDst.kr[j]);
+        // The matrices are not cleared since no cell is read before being computed.
+        private void computeTreeDist() {
+            treeDist = grow(treeDist, zsSrc.nodeCount + 1, zsDst.nodeCount + 1);
+            forestDist = grow(forestDist, zsSrc.nodeCount + 1, zsDst.nodeCount + 1);
 
-        return treeDist;
-    }
+            for (int i = 1; i < zsSrc.keyRootCount; i++)
+                for (int j = 1; j < zsDst.keyRootCount; j++)
+                    forestDist(zsSrc.kr[i], zsDst.kr[j]);
+        }
+
+        private static double[][] grow(double[][] matrix, int rows, int columns) {
+            if (matrix != null && matrix.length >= rows && matrix[0].length >= columns)
+                return matrix;
+            if (matrix != null) {
+                rows = Math.max(rows, matrix.length);
+                columns = Math.max(columns, matrix[0].length);
+            }
+            return new double[rows][columns];
+        }
 
-    private void forestDist(int i, int j) {
-        forestDist[zsSrc.lld(i) - 1][zsDst.lld(j) - 1] = 0;
-        for (int di = zsSrc.lld(i); di <= i; di++) {
-            double costDel = getDeletionCost(zsSrc.tree(di));
-            forestDist[di][zsDst.lld(j) - 1] = forestDist[di - 1][zsDst.lld(j) - 1] + costDel;
-            for (int dj = zsDst.lld(j); dj <= j; dj++) {
-                double costIns = getInsertionCost(zsDst.tree(dj));
-                forestDist[zsSrc.lld(i) - 1][dj] = forestDist[zsSrc.lld(i) - 1][dj - 1] + costIns;
-
-                if ((zsSrc.lld(di) == zsSrc.lld(i) && (zsDst.lld(dj) == zsDst.lld(j)))) {
-                    double costUpd = getUpdateCost(zsSrc.tree(di), zsDst.tree(dj));
-                    forestDist[di][dj] = Math.min(
-                            Math.min(forestDist[di - 1][dj] + costDel, forestDist[di][dj - 1] + costIns),
-                            forestDist[di - 1][dj - 1] + costUpd);
-                    treeDist[di][dj] = forestDist[di][dj];
-                } else {
-                    forestDist[di][dj] = Math.min(
-                            Math.min(forestDist[di - 1][dj] + costDel, forestDist[di][dj - 1] + costIns),
-                            forestDist[zsSrc.lld(di) - 1][zsDst.lld(dj) - 1] + treeDist[di][dj]);
+        private void forestDist(int i, int j) {
+            forestDist[zsSrc.lld(i) - 1][zsDst.lld(j) - 1] = 0;
+            for (int di = zsSrc.lld(i); di <= i; di++) {
+                double costDel = getDeletionCost(zsSrc.tree(di));
+                forestDist[di][zsDst.lld(j) - 1] = forestDist[di - 1][zsDst.lld(j) - 1] + costDel;
+                for (int dj = zsDst.lld(j); dj <= j; dj++) {
+                    double costIns = getInsertionCost(zsDst.tree(dj));
+                    forestDist[zsSrc.lld(i) - 1][dj] = forestDist[zsSrc.lld(i) - 1][dj - 1] + costIns;
+
+                    if ((zsSrc.lld(di) == zsSrc.lld(i) && (zsDst.lld(dj) == zsDst.lld(j)))) {
+                        double costUpd = getUpdateCost(di, dj);
+                        forestDist[di][dj] = Math.min(
+                                Math.min(forestDist[di - 1][dj] + costDel, forestDist[di][dj - 1] + costIns),
+                                forestDist[di - 1][dj - 1] + costUpd);
+                        treeDist[di][dj] = forestDist[di][dj];
+                    } else {
+                        forestDist[di][dj] = Math.min(
+                                Math.min(forestDist[di - 1][dj] + costDel, forestDist[di][dj - 1] + costIns),
+                                forestDist[zsSrc.lld(di) - 1][zsDst.lld(dj) - 1] + treeDist[di][dj]);
+                    }
                 }
             }
         }
-    }
 
-    public void match() {
-        computeTreeDist();
-
-        boolean rootNodePair = true;
-
-        ArrayDeque<int[]> treePairs = new ArrayDeque<>();
-
-        // push the pair of trees (ted1,ted2) to stack
-        treePairs.addFirst(new int[] {zsSrc.nodeCount, zsDst.nodeCount});
-
-        while (!treePairs.isEmpty()) {
-            int[] treePair = treePairs.removeFirst();
-
-            int lastRow = treePair[0];
-            int lastCol = treePair[1];
-
-            // compute forest distance matrix
-            if (!rootNodePair)
-                forestDist(lastRow, lastCol);
-
-            rootNodePair = false;
-
-            // compute mapping for current forest distance matrix
-            int firstRow = zsSrc.lld(lastRow) - 1;
-            int firstCol = zsDst.lld(lastCol) - 1;
-
-            int row = lastRow;
-            int col = lastCol;
-
-            while ((row > firstRow) || (col > firstCol)) {
-                if ((row > firstRow) && (forestDist[row - 1][col] + 1D == forestDist[row][col])) {
-                    // node with postorderID row is deleted from ted1
-                    row--;
-                } else if ((col > firstCol) && (forestDist[row][col - 1] + 1D == forestDist[row][col])) {
-                    // node with postorderID col is inserted into ted2
-                    col--;
-                } else {
-                    // node with postorderID row in ted1 is renamed to node col
-                    // in ted2
-                    if ((zsSrc.lld(row) - 1 == zsSrc.lld(lastRow) - 1)
-                            && (zsDst.lld(col) - 1 == zsDst.lld(lastCol) - 1)) {
-                        // if both subforests are trees, map nodes
-                        ITree tSrc = zsSrc.tree(row);
-                        ITree tDst = zsDst.tree(col);
-                        if (tSrc.getType() == tDst.getType())
-                            mappings.addMapping(tSrc, tDst);
-                        else
-                            throw new RuntimeException("Should not map incompatible nodes.");
+        private void match() {
+            computeTreeDist();
+
+            boolean rootNodePair = true;
+
+            ArrayDeque<int[]> treePairs = new ArrayDeque<>();
+
+            // push the pair of trees (ted1,ted2) to stack
+            treePairs.addFirst(new int[] {zsSrc.nodeCount, zsDst.nodeCount});
+
+            while (!treePairs.isEmpty()) {
+                int[] treePair = treePairs.removeFirst();
+
+                int lastRow = treePair[0];
+                int lastCol = treePair[1];
+
+                // compute forest distance matrix
+                if (!rootNodePair)
+                    forestDist(lastRow, lastCol);
+
+                rootNodePair = false;
+
+                // compute mapping for current forest distance matrix
+                int firstRow = zsSrc.lld(lastRow) - 1;
+                int firstCol = zsDst.lld(lastCol) - 1;
+
+                int row = lastRow;
+                int col = lastCol;
+
+                while ((row > firstRow) || (col > firstCol)) {
+                    if ((row > firstRow) && (forestDist[row - 1][col] + 1D == forestDist[row][col])) {
+                        // node with postorderID row is deleted from ted1
                         row--;
+                    } else if ((col > firstCol) && (forestDist[row][col - 1] + 1D == forestDist[row][col])) {
+                        // node with postorderID col is inserted into ted2
                         col--;
                     } else {
-                        // pop subtree pair
-                        treePairs.addFirst(new int[] {row, col});
-                        // continue with forest to the left of the popped
-                        // subtree pair
-
-                        row = zsSrc.lld(row) - 1;
-                        col = zsDst.lld(col) - 1;
+                        // node with postorderID row in ted1 is renamed to node col
+                        // in ted2
+                        if ((zsSrc.lld(row) - 1 == zsSrc.lld(lastRow) - 1)
+                                && (zsDst.lld(col) - 1 == zsDst.lld(lastCol) - 1)) {
+                            // if both subforests are trees, map nodes
+                            ITree tSrc = zsSrc.tree(row);
+                            ITree tDst = zsDst.tree(col);
+                            if (tSrc.getType() != tDst.getType())
+                                throw new RuntimeException("Should not map incompatible nodes.");
+                            if (!onlyAllowed || mappings.isMappingAllowed(tSrc, tDst))
+                                mappings.addMapping(tSrc, tDst);
+                            row--;
+                            col--;
+                        } else {
+                            // pop subtree pair
+                            treePairs.addFirst(new int[] {row, col});
+                            // continue with forest to the left of the popped
+                            // subtree pair
+
+                            row = zsSrc.lld(row) - 1;
+                            col = zsDst.lld(col) - 1;
+                        }
                     }
                 }
             }
         }
-    }
 
-    private double getDeletionCost(ITree n) {
-        return 1D;
-    }
+        private static double getDeletionCost(ITree n) {
+            return 1D;
+        }
 
-    private double getInsertionCost(ITree n) {
-        return 1D;
-    }
+        private static double getInsertionCost(ITree n) {
+            return 1D;
+        }
 
-    private double getUpdateCost(ITree n1, ITree n2) {
-        if (n1.getType() == n2.getType())
-            if ("".equals(n1.getLabel()) || "".equals(n2.getLabel()))
-                return 1D;
+        private double getUpdateCost(int i, int j) {
+            ITree n1 = zsSrc.tree(i);
+            ITree n2 = zsDst.tree(j);
+            if (n1.getType() == n2.getType())
+                if ("".equals(n1.getLabel()) || "".equals(n2.getLabel()))
+                    return 1D;
+                else if (cacheLabelCosts) {
+                    int pair = zsSrc.labelId(i) * dstLabels.size() + zsDst.labelId(j);
+                    if (Double.isNaN(labelCosts[pair]))
+                        labelCosts[pair] = 1D - qGrams.compare(n1.getLabel(), n2.getLabel());
+                    return labelCosts[pair];
+                } else
+                    return 1D - qGrams.compare(n1.getLabel(), n2.getLabel());
             else
-                return 1D - StringMetrics.qGramsDistance().compare(n1.getLabel(), n2.getLabel());
-        else
-            return Double.MAX_VALUE;
+                return Double.MAX_VALUE;
+        }
     }
 
     private static final class ZsTree {
         private int nodeCount; // number of nodes
 
-        private int leafCount;
-
-        private int[] llds; // llds[i] stores the postorder-ID of the
+        private int[] llds = new int[0]; // llds[i] stores the postorder-ID of the
         // left-most leaf descendant of the i-th node in postorder
-        private ITree[] labels; // labels[i] is the tree of the i-th node in postorder
+        private ITree[] labels = new ITree[0]; // labels[i] is the tree of the i-th node in postorder
 
-        private int[] kr;
+        private int[] labelIds = new int[0]; // labelIds[i] is the number of the label of the i-th node
 
-        private ZsTree(ITree t) {
-            this.nodeCount = t.getMetrics().size;
-            this.leafCount = 0;
-            this.llds = new int[nodeCount];
-            this.labels = new ITree[nodeCount];
+        private int[] kr = new int[0];
 
+        private int keyRootCount;
+
+        private boolean[] visited = new boolean[0];
+
+        private void load(ITree t, Map<String, Integer> labelNumbers) {
+            nodeCount = t.getMetrics().size;
+            if (labels.length < nodeCount) {
+                llds = new int[nodeCount];
+                labels = new ITree[nodeCount];
+                labelIds = new int[nodeCount];
+                kr = new int[nodeCount + 1];
+                visited = new boolean[nodeCount + 1];
+            }
+
+            // The descendants of a node precede it in postorder, the first one being its left-most leaf.
+            int leafCount = 0;
             int idx = 1;
-            Map<ITree, Integer> tmpData = new HashMap<>();
             for (ITree n : t.postOrder()) {
-                tmpData.put(n, idx);
-                this.setITree(idx, n);
-                this.setLld(idx, tmpData.get(getFirstLeaf(n)));
+                labels[idx - 1] = n;
+                llds[idx - 1] = idx - n.getMetrics().size;
+                Integer labelId = labelNumbers.get(n.getLabel());
+                if (labelId == null) {
+                    labelId = labelNumbers.size();
+                    labelNumbers.put(n.getLabel(), labelId);
+                }
+                labelIds[idx - 1] = labelId;
                 if (n.isLeaf())
                     leafCount++;
                 idx++;
             }
 
-            setKeyRoots();
+            setKeyRoots(leafCount);
         }
 
-        public void setITree(int i, ITree tree) {
-            labels[i - 1] = tree;
-            if (nodeCount < i)
-                nodeCount = i;
-        }
-
-        public void setLld(int i, int lld) {
-            llds[i - 1] = lld - 1;
-            if (nodeCount < i)
-                nodeCount = i;
-        }
-
-        public boolean isLeaf(int i) {
-            return this.lld(i) == i;
+        private void clear() {
+            Arrays.fill(labels, 0, nodeCount, null);
         }
 
         public int lld(int i) {
@@ -230,11 +317,14 @@ public class ZsMatcher implements Matcher {
             return labels[i - 1];
         }
 
-        public void setKeyRoots() {
-            kr = new int[leafCount + 1];
-            boolean[] visited = new boolean[nodeCount + 1];
-            Arrays.fill(visited, false);
-            int k = kr.length - 1;
+        public int labelId(int i) {
+            return labelIds[i - 1];
+        }
+
+        private void setKeyRoots(int leafCount) {
+            keyRootCount = leafCount + 1;
+            Arrays.fill(visited, 0, nodeCount + 1, false);
+            int k = keyRootCount - 1;
             for (int i = nodeCount; i >= 1; i--) {
                 if (!visited[lld(i)]) {
                     kr[k] = i;
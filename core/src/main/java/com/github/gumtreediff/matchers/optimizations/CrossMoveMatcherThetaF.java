@@ -59,16 +59,16 @@ public class CrossMoveMatcherThetaF implements Matcher {
                 if (mappings.isDstMapped(parentNew) && mappings.getSrcForDst(parentNew) != parentOld) {
                     ITree parentOldOther = mappings.getSrcForDst(parentNew);
                     ITree parentNewOther = mappings.getDstForSrc(parentOld);
-                    if (parentOld.getLabel().equals(parentNewOther.getLabel())
-                            && parentNew.getLabel().equals(parentOldOther.getLabel())) {
+                    if (parentOld.hasSameLabel(parentNewOther)
+                            && parentNew.hasSameLabel(parentOldOther)) {
                         boolean done = false;
                         for (ITree childOldOther : parentOldOther.getChildren()) {
                             if (mappings.isSrcMapped(childOldOther)) {
                                 ITree childNewOther = mappings.getDstForSrc(childOldOther);
-                                if (pair.first.getLabel().equals(childNewOther.getLabel())
-                                        && childOldOther.getLabel().equals(pair.second.getLabel())
-                                        || !(pair.first.getLabel().equals(pair.second.getLabel())
-                                        || childOldOther.getLabel().equals(childNewOther.getLabel()))) {
+                                if (pair.first.hasSameLabel(childNewOther)
+                                        && childOldOther.hasSameLabel(pair.second)
+                                        || !(pair.first.hasSameLabel(pair.second)
+                                        || childOldOther.hasSameLabel(childNewOther))) {
                                     if (childNewOther.getParent() == parentNewOther) {
                                         if (childOldOther.getType() == pair.first.getType()) {
                                             mappings.removeMapping(pair.first, pair.second);
@@ -87,11 +87,10 @@ public class CrossMoveMatcherThetaF implements Matcher {
                                     ITree childOldOther = mappings.getSrcForDst(childNewOther);
                                     if (childOldOther.getParent() == parentOldOther) {
                                         if (childNewOther.getType() == pair.second.getType()) {
-                                            if (pair.first.getLabel().equals(childNewOther.getLabel())
-                                                    && childOldOther.getLabel().equals(pair.second.getLabel())
-                                                    || !(pair.first.getLabel().equals(pair.second.getLabel())
-                                                    || childOldOther.getLabel()
-                                                    .equals(childNewOther.getLabel()))) {
+                                            if (pair.first.hasSameLabel(childNewOther)
+                                                    && childOldOther.hasSameLabel(pair.second)
+                                                    || !(pair.first.hasSameLabel(pair.second)
+                                                    || childOldOther.hasSameLabel(childNewOther))) {
                                                 mappings.removeMapping(pair.first, pair.second);
                                                 mappings.removeMapping(childOldOther, childNewOther);
                                                 mappings.addMapping(childOldOther, pair.second);
@@ -135,7 +135,7 @@ public class IdenticalSubtreeMatcherThetaA implements Matcher {
                 ITree oldNode = stream1.get(i);
                 ITree newNode = stream2.get(i);
                 assert (oldNode.getType() == newNode.getType());
-                assert (oldNode.getLabel().equals(newNode.getLabel()));
+                assert (oldNode.hasSameLabel(newNode));
                 mappings.addMapping(oldNode, newNode);
             }
         }
@@ -25,9 +25,9 @@ import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.Map.Entry;
 
-import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.tree.AncestorIndex;
 import com.github.gumtreediff.tree.ITree;
 
 /**
@@ -39,12 +39,14 @@ public class InnerNodesMatcherThetaD implements Matcher {
     private ITree src;
     private ITree dst;
     private MappingStore mappings;
+    private AncestorIndex srcAncestors;
 
     @Override
     public MappingStore match(ITree src, ITree dst, MappingStore mappings) {
         this.src = src;
         this.dst = dst;
         this.mappings = mappings;
+        this.srcAncestors = AncestorIndex.of(src);
         thetaD();
         return mappings;
     }
@@ -61,20 +63,15 @@ public class InnerNodesMatcherThetaD implements Matcher {
     }
 
     private boolean allowedMatching(ITree key, ITree maxNodePartner) {
-        while (key != null) {
-            if (key == maxNodePartner) {
-                return false;
-            }
-            key = key.getParent();
-        }
-        return true;
+        return maxNodePartner == null
+                || key != maxNodePartner && !srcAncestors.isAncestorOf(maxNodePartner, key);
     }
     
     private void thetaD() {
         IdentityHashMap<ITree, IdentityHashMap<ITree, Integer>> parentCount = new IdentityHashMap<>();
-        for (Mapping pair : mappings.asSet()) {
-            ITree parent = pair.first.getParent();
-            ITree parentPartner = pair.second.getParent();
+        for (int i = mappings.nextMappedSrc(0); i != MappingStore.NO_NODE; i = mappings.nextMappedSrc(i + 1)) {
+            ITree parent = mappings.getSrc(i).getParent();
+            ITree parentPartner = mappings.getDstForSrc(i).getParent();
             if (parent != null && parentPartner != null) {
                 IdentityHashMap<ITree, Integer> countMap = parentCount.get(parent);
                 if (countMap == null) {
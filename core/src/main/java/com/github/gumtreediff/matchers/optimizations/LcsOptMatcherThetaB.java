@@ -133,10 +133,7 @@ public class LcsOptMatcherThetaB implements Matcher {
 
     private void getNodeListInPostOrder(ITree tree, ArrayList<ITree> nodes) {
         if (tree != null) {
-            for (ITree child : tree.getChildren()) {
-                getNodeListInPostOrder(child, nodes);
-            }
-            nodes.add(tree);
+            TreeUtils.postOrder(tree, nodes::add);
         }
     }
 
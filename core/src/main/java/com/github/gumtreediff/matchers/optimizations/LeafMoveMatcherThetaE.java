@@ -70,10 +70,12 @@ public class LeafMoveMatcherThetaE implements Matcher {
         LinkedList<Mapping> workListTmp = null;
         LinkedList<Mapping> changeMap = new LinkedList<>();
 
-        for (Mapping pair : mappings.asSet()) {
-            if (pair.first.isLeaf() && pair.second.isLeaf()) {
-                if (!pair.first.getLabel().equals(pair.second.getLabel())) {
-                    workList.add(pair);
+        for (int i = mappings.nextMappedSrc(0); i != MappingStore.NO_NODE; i = mappings.nextMappedSrc(i + 1)) {
+            ITree src = mappings.getSrc(i);
+            ITree dst = mappings.getDstForSrc(i);
+            if (src.isLeaf() && dst.isLeaf()) {
+                if (!src.hasSameLabel(dst)) {
+                    workList.add(new Mapping(src, dst));
                 }
             }
 
@@ -94,7 +96,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
                 if (mappings.areBothUnmapped(entry.first, entry.second)) {
                     mappings.addMapping(entry.first, entry.second);
                 }
-                if (!entry.first.getLabel().equals(entry.second.getLabel()) && entry.first.isLeaf()
+                if (!entry.first.hasSameLabel(entry.second) && entry.first.isLeaf()
                         && entry.second.isLeaf()) {
                     workListTmp.add(new Mapping(entry.first, entry.second));
                 }
@@ -106,10 +108,12 @@ public class LeafMoveMatcherThetaE implements Matcher {
         workList = new LinkedList<>();
         workListTmp = null;
 
-        for (Mapping pair : mappings.asSet()) {
-            if (pair.first.isLeaf() && pair.second.isLeaf()) {
-                if (!pair.first.getLabel().equals(pair.second.getLabel())) {
-                    workList.add(pair);
+        for (int i = mappings.nextMappedSrc(0); i != MappingStore.NO_NODE; i = mappings.nextMappedSrc(i + 1)) {
+            ITree src = mappings.getSrc(i);
+            ITree dst = mappings.getDstForSrc(i);
+            if (src.isLeaf() && dst.isLeaf()) {
+                if (!src.hasSameLabel(dst)) {
+                    workList.add(new Mapping(src, dst));
                 }
             }
 
@@ -127,7 +131,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
                 if (mappings.areBothUnmapped(entry.first, entry.second)) {
                     mappings.addMapping(entry.first, entry.second);
                 }
-                if (!entry.first.getLabel().equals(entry.second.getLabel()) && entry.first.isLeaf()
+                if (!entry.first.hasSameLabel(entry.second) && entry.first.isLeaf()
                         && entry.second.isLeaf()) {
                     workListTmp.add(new Mapping(entry.first, entry.second));
                 }
@@ -142,11 +146,11 @@ public class LeafMoveMatcherThetaE implements Matcher {
         int count = 0;
         ITree foundDstNode = null;
         ITree foundPosDstNode = null;
-        int pos = firstParent.getChildren().indexOf(pair.first);
+        int pos = firstParent.getChildPosition(pair.first);
 
         for (int i = 0; i < secondParent.getChildren().size(); i++) {
             ITree child = secondParent.getChildren().get(i);
-            if (child.getType() == pair.first.getType() && child.getLabel().equals(pair.first.getLabel())) {
+            if (child.getType() == pair.first.getType() && child.hasSameLabel(pair.first)) {
                 count++;
                 foundDstNode = child;
                 if (i == pos) {
@@ -163,7 +167,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
             if (mappings.isDstMapped(foundDstNode)) {
 
                 ITree foundSrc = mappings.getSrcForDst(foundDstNode);
-                if (!foundSrc.getLabel().equals(foundDstNode.getLabel())) {
+                if (!foundSrc.hasSameLabel(foundDstNode)) {
                     mappings.removeMapping(pair.first, pair.second);
                     mappings.removeMapping(foundSrc, foundDstNode);
                     changeMap.add(new Mapping(pair.first, foundDstNode));
@@ -175,15 +179,15 @@ public class LeafMoveMatcherThetaE implements Matcher {
             } else {
 
                 mappings.removeMapping(pair.first, pair.second);
-                if (pair.first.getLabel().equals(foundDstNode.getLabel())) {
+                if (pair.first.hasSameLabel(foundDstNode)) {
                     LinkedList<Mapping> toRemove = new LinkedList<>();
                     for (Mapping mapPair : changeMap) {
                         if (mapPair.first == pair.first) {
-                            if (!mapPair.first.getLabel().equals(mapPair.second.getLabel())) {
+                            if (!mapPair.first.hasSameLabel(mapPair.second)) {
                                 toRemove.add(mapPair);
                             }
                         } else if (mapPair.second == foundDstNode) {
-                            if (!mapPair.first.getLabel().equals(mapPair.second.getLabel())) {
+                            if (!mapPair.first.hasSameLabel(mapPair.second)) {
                                 toRemove.add(mapPair);
                             }
                         }
@@ -193,7 +197,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
                 changeMap.add(new Mapping(pair.first, foundDstNode));
                 for (ITree child : firstParent.getChildren()) {
                     if (child.isLeaf() && !mappings.isDstMapped(child) && child.getType() == pair.second.getType()
-                            && child.getLabel().equals(pair.second.getLabel())) {
+                            && child.hasSameLabel(pair.second)) {
                         mappings.addMapping(child, pair.second);
                         break;
                     }
@@ -202,10 +206,10 @@ public class LeafMoveMatcherThetaE implements Matcher {
         }
         ITree foundSrcNode = null;
         ITree foundPosSrcNode = null;
-        pos = secondParent.getChildren().indexOf(pair.second);
+        pos = secondParent.getChildPosition(pair.second);
         for (int i = 0; i < firstParent.getChildren().size(); i++) {
             ITree child = firstParent.getChildren().get(i);
-            if (child.getType() == pair.second.getType() && child.getLabel().equals(pair.second.getLabel())) {
+            if (child.getType() == pair.second.getType() && child.hasSameLabel(pair.second)) {
                 count++;
                 foundSrcNode = child;
                 if (i == pos) {
@@ -224,7 +228,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
             }
             if (mappings.isSrcMapped(foundSrcNode)) {
                 ITree foundDst = mappings.getSrcForDst(foundSrcNode);
-                if (foundDst != null && foundSrcNode != null && !foundDst.getLabel().equals(foundSrcNode.getLabel())) {
+                if (foundDst != null && foundSrcNode != null && !foundDst.hasSameLabel(foundSrcNode)) {
                     mappings.removeMapping(pair.first, pair.second);
                     mappings.removeMapping(foundSrcNode, foundDst);
                     changeMap.add(new Mapping(foundSrcNode, pair.second));
@@ -236,15 +240,15 @@ public class LeafMoveMatcherThetaE implements Matcher {
                 }
             } else {
                 mappings.removeMapping(pair.first, pair.second);
-                if (foundSrcNode.getLabel().equals(pair.second.getLabel())) {
+                if (foundSrcNode.hasSameLabel(pair.second)) {
                     LinkedList<Mapping> toRemove = new LinkedList<>();
                     for (Mapping mapPair : changeMap) {
                         if (mapPair.first == foundSrcNode) {
-                            if (!mapPair.first.getLabel().equals(mapPair.second.getLabel())) {
+                            if (!mapPair.first.hasSameLabel(mapPair.second)) {
                                 toRemove.add(mapPair);
                             }
                         } else if (mapPair.second == pair.second) {
-                            if (!mapPair.first.getLabel().equals(mapPair.second.getLabel())) {
+                            if (!mapPair.first.hasSameLabel(mapPair.second)) {
                                 toRemove.add(mapPair);
                             }
                         }
@@ -254,7 +258,7 @@ public class LeafMoveMatcherThetaE implements Matcher {
                 changeMap.add(new Mapping(foundSrcNode, pair.second));
                 for (ITree child : secondParent.getChildren()) {
                     if (child.isLeaf() && !mappings.isSrcMapped(child) && child.getType() == pair.first.getType()
-                            && child.getLabel().equals(pair.first.getLabel())) {
+                            && child.hasSameLabel(pair.first)) {
                         mappings.addMapping(pair.first, child);
                         break;
                     }
@@ -68,14 +68,14 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                 ITree parent = node.getParent();
                 if (mappings.getDstForSrc(parent) != null) {
                     ITree partner = mappings.getDstForSrc(parent);
-                    int pos = parent.getChildren().indexOf(node);
+                    int pos = parent.getChildPosition(node);
                     if (pos < partner.getChildren().size()) {
                         ITree child = partner.getChildren().get(pos);
                         if (child.getType() == node.getType()) {
-                            if (child.getLabel().equals(node.getLabel())) {
+                            if (child.hasSameLabel(node)) {
                                 ITree childPartner = mappings.getSrcForDst(child);
                                 if (childPartner != null) {
-                                    if (!childPartner.getLabel().equals(node.getLabel())) {
+                                    if (!childPartner.hasSameLabel(node)) {
                                         mappings.removeMapping(childPartner, child);
                                         mappings.addMapping(node, child);
                                     }
@@ -87,7 +87,7 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                                 ITree childPartner = mappings.getSrcForDst(child);
                                 if (childPartner != null) {
                                     if (mappings.getDstForSrc(childPartner.getParent()) == null) {
-                                        if (!childPartner.getLabel().equals(child.getLabel())) {
+                                        if (!childPartner.hasSameLabel(child)) {
                                             mappings.removeMapping(childPartner, child);
                                             mappings.addMapping(node, child);
                                         }
@@ -99,10 +99,10 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                         } else {
                             if (child.getChildren().size() == 1) {
                                 child = child.getChildren().get(0);
-                                if (child.getType() == node.getType() && child.getLabel().equals(node.getLabel())) {
+                                if (child.getType() == node.getType() && child.hasSameLabel(node)) {
                                     ITree childPartner = mappings.getSrcForDst(child);
                                     if (childPartner != null) {
-                                        if (!childPartner.getLabel().equals(node.getLabel())) {
+                                        if (!childPartner.hasSameLabel(node)) {
                                             mappings.removeMapping(childPartner, child);
                                             mappings.addMapping(node, child);
                                         } else if (mappings.getDstForSrc(childPartner.getParent()) == null) {
@@ -115,13 +115,13 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                                 for (int i = 0; i < partner.getChildren().size(); i++) {
                                     ITree possibleMatch = partner.getChildren().get(i);
                                     if (possibleMatch.getType() == node.getType()
-                                            && possibleMatch.getLabel().equals(node.getLabel())) {
+                                            && possibleMatch.hasSameLabel(node)) {
                                         ITree possibleMatchSrc = mappings.getSrcForDst(possibleMatch);
                                         if (possibleMatchSrc == null) {
                                             mappings.addMapping(node, possibleMatch);
                                             break;
                                         } else {
-                                            if (!possibleMatchSrc.getLabel().equals(possibleMatch.getLabel())) {
+                                            if (!possibleMatchSrc.hasSameLabel(possibleMatch)) {
                                                 mappings.removeMapping(possibleMatchSrc, possibleMatch);
                                                 mappings.addMapping(node, possibleMatch);
                                                 break;
@@ -143,14 +143,14 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                 ITree parent = node.getParent();
                 if (mappings.getSrcForDst(parent) != null) {
                     ITree partner = mappings.getSrcForDst(parent);
-                    int pos = parent.getChildren().indexOf(node);
+                    int pos = parent.getChildPosition(node);
                     if (pos < partner.getChildren().size()) {
                         ITree child = partner.getChildren().get(pos);
                         if (child.getType() == node.getType()) {
-                            if (child.getLabel().equals(node.getLabel())) {
+                            if (child.hasSameLabel(node)) {
                                 ITree tree = mappings.getDstForSrc(child);
                                 if (tree != null) {
-                                    if (!tree.getLabel().equals(node.getLabel())) {
+                                    if (!tree.hasSameLabel(node)) {
                                         mappings.removeMapping(child, tree);
                                         mappings.addMapping(child, node);
                                     }
@@ -161,7 +161,7 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                                 ITree childPartner = mappings.getDstForSrc(child);
                                 if (childPartner != null) {
                                     if (mappings.getSrcForDst(childPartner.getParent()) == null) {
-                                        if (!childPartner.getLabel().equals(child.getLabel())) {
+                                        if (!childPartner.hasSameLabel(child)) {
                                             mappings.removeMapping(child, childPartner);
                                             mappings.addMapping(child, node);
                                         }
@@ -174,10 +174,10 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                         } else {
                             if (child.getChildren().size() == 1) {
                                 child = child.getChildren().get(0);
-                                if (child.getType() == node.getType() && child.getLabel().equals(node.getLabel())) {
+                                if (child.getType() == node.getType() && child.hasSameLabel(node)) {
                                     ITree childPartner = mappings.getDstForSrc(child);
                                     if (childPartner != null) {
-                                        if (!childPartner.getLabel().equals(node.getLabel())) {
+                                        if (!childPartner.hasSameLabel(node)) {
                                             mappings.removeMapping(child, childPartner);
                                             mappings.addMapping(child, node);
                                         } else if (mappings.getSrcForDst(childPartner.getParent()) == null) {
@@ -190,13 +190,13 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                                 for (int i = 0; i < partner.getChildren().size(); i++) {
                                     ITree possibleMatch = partner.getChildren().get(i);
                                     if (possibleMatch.getType() == node.getType()
-                                            && possibleMatch.getLabel().equals(node.getLabel())) {
+                                            && possibleMatch.hasSameLabel(node)) {
                                         ITree possibleMatchDst = mappings.getDstForSrc(possibleMatch);
                                         if (possibleMatchDst == null) {
                                             mappings.addMapping(possibleMatch, node);
                                             break;
                                         } else {
-                                            if (!possibleMatchDst.getLabel().equals(possibleMatch.getLabel())) {
+                                            if (!possibleMatchDst.hasSameLabel(possibleMatch)) {
                                                 mappings.removeMapping(possibleMatch, possibleMatchDst);
                                                 mappings.addMapping(possibleMatch, node);
                                                 break;
@@ -212,13 +212,13 @@ public class UnmappedLeavesMatcherThetaC implements Matcher {
                     parent = parent.getParent();
                     if (mappings.getSrcForDst(parent) != null) {
                         ITree partner = mappings.getSrcForDst(parent);
-                        int pos = parent.getChildren().indexOf(oldParent);
+                        int pos = parent.getChildPosition(oldParent);
                         if (pos < partner.getChildren().size()) {
                             ITree child = partner.getChildren().get(pos);
-                            if (child.getType() == node.getType() && child.getLabel().equals(node.getLabel())) {
+                            if (child.getType() == node.getType() && child.hasSameLabel(node)) {
                                 ITree tree = mappings.getDstForSrc(child);
                                 if (tree != null) {
-                                    if (!tree.getLabel().equals(node.getLabel())) {
+                                    if (!tree.hasSameLabel(node)) {
                                         mappings.removeMapping(child, tree);
                                         mappings.addMapping(child, node);
                                     }
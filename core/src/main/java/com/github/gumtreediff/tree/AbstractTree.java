@@ -25,12 +25,26 @@ import com.github.gumtreediff.io.TreeIoUtils;
 import java.util.*;
 
 public abstract class AbstractTree implements ITree {
+    private static final ITree[] NO_CHILDREN = new ITree[0];
+
     protected ITree parent;
 
     protected List<ITree> children;
 
     protected TreeMetrics metrics;
 
+    TreeState state;
+
+    boolean metricsDirty;
+
+    /**
+     * The position of this node in the children list {@link #rankedIn}, valid only while this list
+     * has not been modified before this position.
+     */
+    int rank;
+
+    TrackedChildrenList rankedIn;
+
     @Override
     public String toString() {
         if (hasLabel())
@@ -53,11 +67,13 @@ public abstract class AbstractTree implements ITree {
 
     @Override
     public void setParent(ITree parent) {
+        checkNotFrozen();
         this.parent = parent;
     }
 
     @Override
     public void setParentAndUpdateChildren(ITree parent) {
+        checkNotFrozen();
         if (this.parent != null)
             this.parent.getChildren().remove(this);
         this.parent = parent;
@@ -72,38 +88,386 @@ public abstract class AbstractTree implements ITree {
 
     @Override
     public void setChildren(List<ITree> children) {
-        this.children = children;
+        checkNotFrozen();
+        if (this.children != null)
+            for (ITree c : this.children)
+                detach(c);
+        this.children = new TrackedChildrenList(children);
         for (ITree c : children)
             c.setParent(this);
+        invalidateMetrics();
+    }
+
+    /**
+     * Sets the children of a node under construction, whose parent is already this node.
+     * The children are copied from the given range of the given array, possibly empty, into a
+     * list of the exact size.
+     */
+    void initChildren(ITree[] children, int from, int to) {
+        this.children = new TrackedChildrenList(children, from, to);
     }
 
     @Override
     public void addChild(ITree t) {
+        checkNotFrozen();
         children.add(t);
         t.setParent(this);
     }
 
     @Override
     public void insertChild(ITree t, int position) {
+        checkNotFrozen();
         children.add(position, t);
         t.setParent(this);
     }
 
-    public TreeMetrics getMetrics() {
-        if (metrics == null) {
+    @Override
+    public ITree deepCopy() {
+        return TreeUtils.deepCopy(this);
+    }
+
+    /**
+     * Returns a copy of this node, without its parent and its children.
+     * @see #deepCopy()
+     */
+    ITree copyNode() {
+        return new Tree(this);
+    }
+
+    /**
+     * Returns a view on the descendants, backed by the numbering of the nodes computed with the metrics.
+     */
+    @Override
+    public List<ITree> getDescendants() {
+        ITree[] nodes = getNodesInPreOrder();
+        if (nodes == null)
+            return ITree.super.getDescendants();
+        return Collections.unmodifiableList(
+                Arrays.asList(nodes).subList(metrics.preOrder + 1, metrics.preOrder + metrics.size));
+    }
+
+    @Override
+    public ITree getDescendant(int index) {
+        ITree[] nodes = getNodesInPreOrder();
+        if (nodes == null)
+            return ITree.super.getDescendant(index);
+        if (index < 0 || index >= metrics.size - 1)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (metrics.size - 1));
+        return nodes[metrics.preOrder + 1 + index];
+    }
+
+    @Override
+    public boolean isDescendantOf(ITree tree) {
+        TreeMetrics m = getMetrics();
+        TreeMetrics o = tree.getMetrics();
+        if (state != null && tree instanceof AbstractTree && ((AbstractTree) tree).state == state)
+            return o.preOrder < m.preOrder && m.preOrder < o.preOrder + o.size;
+        return ITree.super.isDescendantOf(tree);
+    }
+
+    /**
+     * Returns the nodes of the tree containing this node, indexed by their pre-order number,
+     * or null if the nodes of this tree are not numbered consistently.
+     */
+    private ITree[] getNodesInPreOrder() {
+        getMetrics();
+        if (state == null)
+            return null;
+        ITree[] nodes = state.nodes;
+        if (nodes == null) {
             ITree root = this;
-            if (!this.isRoot()) {
-                List<ITree> parents = this.getParents();
-                root = parents.get(parents.size() - 1);
-            }
-            TreeVisitor.visitTree(root, new TreeMetricComputer());
+            while (root.getParent() != null)
+                root = root.getParent();
+            nodes = TreeUtils.preOrder(root).toArray(new ITree[0]);
+            state.nodes = nodes;
         }
+        int preOrder = metrics.preOrder;
+        return preOrder < nodes.length && nodes[preOrder] == this ? nodes : null;
+    }
 
+    @Override
+    public boolean hasSameLabel(ITree t) {
+        LabelSet labels = getLabelSet();
+        if (labels != null && t instanceof AbstractTree && ((AbstractTree) t).getLabelSet() == labels)
+            return getLabelId() == ((AbstractTree) t).getLabelId();
+        return getLabel().equals(t.getLabel());
+    }
+
+    /**
+     * Returns the label dictionary of this node, or null if its label is not stored in a dictionary.
+     */
+    LabelSet getLabelSet() {
+        return null;
+    }
+
+    /**
+     * Returns the id of the label of this node in its label dictionary.
+     */
+    int getLabelId() {
+        return LabelSet.NO_LABEL_ID;
+    }
+
+    /**
+     * Moves the label of this node to the given label dictionary.
+     */
+    void setLabelSet(LabelSet labels) {
+    }
+
+    @Override
+    public TreeMetrics getMetrics() {
+        if (hasOutdatedMetrics())
+            updateMetrics();
         return metrics;
     }
 
+    @Override
+    public void updateMetrics() {
+        ITree root = this;
+        while (root.getParent() != null)
+            root = root.getParent();
+        TreeMetricComputer.update(root);
+        if (hasOutdatedMetrics()) {
+            // This node has been removed from the children of its parent.
+            ITree top = this;
+            while (top.getParent() instanceof AbstractTree && ((AbstractTree) top.getParent()).hasOutdatedMetrics())
+                top = top.getParent();
+            TreeMetricComputer.update(top);
+        }
+    }
+
+    @Override
     public void setMetrics(TreeMetrics metrics) {
+        checkNotFrozen();
         this.metrics = metrics;
+        this.metricsDirty = false;
+    }
+
+    /**
+     * Freezes the whole tree containing this node. Its metrics, the numbering of its nodes and the
+     * positions of the children are computed now, then any modification throws an
+     * {@link UnsupportedOperationException}. A frozen tree can be read concurrently by several threads
+     * without copying it, provided it is published safely to them, e.g. through an executor.
+     */
+    public void freeze() {
+        ITree root = this;
+        while (root.getParent() != null)
+            root = root.getParent();
+        root.getMetrics();
+        if (!(root instanceof AbstractTree) || ((AbstractTree) root).state == null)
+            return;
+        AbstractTree r = (AbstractTree) root;
+        r.getNodesInPreOrder();
+        AncestorIndex.of(root);
+        for (ITree t : r.state.nodes)
+            if (t instanceof AbstractTree && ((AbstractTree) t).children instanceof TrackedChildrenList)
+                ((TrackedChildrenList) ((AbstractTree) t).children).renumberAll();
+        r.state.frozen = true;
+    }
+
+    /**
+     * Returns true if this node belongs to a frozen tree.
+     * @see #freeze()
+     */
+    public boolean isFrozen() {
+        return state != null && state.frozen;
+    }
+
+    protected void checkNotFrozen() {
+        if (isFrozen())
+            throw new UnsupportedOperationException("A frozen tree can not be modified");
+    }
+
+    private boolean hasOutdatedMetrics() {
+        return metrics == null || metricsDirty || state != null && state.pending;
+    }
+
+    /**
+     * Marks the metrics of this node and of its ancestors as outdated. They are updated on the next
+     * call to {@link #getMetrics()} or {@link #updateMetrics()}.
+     */
+    protected void invalidateMetrics() {
+        ITree t = this;
+        while (t instanceof AbstractTree) {
+            AbstractTree tree = (AbstractTree) t;
+            if (tree.state != null) {
+                tree.state.pending = true;
+                tree.state.modified = true;
+            }
+            if (tree.metricsDirty)
+                break;
+            tree.metricsDirty = true;
+            t = tree.getParent();
+        }
+    }
+
+    /**
+     * Separates the metrics of a subtree removed from its parent from the metrics of its former tree.
+     */
+    private static void detach(ITree tree) {
+        if (!(tree instanceof AbstractTree) || ((AbstractTree) tree).state == null
+                || ((AbstractTree) tree).isFrozen())
+            return;
+        TreeState detached = new TreeState();
+        detached.pending = true;
+        for (ITree t : tree.preOrder())
+            if (t instanceof AbstractTree)
+                ((AbstractTree) t).state = detached;
+    }
+
+    /**
+     * A list of children invalidating the metrics of its owner when modified. The position of each
+     * child is recorded in the child itself, so that {@link #indexOf(Object)} runs in constant time.
+     * Positions are renumbered lazily, from the first modified position.
+     */
+    protected class TrackedChildrenList extends AbstractList<ITree> implements RandomAccess {
+        private ITree[] elements;
+
+        private int size;
+
+        /**
+         * The number of leading children having an up-to-date rank.
+         */
+        private int ranked;
+
+        /**
+         * True if a child of this list may have been numbered by another list.
+         */
+        private boolean shared;
+
+        /**
+         * True if a child of this list can not be numbered, since it belongs to a frozen tree.
+         */
+        private boolean foreign;
+
+        public TrackedChildrenList() {
+            elements = NO_CHILDREN;
+        }
+
+        public TrackedChildrenList(Collection<ITree> children) {
+            elements = children.toArray(NO_CHILDREN);
+            size = elements.length;
+        }
+
+        TrackedChildrenList(ITree[] children, int from, int to) {
+            elements = from == to ? NO_CHILDREN : Arrays.copyOfRange(children, from, to);
+            size = to - from;
+        }
+
+        @Override
+        public ITree get(int index) {
+            Objects.checkIndex(index, size);
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            if (!(o instanceof AbstractTree))
+                return scan(o);
+            AbstractTree child = (AbstractTree) o;
+            if (isRanked(child))
+                return child.rank;
+            if (ranked < size) {
+                renumber();
+                if (isRanked(child))
+                    return child.rank;
+            }
+            if (shared) {
+                renumberAll();
+                if (isRanked(child))
+                    return child.rank;
+            }
+            return foreign ? scan(o) : -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) != -1;
+        }
+
+        @Override
+        public void add(int index, ITree child) {
+            checkNotFrozen();
+            if (index < 0 || index > size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            if (size == elements.length)
+                elements = Arrays.copyOf(elements, Math.max(4, size + (size >> 1)));
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = child;
+            size++;
+            modCount++;
+            ranked = Math.min(ranked, index);
+            invalidateMetrics();
+        }
+
+        @Override
+        public ITree set(int index, ITree child) {
+            checkNotFrozen();
+            Objects.checkIndex(index, size);
+            ITree old = elements[index];
+            elements[index] = child;
+            ranked = Math.min(ranked, index);
+            detach(old);
+            invalidateMetrics();
+            return old;
+        }
+
+        @Override
+        public ITree remove(int index) {
+            checkNotFrozen();
+            Objects.checkIndex(index, size);
+            ITree old = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[--size] = null;
+            modCount++;
+            ranked = Math.min(ranked, index);
+            detach(old);
+            invalidateMetrics();
+            return old;
+        }
+
+        private int scan(Object o) {
+            for (int i = 0; i < size; i++)
+                if (Objects.equals(o, elements[i]))
+                    return i;
+            return -1;
+        }
+
+        private boolean isRanked(AbstractTree child) {
+            return child.rankedIn == this && child.rank < ranked && elements[child.rank] == child;
+        }
+
+        /**
+         * Numbers all the children of this list again.
+         */
+        void renumberAll() {
+            shared = false;
+            foreign = false;
+            ranked = 0;
+            renumber();
+        }
+
+        private void renumber() {
+            for (int i = ranked; i < size; i++) {
+                if (!(elements[i] instanceof AbstractTree))
+                    continue;
+                AbstractTree child = (AbstractTree) elements[i];
+                if (child.isFrozen()) {
+                    foreign = true;
+                    continue;
+                }
+                TrackedChildrenList previous = child.rankedIn;
+                if (previous != null && previous != this && previous.isRanked(child))
+                    previous.shared = true;
+                child.rank = i;
+                child.rankedIn = this;
+            }
+            ranked = size;
+        }
     }
 
     protected static class EmptyEntryIterator implements Iterator<Map.Entry<String, Object>> {
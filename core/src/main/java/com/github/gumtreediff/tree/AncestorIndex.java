@@ -0,0 +1,242 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.*;
+
+/**
+ * An index answering ancestry queries on a whole tree. Nodes are numbered in pre-order,
+ * therefore ancestor tests are answered in constant time by comparing intervals. Each node
+ * also has a jump pointer to one of its ancestors, chosen so that level ancestor and lowest
+ * common ancestor queries follow a logarithmic number of pointers, with linear memory.
+ * An index describes the tree at the time it was built.
+ * @see #of(ITree)
+ */
+public final class AncestorIndex {
+    private static final int NO_NODE = -1;
+
+    private final ITree[] nodes;
+
+    // The root of an unmodified lazy tree, whose nodes are only created when requested.
+    private final LazyTree lazyRoot;
+
+    private final int[] parents;
+
+    private final int[] jumps;
+
+    private final int[] depths;
+
+    private final int[] sizes;
+
+    // Only used for nodes whose metrics do not give their number, built at most once per thread.
+    private volatile Map<ITree, Integer> ids;
+
+    private AncestorIndex(ITree root) {
+        int size = root.getMetrics().size;
+        nodes = new ITree[size];
+        lazyRoot = null;
+        parents = new int[size];
+        depths = new int[size];
+        sizes = new int[size];
+
+        int[] path = new int[size];
+        Deque<Iterator<ITree>> stack = new ArrayDeque<>();
+        nodes[0] = root;
+        parents[0] = NO_NODE;
+        stack.push(root.getChildren().iterator());
+        int next = 1;
+        while (!stack.isEmpty()) {
+            Iterator<ITree> it = stack.peek();
+            if (it.hasNext()) {
+                int id = next++;
+                nodes[id] = it.next();
+                parents[id] = path[stack.size() - 1];
+                depths[id] = stack.size();
+                path[stack.size()] = id;
+                stack.push(nodes[id].getChildren().iterator());
+            } else
+                stack.pop();
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            sizes[i]++;
+            if (i > 0)
+                sizes[parents[i]] += sizes[i];
+        }
+        jumps = jumps(parents, depths);
+    }
+
+    /**
+     * Builds the index of an unmodified lazy tree from the arrays of its source, which are shared.
+     */
+    AncestorIndex(LazyTree root, int[] parents, int[] depths, int[] sizes) {
+        nodes = null;
+        lazyRoot = root;
+        this.parents = parents;
+        this.depths = depths;
+        this.sizes = sizes;
+        jumps = jumps(parents, depths);
+    }
+
+    private static int[] jumps(int[] parents, int[] depths) {
+        int[] jumps = new int[parents.length];
+        for (int i = 1; i < parents.length; i++) {
+            int p = parents[i];
+            int jump = jumps[p];
+            if (p != 0 && depths[p] - depths[jump] == depths[jump] - depths[jumps[jump]])
+                jumps[i] = jumps[jump];
+            else
+                jumps[i] = p;
+        }
+        return jumps;
+    }
+
+    /**
+     * Returns the ancestor index of the whole tree containing the given node. The index is kept
+     * by the tree and reused until the tree is modified.
+     */
+    public static AncestorIndex of(ITree tree) {
+        ITree root = tree;
+        while (root.getParent() != null)
+            root = root.getParent();
+        root.getMetrics();
+        if (root instanceof CompactTree && ((CompactTree) root).getIndex() == 0) {
+            CompactTreeStore store = ((CompactTree) root).getStore();
+            if (store.ancestors == null)
+                store.ancestors = new AncestorIndex(root);
+            return store.ancestors;
+        }
+        TreeState state = root instanceof AbstractTree ? ((AbstractTree) root).state : null;
+        if (state == null)
+            return new AncestorIndex(root);
+        if (state.ancestors == null) {
+            if (root instanceof LazyTree && ((LazyTree) root).getIndex() == 0 && ((LazyTree) root).isUnmodified())
+                state.ancestors = ((LazyTree) root).newAncestorIndex();
+            else
+                state.ancestors = new AncestorIndex(root);
+        }
+        return state.ancestors;
+    }
+
+    /**
+     * Returns the number of nodes in the index.
+     */
+    public int size() {
+        return parents.length;
+    }
+
+    public ITree getRoot() {
+        return getNode(0);
+    }
+
+    /**
+     * Returns the pre-order number of the given node, or -1 if the node is not in the index.
+     */
+    public int getId(ITree tree) {
+        if (lazyRoot != null)
+            return tree instanceof LazyTree && lazyRoot.hasSameSource((LazyTree) tree)
+                    ? ((LazyTree) tree).getIndex() : NO_NODE;
+        int id = tree.getMetrics().preOrder;
+        if (id >= 0 && id < nodes.length && nodes[id] == tree)
+            return id;
+        Map<ITree, Integer> ids = this.ids;
+        if (ids == null) {
+            ids = new IdentityHashMap<>(nodes.length);
+            for (int i = 0; i < nodes.length; i++)
+                ids.put(nodes[i], i);
+            this.ids = ids;
+        }
+        Integer i = ids.get(tree);
+        return i == null ? NO_NODE : i;
+    }
+
+    /**
+     * Returns the node with the given pre-order number.
+     */
+    public ITree getNode(int id) {
+        return lazyRoot != null ? lazyRoot.getNode(id) : nodes[id];
+    }
+
+    /**
+     * Returns the pre-order number of the parent of the node with the given number, or -1 for the root.
+     */
+    public int getParent(int id) {
+        return parents[id];
+    }
+
+    public int getDepth(ITree tree) {
+        return depths[id(tree)];
+    }
+
+    /**
+     * Returns the ancestor located the given number of levels above the given node,
+     * the node itself for 0, or null if the node is not deep enough.
+     */
+    public ITree getAncestor(ITree tree, int levels) {
+        int node = id(tree);
+        int depth = depths[node] - levels;
+        if (levels < 0 || depth < 0)
+            return null;
+        while (depths[node] > depth) {
+            if (depths[jumps[node]] >= depth)
+                node = jumps[node];
+            else
+                node = parents[node];
+        }
+        return getNode(node);
+    }
+
+    /**
+     * Returns true if the first given node is a strict ancestor of the second one.
+     */
+    public boolean isAncestorOf(ITree ancestor, ITree tree) {
+        int a = id(ancestor);
+        int node = id(tree);
+        return a != node && contains(a, node);
+    }
+
+    /**
+     * Returns the deepest node having both given nodes as descendants or being one of them.
+     */
+    public ITree getLowestCommonAncestor(ITree first, ITree second) {
+        int node = id(first);
+        int other = id(second);
+        if (contains(node, other))
+            return getNode(node);
+        while (!contains(parents[node], other)) {
+            if (contains(jumps[node], other))
+                node = parents[node];
+            else
+                node = jumps[node];
+        }
+        return getNode(parents[node]);
+    }
+
+    private boolean contains(int ancestor, int node) {
+        return ancestor <= node && node < ancestor + sizes[ancestor];
+    }
+
+    private int id(ITree tree) {
+        int id = getId(tree);
+        if (id == NO_NODE)
+            throw new IllegalArgumentException("The node " + tree + " is not in this tree");
+        return id;
+    }
+}
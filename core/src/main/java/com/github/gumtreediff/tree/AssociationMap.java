@@ -21,20 +21,39 @@
 package com.github.gumtreediff.tree;
 
 import java.util.AbstractMap;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
+/**
+ * The metadata of a node, stored as parallel arrays of key slots and values, in insertion order.
+ * Since nodes have few metadata, a lookup is a short scan comparing integers.
+ * @see MetadataKey
+ */
 public class AssociationMap {
-    // FIXME or not, should we inline this class ? or use Entry to only have one list ? ... or both
-    ArrayList<Object> values = new ArrayList<>();
-    ArrayList<String> keys = new ArrayList<>();
+    private static final int[] NO_SLOTS = new int[0];
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private int[] slots = NO_SLOTS;
+
+    private Object[] values = NO_VALUES;
+
+    private int size;
 
     public Object get(String key) {
-        int idx = keys.indexOf(key);
+        MetadataKey<Object> k = MetadataKey.find(key);
+        if (k == null)
+            return null;
+        return get(k);
+    }
+
+    public <T> T get(MetadataKey<T> key) {
+        int idx = indexOf(key.slot);
         if (idx == -1)
             return null;
-        return values.get(idx);
+        return key.cast(values[idx]);
     }
 
     /**
@@ -42,25 +61,57 @@ public class AssociationMap {
      * This method won't remove if value == null
      */
     public Object set(String key, Object value) {
-        int idx = keys.indexOf(key);
+        return set(MetadataKey.of(key), value);
+    }
+
+    /**
+     * Sets the metadata of the given key and returns the previous value.
+     * This method won't remove if value == null
+     * @throws ClassCastException if the previous value is not of the type of the key,
+     *     in which case the metadata is left unchanged.
+     */
+    public <T> T set(MetadataKey<T> key, T value) {
+        int idx = indexOf(key.slot);
         if (idx == -1) {
-            keys.add(key);
-            values.add(value);
+            if (size == slots.length) {
+                int capacity = Math.max(2, size * 2);
+                slots = Arrays.copyOf(slots, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            slots[size] = key.slot;
+            values[size] = value;
+            size++;
             return null;
         }
-        return values.set(idx, value);
+        T old = key.cast(values[idx]);
+        values[idx] = value;
+        return old;
     }
 
     public Object remove(String key) {
-        int idx = keys.indexOf(key);
+        MetadataKey<Object> k = MetadataKey.find(key);
+        if (k == null)
+            return null;
+        return remove(k);
+    }
+
+    public <T> T remove(MetadataKey<T> key) {
+        int idx = indexOf(key.slot);
         if (idx == -1)
             return null;
-        if (idx == keys.size() - 1) {
-            keys.remove(idx);
-            return values.remove(idx);
-        }
-        keys.set(idx, keys.remove(keys.size() - 1));
-        return values.set(idx, values.remove(values.size() - 1));
+        T old = key.cast(values[idx]);
+        size--;
+        System.arraycopy(slots, idx + 1, slots, idx, size - idx);
+        System.arraycopy(values, idx + 1, values, idx, size - idx);
+        values[size] = null;
+        return old;
+    }
+
+    private int indexOf(int slot) {
+        for (int i = 0; i < size; i++)
+            if (slots[i] == slot)
+                return i;
+        return -1;
     }
 
     public Iterator<Entry<String, Object>> iterator() {
@@ -68,15 +119,18 @@ public class AssociationMap {
             int currentPos = 0;
             @Override
             public boolean hasNext() {
-                return currentPos < keys.size();
+                return currentPos < size;
             }
 
             @Override
             public Entry<String, Object> next() {
-                Entry<String, Object> e = new AbstractMap.SimpleEntry<>(keys.get(currentPos), values.get(currentPos));
+                if (currentPos >= size)
+                    throw new NoSuchElementException();
+                Entry<String, Object> e = new AbstractMap.SimpleEntry<>(
+                        MetadataKey.name(slots[currentPos]), values[currentPos]);
                 currentPos++;
                 return e;
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,325 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * A view on a node of a {@link CompactTreeStore}. There is at most one view per node,
+ * therefore views can be compared by identity like regular trees.
+ * The children of a compact tree can not be modified, but its copies are regular trees.
+ */
+public final class CompactTree extends AbstractTree {
+    private final CompactTreeStore store;
+
+    private final int index;
+
+    private boolean detached;
+
+    private int metricsVersion;
+
+    CompactTree(CompactTreeStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    private RuntimeException unsupportedOperation() {
+        return new UnsupportedOperationException("The structure of a compact tree can not be modified");
+    }
+
+    /**
+     * Returns the store containing this node.
+     */
+    public CompactTreeStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the pre-order index of this node in its store.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public ITree getParent() {
+        if (detached)
+            return parent;
+        int p = store.parent(index);
+        return p == CompactTreeStore.NO_NODE ? null : store.getNode(p);
+    }
+
+    /**
+     * Only the root of a compact tree can be given another parent.
+     */
+    @Override
+    public void setParent(ITree parent) {
+        checkNotFrozen();
+        if (store.parent(index) != CompactTreeStore.NO_NODE)
+            throw unsupportedOperation();
+        this.parent = parent;
+        this.detached = true;
+    }
+
+    @Override
+    public void setParentAndUpdateChildren(ITree parent) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public List<ITree> getChildren() {
+        if (children == null)
+            children = new ChildrenList();
+        return children;
+    }
+
+    @Override
+    public ITree getChild(int position) {
+        return store.getNode(store.child(index, position));
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return store.childCount(index) == 0;
+    }
+
+    @Override
+    public int getChildPosition(ITree child) {
+        return child.getParent() == this ? child.positionInParent() : -1;
+    }
+
+    @Override
+    public int positionInParent() {
+        if (detached)
+            return parent == null ? -1 : parent.getChildPosition(this);
+        return store.parent(index) == CompactTreeStore.NO_NODE ? -1 : store.rank(index);
+    }
+
+    @Override
+    public List<ITree> getDescendants() {
+        return new DescendantsList();
+    }
+
+    @Override
+    public ITree getDescendant(int index) {
+        int size = getMetrics().size;
+        if (index < 0 || index >= size - 1)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (size - 1));
+        return store.getNode(this.index + 1 + index);
+    }
+
+    @Override
+    public boolean isDescendantOf(ITree tree) {
+        if (!(tree instanceof CompactTree) || ((CompactTree) tree).store != store)
+            return super.isDescendantOf(tree);
+        CompactTree other = (CompactTree) tree;
+        return other.index < index && index < other.index + other.getMetrics().size;
+    }
+
+    @Override
+    public void setChildren(List<ITree> children) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public void addChild(ITree t) {
+        throw unsupportedOperation();
+    }
+
+    @Override
+    public void insertChild(ITree t, int position) {
+        throw unsupportedOperation();
+    }
+
+    /**
+     * Freezes the whole store of this node.
+     */
+    @Override
+    public void freeze() {
+        store.freeze();
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return store.isFrozen();
+    }
+
+    @Override
+    public String getLabel() {
+        return store.label(index);
+    }
+
+    @Override
+    public void setLabel(String label) {
+        checkNotFrozen();
+        store.setLabel(index, label);
+    }
+
+    @Override
+    LabelSet getLabelSet() {
+        return store.getLabels();
+    }
+
+    @Override
+    int getLabelId() {
+        return store.labelId(index);
+    }
+
+    @Override
+    void setLabelSet(LabelSet labels) {
+        checkNotFrozen();
+        store.setLabels(labels);
+    }
+
+    @Override
+    public int getPos() {
+        return store.pos(index);
+    }
+
+    @Override
+    public void setPos(int pos) {
+        checkNotFrozen();
+        store.setPos(index, pos);
+    }
+
+    @Override
+    public int getLength() {
+        return store.length(index);
+    }
+
+    @Override
+    public void setLength(int length) {
+        checkNotFrozen();
+        store.setLength(index, length);
+    }
+
+    @Override
+    public Type getType() {
+        return store.type(index);
+    }
+
+    @Override
+    public void setType(Type type) {
+        checkNotFrozen();
+        store.setType(index, type);
+    }
+
+    @Override
+    public TreeMetrics getMetrics() {
+        if (metrics == null || metricsVersion != store.metricsVersion()) {
+            metrics = store.metrics(index);
+            metricsVersion = store.metricsVersion();
+        }
+        return metrics;
+    }
+
+    /**
+     * The metrics of compact trees are updated by their store.
+     */
+    @Override
+    public void updateMetrics() {
+        getMetrics();
+    }
+
+    @Override
+    public Object getMetadata(String key) {
+        AssociationMap metadata = store.metadata(index, false);
+        if (metadata == null)
+            return null;
+        return metadata.get(key);
+    }
+
+    @Override
+    public Object setMetadata(String key, Object value) {
+        checkNotFrozen();
+        if (value == null) {
+            AssociationMap metadata = store.metadata(index, false);
+            if (metadata == null)
+                return null;
+            else
+                return metadata.remove(key);
+        }
+        return store.metadata(index, true).set(key, value);
+    }
+
+    @Override
+    public <T> T getMetadata(MetadataKey<T> key) {
+        AssociationMap metadata = store.metadata(index, false);
+        if (metadata == null)
+            return null;
+        return metadata.get(key);
+    }
+
+    @Override
+    public <T> T setMetadata(MetadataKey<T> key, T value) {
+        checkNotFrozen();
+        if (value == null) {
+            AssociationMap metadata = store.metadata(index, false);
+            if (metadata == null)
+                return null;
+            else
+                return metadata.remove(key);
+        }
+        return store.metadata(index, true).set(key, value);
+    }
+
+    @Override
+    public Iterator<Entry<String, Object>> getMetadata() {
+        AssociationMap metadata = store.metadata(index, false);
+        if (metadata == null)
+            return new EmptyEntryIterator();
+        return metadata.iterator();
+    }
+
+    private class DescendantsList extends AbstractList<ITree> implements RandomAccess {
+        @Override
+        public ITree get(int position) {
+            return getDescendant(position);
+        }
+
+        @Override
+        public int size() {
+            return getMetrics().size - 1;
+        }
+    }
+
+    private class ChildrenList extends AbstractList<ITree> implements RandomAccess {
+        @Override
+        public ITree get(int position) {
+            return getChild(position);
+        }
+
+        @Override
+        public int size() {
+            return store.childCount(index);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof ITree ? getChildPosition((ITree) o) : -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) != -1;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.*;
+
+/**
+ * A compact storage for a whole tree. Nodes are numbered in pre-order and their
+ * attributes are kept in flat primitive arrays. Nodes are exposed through lightweight
+ * {@link CompactTree} views, which are created on demand.
+ * The structure of a compact tree can not be modified once built, but types, labels,
+ * positions and metadata of its nodes can.
+ * @see Builder
+ * @see CompactTree
+ */
+public final class CompactTreeStore {
+    static final int NO_NODE = -1;
+
+    private final int size;
+
+    private final int[] parents;
+
+    private final int[] childOffsets;
+
+    private final int[] children;
+
+    private final int[] ranks;
+
+    private final int[] types;
+
+    private final int[] labelIds;
+
+    private final int[] positions;
+
+    private final int[] lengths;
+
+    private LabelSet labels;
+
+    private AssociationMap[] metadata;
+
+    private final CompactTree[] views;
+
+    private int[] sizes;
+
+    private int[] heights;
+
+    private int[] hashes;
+
+    private int[] structureHashes;
+
+    private long[] fingerprints;
+
+    private long[] structureFingerprints;
+
+    private int[] depths;
+
+    private int metricsVersion;
+
+    AncestorIndex ancestors;
+
+    private boolean frozen;
+
+    private CompactTreeStore(Builder builder) {
+        size = builder.size;
+        parents = Arrays.copyOf(builder.parents, size);
+        types = Arrays.copyOf(builder.types, size);
+        labelIds = Arrays.copyOf(builder.labelIds, size);
+        positions = Arrays.copyOf(builder.positions, size);
+        lengths = Arrays.copyOf(builder.lengths, size);
+        labels = builder.labels;
+        metadata = builder.metadata == null ? null : Arrays.copyOf(builder.metadata, size);
+        views = new CompactTree[size];
+
+        childOffsets = new int[size + 1];
+        for (int i = 1; i < size; i++)
+            childOffsets[parents[i] + 1]++;
+        for (int i = 0; i < size; i++)
+            childOffsets[i + 1] += childOffsets[i];
+        children = new int[Math.max(0, size - 1)];
+        ranks = new int[size];
+        int[] filled = new int[size];
+        for (int i = 1; i < size; i++) {
+            int p = parents[i];
+            ranks[i] = filled[p]++;
+            children[childOffsets[p] + ranks[i]] = i;
+        }
+    }
+
+    /**
+     * Copy the given tree into a new compact store.
+     */
+    public static CompactTreeStore fromTree(ITree root) {
+        Builder builder = new Builder();
+        copyNode(builder, root);
+        Deque<Iterator<ITree>> stack = new ArrayDeque<>();
+        stack.push(root.getChildren().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<ITree> it = stack.peek();
+            if (it.hasNext()) {
+                ITree child = it.next();
+                copyNode(builder, child);
+                stack.push(child.getChildren().iterator());
+            } else {
+                stack.pop();
+                builder.endNode();
+            }
+        }
+        return builder.build();
+    }
+
+    private static void copyNode(Builder builder, ITree t) {
+        builder.startNode(t.getType(), t.getLabel());
+        builder.setPos(t.getPos());
+        builder.setLength(t.getLength());
+        Iterator<Map.Entry<String, Object>> it = t.getMetadata();
+        while (it.hasNext()) {
+            Map.Entry<String, Object> e = it.next();
+            builder.setMetadata(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the view of the root node.
+     */
+    public ITree getRoot() {
+        return getNode(0);
+    }
+
+    /**
+     * Returns the view of the node with the given pre-order index.
+     */
+    public ITree getNode(int index) {
+        CompactTree view = views[index];
+        if (view == null) {
+            view = new CompactTree(this, index);
+            views[index] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Computes the metrics and views of all nodes, then forbids any modification.
+     * @see AbstractTree#freeze()
+     */
+    void freeze() {
+        for (int i = 0; i < size; i++) {
+            ITree node = getNode(i);
+            node.getMetrics();
+            node.getChildren();
+        }
+        AncestorIndex.of(getRoot());
+        frozen = true;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    int parent(int index) {
+        return parents[index];
+    }
+
+    int childCount(int index) {
+        return childOffsets[index + 1] - childOffsets[index];
+    }
+
+    int child(int index, int position) {
+        if (position < 0 || position >= childCount(index))
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + childCount(index));
+        return children[childOffsets[index] + position];
+    }
+
+    int rank(int index) {
+        return ranks[index];
+    }
+
+    Type type(int index) {
+        return TypeSet.type(types[index]);
+    }
+
+    void setType(int index, Type type) {
+        types[index] = type.id;
+        invalidateMetrics();
+    }
+
+    String label(int index) {
+        return labels.label(labelIds[index]);
+    }
+
+    void setLabel(int index, String label) {
+        labelIds[index] = labels.id(label);
+        invalidateMetrics();
+    }
+
+    int labelId(int index) {
+        return labelIds[index];
+    }
+
+    /**
+     * Returns the label dictionary used by this store.
+     */
+    public LabelSet getLabels() {
+        return labels;
+    }
+
+    /**
+     * Moves all labels of this store to the given label dictionary.
+     */
+    void setLabels(LabelSet labels) {
+        for (int i = 0; i < size; i++)
+            labelIds[i] = labels.id(this.labels.label(labelIds[i]));
+        this.labels = labels;
+    }
+
+    int pos(int index) {
+        return positions[index];
+    }
+
+    void setPos(int index, int pos) {
+        positions[index] = pos;
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    void setLength(int index, int length) {
+        lengths[index] = length;
+    }
+
+    AssociationMap metadata(int index, boolean create) {
+        if (metadata == null) {
+            if (!create)
+                return null;
+            metadata = new AssociationMap[size];
+        }
+        if (metadata[index] == null && create)
+            metadata[index] = new AssociationMap();
+        return metadata[index];
+    }
+
+    /**
+     * Discards the metrics of all nodes, they are recomputed in a single sweep when next requested.
+     */
+    private void invalidateMetrics() {
+        sizes = null;
+        metricsVersion++;
+    }
+
+    /**
+     * Returns a number changing each time the metrics of the nodes are discarded.
+     */
+    int metricsVersion() {
+        return metricsVersion;
+    }
+
+    TreeMetrics metrics(int index) {
+        if (sizes == null)
+            computeMetrics();
+        int position = index - depths[index] + sizes[index] - 1;
+        return new TreeMetrics(sizes[index], heights[index], hashes[index], structureHashes[index],
+                fingerprints[index], structureFingerprints[index], depths[index], position);
+    }
+
+    /**
+     * Compute the metrics of all nodes. Since nodes are numbered in pre-order,
+     * a reverse sweep visits all children before their parent.
+     */
+    private void computeMetrics() {
+        int[] sizes = new int[size];
+        int[] heights = new int[size];
+        int[] hashes = new int[size];
+        int[] structureHashes = new int[size];
+        long[] fingerprints = new long[size];
+        long[] structureFingerprints = new long[size];
+        int[] depths = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int sumSize = 0;
+            int maxHeight = 0;
+            int currentHash = 0;
+            int currentStructureHash = 0;
+            long currentFingerprint = 0L;
+            long currentStructureFingerprint = 0L;
+            for (int j = childOffsets[i]; j < childOffsets[i + 1]; j++) {
+                int child = children[j];
+                int factor = TreeMetricComputer.hashFactor(2 * sumSize + 1);
+                currentHash += hashes[child] * factor;
+                currentStructureHash += structureHashes[child] * factor;
+                long fingerprintFactor = TreeMetricComputer.fingerprintFactor(2 * sumSize + 1);
+                currentFingerprint += fingerprints[child] * fingerprintFactor;
+                currentStructureFingerprint += structureFingerprints[child] * fingerprintFactor;
+                sumSize += sizes[child];
+                if (heights[child] > maxHeight)
+                    maxHeight = heights[child];
+            }
+            sizes[i] = sumSize + 1;
+            heights[i] = childCount(i) == 0 ? 0 : maxHeight + 1;
+            hashes[i] = TreeMetricComputer.innerNodeHash(type(i), label(i), 2 * sumSize + 1, currentHash);
+            structureHashes[i] = TreeMetricComputer.innerNodeStructureHash(
+                    type(i), 2 * sumSize + 1, currentStructureHash);
+            fingerprints[i] = TreeMetricComputer.innerNodeFingerprint(
+                    type(i), label(i), 2 * sumSize + 1, currentFingerprint);
+            structureFingerprints[i] = TreeMetricComputer.innerNodeStructureFingerprint(
+                    type(i), 2 * sumSize + 1, currentStructureFingerprint);
+        }
+        for (int i = 1; i < size; i++)
+            depths[i] = depths[parents[i]] + 1;
+        this.sizes = sizes;
+        this.heights = heights;
+        this.hashes = hashes;
+        this.structureHashes = structureHashes;
+        this.fingerprints = fingerprints;
+        this.structureFingerprints = structureFingerprints;
+        this.depths = depths;
+    }
+
+    /**
+     * A builder filling a compact store in pre-order. Each node is opened with
+     * {@link #startNode(Type, String)} and closed with {@link #endNode()}. The
+     * attributes set between these calls apply to the last opened node.
+     */
+    public static final class Builder {
+        private int size;
+
+        private int current = NO_NODE;
+
+        private int[] parents;
+
+        private int[] types;
+
+        private int[] labelIds;
+
+        private int[] positions;
+
+        private int[] lengths;
+
+        private AssociationMap[] metadata;
+
+        private final LabelSet labels;
+
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * @param expectedSize a hint on the number of nodes of the tree.
+         */
+        public Builder(int expectedSize) {
+            this(expectedSize, new LabelSet());
+        }
+
+        /**
+         * @param expectedSize a hint on the number of nodes of the tree.
+         * @param labels the label dictionary where the labels of the tree are stored.
+         */
+        public Builder(int expectedSize, LabelSet labels) {
+            this.labels = labels;
+            int capacity = Math.max(expectedSize, 1);
+            parents = new int[capacity];
+            types = new int[capacity];
+            labelIds = new int[capacity];
+            positions = new int[capacity];
+            lengths = new int[capacity];
+        }
+
+        /**
+         * Open a new node, child of the currently opened node.
+         * @return the pre-order index of the new node.
+         */
+        public int startNode(Type type, String label) {
+            if (current == NO_NODE && size > 0)
+                throw new IllegalStateException("A compact tree can only have one root");
+            if (size == parents.length)
+                grow();
+            int node = size++;
+            parents[node] = current;
+            types[node] = type.id;
+            labelIds[node] = labels.id(label);
+            positions[node] = ITree.NO_POS;
+            lengths[node] = ITree.NO_POS;
+            current = node;
+            return node;
+        }
+
+        /**
+         * Close the currently opened node.
+         */
+        public void endNode() {
+            checkOpened();
+            current = parents[current];
+        }
+
+        public void setPos(int pos) {
+            checkOpened();
+            positions[current] = pos;
+        }
+
+        public void setLength(int length) {
+            checkOpened();
+            lengths[current] = length;
+        }
+
+        public void setMetadata(String key, Object value) {
+            setMetadata(MetadataKey.of(key), value);
+        }
+
+        public <T> void setMetadata(MetadataKey<T> key, T value) {
+            checkOpened();
+            if (metadata == null)
+                metadata = new AssociationMap[parents.length];
+            if (metadata[current] == null)
+                metadata[current] = new AssociationMap();
+            metadata[current].set(key, value);
+        }
+
+        public CompactTreeStore build() {
+            if (size == 0 || current != NO_NODE)
+                throw new IllegalStateException("The tree is empty or has opened nodes");
+            return new CompactTreeStore(this);
+        }
+
+        private void checkOpened() {
+            if (current == NO_NODE)
+                throw new IllegalStateException("No opened node");
+        }
+
+        private void grow() {
+            int capacity = parents.length * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            types = Arrays.copyOf(types, capacity);
+            labelIds = Arrays.copyOf(labelIds, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            if (metadata != null)
+                metadata = Arrays.copyOf(metadata, capacity);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * A node of a tree derived from another tree, which is never modified. The type, label, positions
+ * and metadata are read from the original node until one of them is written, the node is then
+ * copied. The children are wrapped in turn the first time they are accessed.
+ * @see TreeContext#deriveTree()
+ */
+final class CopyOnWriteTree extends AbstractTree {
+    private final ITree original;
+
+    private Tree copy;
+
+    CopyOnWriteTree(ITree original) {
+        this.original = original;
+    }
+
+    private ITree source() {
+        return copy == null ? original : copy;
+    }
+
+    private Tree copy() {
+        checkNotFrozen();
+        if (copy == null) {
+            Tree t = new Tree(original);
+            for (Iterator<Entry<String, Object>> it = original.getMetadata(); it.hasNext();) {
+                Entry<String, Object> e = it.next();
+                t.setMetadata(e.getKey(), e.getValue());
+            }
+            copy = t;
+        }
+        return copy;
+    }
+
+    @Override
+    public List<ITree> getChildren() {
+        if (children == null) {
+            List<ITree> originals = original.getChildren();
+            List<ITree> wrapped = new ArrayList<>(originals.size());
+            for (int i = 0; i < originals.size(); i++) {
+                CopyOnWriteTree child = new CopyOnWriteTree(originals.get(i));
+                child.parent = this;
+                wrapped.add(child);
+            }
+            children = new TrackedChildrenList(wrapped);
+        }
+        return children;
+    }
+
+    @Override
+    public void addChild(ITree t) {
+        getChildren();
+        super.addChild(t);
+    }
+
+    @Override
+    public void insertChild(ITree t, int position) {
+        getChildren();
+        super.insertChild(t, position);
+    }
+
+    @Override
+    public String getLabel() {
+        return source().getLabel();
+    }
+
+    @Override
+    public void setLabel(String label) {
+        copy().setLabel(label);
+        invalidateMetrics();
+    }
+
+    @Override
+    LabelSet getLabelSet() {
+        return source() instanceof AbstractTree ? ((AbstractTree) source()).getLabelSet() : null;
+    }
+
+    @Override
+    int getLabelId() {
+        return source() instanceof AbstractTree ? ((AbstractTree) source()).getLabelId() : LabelSet.NO_LABEL_ID;
+    }
+
+    @Override
+    void setLabelSet(LabelSet labels) {
+        copy().setLabelSet(labels);
+    }
+
+    @Override
+    public int getPos() {
+        return source().getPos();
+    }
+
+    @Override
+    public void setPos(int pos) {
+        copy().setPos(pos);
+    }
+
+    @Override
+    public int getLength() {
+        return source().getLength();
+    }
+
+    @Override
+    public void setLength(int length) {
+        copy().setLength(length);
+    }
+
+    @Override
+    public Type getType() {
+        return source().getType();
+    }
+
+    @Override
+    public void setType(Type type) {
+        copy().setType(type);
+        invalidateMetrics();
+    }
+
+    @Override
+    public Object getMetadata(String key) {
+        return source().getMetadata(key);
+    }
+
+    @Override
+    public Object setMetadata(String key, Object value) {
+        return copy().setMetadata(key, value);
+    }
+
+    @Override
+    public <T> T getMetadata(MetadataKey<T> key) {
+        return source().getMetadata(key);
+    }
+
+    @Override
+    public <T> T setMetadata(MetadataKey<T> key, T value) {
+        return copy().setMetadata(key, value);
+    }
+
+    @Override
+    public Iterator<Entry<String, Object>> getMetadata() {
+        return source().getMetadata();
+    }
+}
@@ -24,8 +24,7 @@ import java.util.*;
 
 public class FakeTree extends AbstractTree {
     public FakeTree(ITree... trees) {
-        children = new ArrayList<>(trees.length);
-        children.addAll(Arrays.asList(trees));
+        children = new TrackedChildrenList(Arrays.asList(trees));
     }
 
     private RuntimeException unsupportedOperation() {
@@ -33,11 +32,8 @@ public class FakeTree extends AbstractTree {
     }
 
     @Override
-    public ITree deepCopy() {
-        ITree copy = new FakeTree();
-        for (ITree child : getChildren())
-            copy.addChild(child.deepCopy());
-        return copy;
+    ITree copyNode() {
+        return new FakeTree();
     }
 
     @Override
@@ -129,6 +129,26 @@ public interface ITree {
         return trees;
     }
 
+    /**
+     * Returns the descendant with the given index in the pre-order of the descendants of the node,
+     * which ranges from 0 to {@code getMetrics().size - 2}. It allows to iterate over the descendants
+     * without allocating a list.
+     * @see #getDescendants()
+     */
+    default ITree getDescendant(int index) {
+        return getDescendants().get(index);
+    }
+
+    /**
+     * Indicates whether or not this node is a descendant (child, child of child, etc.) of the given node.
+     */
+    default boolean isDescendantOf(ITree tree) {
+        for (ITree parent = getParent(); parent != null; parent = parent.getParent())
+            if (parent == tree)
+                return true;
+        return false;
+    }
+
     /**
      * Set the parent of this node. Be careful that the parent node won't have this node in its
      * children list.
@@ -160,12 +180,8 @@ public interface ITree {
      */
     default List<ITree> getParents() {
         List<ITree> parents = new ArrayList<>();
-        if (getParent() == null)
-            return parents;
-        else {
-            parents.add(getParent());
-            parents.addAll(getParent().getParents());
-        }
+        for (ITree parent = getParent(); parent != null; parent = parent.getParent())
+            parents.add(parent);
         return parents;
     }
 
@@ -177,7 +193,7 @@ public interface ITree {
         if (p == null)
             return -1;
         else
-            return p.getChildren().indexOf(this);
+            return p.getChildPosition(this);
     }
 
     /**
@@ -254,46 +270,60 @@ public interface ITree {
      * @return true if they are compatible and have same label, false either
      */
     default boolean hasSameTypeAndLabel(ITree t) {
-        return hasSameType(t) && getLabel().equals(t.getLabel());
+        return hasSameType(t) && hasSameLabel(t);
+    }
+
+    /**
+     * @return a boolean indicating if the trees have the same label.
+     */
+    default boolean hasSameLabel(ITree t) {
+        return getLabel().equals(t.getLabel());
     }
 
     /**
      * Indicates whether or not this node and its descendants are isomorphic to the node
      * given in parameter and its descendants (which must not be null).
-     * This test fails fast.
+     * Trees with different fingerprints are rejected without being visited.
      */
     default boolean isIsomorphicTo(ITree tree) {
-        if (!hasSameTypeAndLabel(tree))
-            return false;
-
-        if (getChildren().size() != tree.getChildren().size())
+        if (getMetrics().fingerprint != tree.getMetrics().fingerprint)
             return false;
-
-        for (int i = 0; i < getChildren().size(); i++)  {
-            boolean isChildrenIsomophic = getChild(i).isIsomorphicTo(tree.getChild(i));
-            if (!isChildrenIsomophic)
-                return false;
-        }
-
-        return true;
+        return verify(this, tree, true);
     }
 
     /**
      * Indicates whether or not this node and its descendants are isostructural (isomorphism without labels) to the node
      * given in parameter and its descendants (which must not be null).
-     * This test fails fast.
+     * Trees with different structure fingerprints are rejected without being visited.
      */
     default boolean isIsoStructuralTo(ITree tree) {
-        if (this.getType() != tree.getType())
+        if (getMetrics().structureFingerprint != tree.getMetrics().structureFingerprint)
             return false;
+        return verify(this, tree, false);
+    }
 
-        if (getChildren().size() != tree.getChildren().size())
-            return false;
+    /**
+     * Compares the two trees node by node, without recursion.
+     */
+    private static boolean verify(ITree t1, ITree t2, boolean compareLabels) {
+        Deque<ITree> stack = new ArrayDeque<>();
+        stack.push(t2);
+        stack.push(t1);
+        while (!stack.isEmpty()) {
+            ITree n1 = stack.pop();
+            ITree n2 = stack.pop();
+            if (compareLabels ? !n1.hasSameTypeAndLabel(n2) : n1.getType() != n2.getType())
+                return false;
 
-        for (int i = 0; i < getChildren().size(); i++)  {
-            boolean isChildrenStructural = getChild(i).isIsoStructuralTo(tree.getChild(i));
-            if (!isChildrenStructural)
+            List<ITree> children1 = n1.getChildren();
+            List<ITree> children2 = n2.getChildren();
+            if (children1.size() != children2.size())
                 return false;
+
+            for (int i = children1.size() - 1; i >= 0; i--) {
+                stack.push(children2.get(i));
+                stack.push(children1.get(i));
+            }
         }
 
         return true;
@@ -306,10 +336,20 @@ public interface ITree {
 
     /*
      * Returns the metrics object computed for this node. This object is lazily computed
-     * when first requested. When metrics have been computed, the tree must remain unchanged.
+     * when first requested, and lazily updated when first requested after the tree has been modified.
      */
     TreeMetrics getMetrics();
 
+    /**
+     * Updates now the outdated metrics of the tree containing this node. Only the modified nodes,
+     * their ancestors and the nodes whose depth or position changed are recomputed.
+     * Since metrics are otherwise updated on the first request following a batch of modifications,
+     * calling this method is never required.
+     */
+    default void updateMetrics() {
+        getMetrics();
+    }
+
     /**
      * Sets the metric object for this node.
      *
@@ -326,6 +366,22 @@ public interface ITree {
      */
     Object setMetadata(String key, Object value);
 
+    /**
+     * Returns the metadata with the given key for this node.
+     * @throws ClassCastException if the metadata is not of the type of the key.
+     */
+    default <T> T getMetadata(MetadataKey<T> key) {
+        return key.cast(getMetadata(key.name));
+    }
+
+    /**
+     * Set the metadata with the given key and value for this node, a null value removes it.
+     * Returns the previous value.
+     */
+    default <T> T setMetadata(MetadataKey<T> key, T value) {
+        return key.cast(setMetadata(key.name, value));
+    }
+
     /**
      * Returns an iterator for all metadata of this node.
      */
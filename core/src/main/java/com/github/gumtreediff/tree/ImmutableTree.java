@@ -19,10 +19,13 @@
 
 package com.github.gumtreediff.tree;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public final class ImmutableTree extends AbstractTree {
     private final String label;
@@ -35,12 +38,27 @@ public final class ImmutableTree extends AbstractTree {
 
     public ImmutableTree(ITree t) {
         this(t, null);
+        Deque<ITree> originals = new ArrayDeque<>();
+        Deque<ImmutableTree> copies = new ArrayDeque<>();
+        originals.push(t);
+        copies.push(this);
+        while (!originals.isEmpty()) {
+            List<ITree> originalChildren = originals.pop().getChildren();
+            ImmutableTree copy = copies.pop();
+            List<ITree> copyChildren = new ArrayList<>(originalChildren.size());
+            for (int i = 0; i < originalChildren.size(); i++) {
+                ImmutableTree child = new ImmutableTree(originalChildren.get(i), copy);
+                copyChildren.add(child);
+                originals.push(originalChildren.get(i));
+                copies.push(child);
+            }
+            TrackedChildrenList list = copy.new TrackedChildrenList(copyChildren);
+            list.renumberAll();
+            copy.children = Collections.unmodifiableList(list);
+        }
     }
 
     private ImmutableTree(ITree t, ITree parent) {
-        children = Collections.unmodifiableList(
-                t.getChildren().stream().map(c -> new ImmutableTree(c, this)).collect(Collectors.toList())
-        );
         this.parent = parent;
         label = t.getLabel();
         type = t.getType();
@@ -54,14 +72,6 @@ public final class ImmutableTree extends AbstractTree {
         }
     }
 
-    @Override
-    public ITree deepCopy() {
-        ITree copy = new Tree(this);
-        for (ITree child : getChildren())
-            copy.addChild(child.deepCopy());
-        return copy;
-    }
-
     @Override
     public void setParent(ITree parent) {
         throw new UnsupportedOperationException();
@@ -119,6 +129,16 @@ public final class ImmutableTree extends AbstractTree {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public <T> T getMetadata(MetadataKey<T> key) {
+        return metadata.get(key);
+    }
+
+    @Override
+    public <T> T setMetadata(MetadataKey<T> key, T value) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public Iterator<Map.Entry<String, Object>> getMetadata() {
         if (metadata == null)
@@ -0,0 +1,133 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Interns values by name, giving each value a dense integer id in creation order.
+ * This class is thread-safe and never locks. A new value is appended to the values by id
+ * with a compare-and-set, then indexed by name by any thread that finds it appended.
+ * Values are created out of any lock, so creating a value can intern other values.
+ * @param <T> the type of the interned values.
+ */
+final class Interner<T> {
+    interface Factory<T> {
+        T create(String name, int id);
+    }
+
+    private static final int FIRST_CHUNK_SIZE = 16;
+
+    private final Factory<T> factory;
+
+    private final Function<T, String> nameOf;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // The values by id, in chunks of doubling sizes so that they are never copied.
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks =
+            new AtomicReferenceArray<>(Integer.numberOfLeadingZeros(FIRST_CHUNK_SIZE) + 1);
+
+    // All the values with a lower id are indexed by name.
+    private final AtomicInteger size = new AtomicInteger();
+
+    Interner(Factory<T> factory, Function<T, String> nameOf) {
+        this.factory = factory;
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * Returns the id of the value with the given name, creating the value if needed.
+     */
+    int id(String name) {
+        Integer id = ids.get(name);
+        if (id == null)
+            return register(name);
+        return id;
+    }
+
+    /**
+     * Returns the value with the given name, or null if it has never been created.
+     */
+    T find(String name) {
+        Integer id = ids.get(name);
+        return id == null ? null : get(id);
+    }
+
+    /**
+     * Returns the value with the given id, which must be lower than {@link #size()}.
+     */
+    T get(int id) {
+        int chunk = chunkOf(id);
+        return chunks.get(chunk).get(offsetOf(id, chunk));
+    }
+
+    /**
+     * Returns the number of values created so far.
+     */
+    int size() {
+        return size.get();
+    }
+
+    private int register(String name) {
+        while (true) {
+            int id = size.get();
+            int chunk = chunkOf(id);
+            AtomicReferenceArray<T> values = chunks.get(chunk);
+            if (values == null) {
+                chunks.compareAndSet(chunk, null, new AtomicReferenceArray<>(FIRST_CHUNK_SIZE << chunk));
+                values = chunks.get(chunk);
+            }
+            int offset = offsetOf(id, chunk);
+
+            T last = values.get(offset);
+            if (last != null) {
+                // Another thread appended a value but has not indexed it yet.
+                publish(id, last);
+                continue;
+            }
+            Integer existing = ids.get(name);
+            if (existing != null)
+                return existing;
+            T value = factory.create(name, id);
+            if (values.compareAndSet(offset, null, value)) {
+                publish(id, value);
+                return id;
+            }
+        }
+    }
+
+    private void publish(int id, T value) {
+        ids.putIfAbsent(nameOf.apply(value), id);
+        size.compareAndSet(id, id + 1);
+    }
+
+    private static int chunkOf(int id) {
+        return Integer.numberOfLeadingZeros(FIRST_CHUNK_SIZE) - Integer.numberOfLeadingZeros(id + FIRST_CHUNK_SIZE);
+    }
+
+    private static int offsetOf(int id, int chunk) {
+        return id + FIRST_CHUNK_SIZE - (FIRST_CHUNK_SIZE << chunk);
+    }
+}
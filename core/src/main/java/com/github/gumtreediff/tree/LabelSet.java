@@ -0,0 +1,66 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+/**
+ * A dictionary of labels, mapping each distinct label to a dense integer id.
+ * Label dictionaries are owned by tree contexts (and can be shared by several contexts),
+ * therefore they are freed along with their trees. Nodes from the same dictionary
+ * can compare their labels using their ids. This class is thread-safe.
+ * @see TreeContext#getLabels()
+ */
+public final class LabelSet {
+    /**
+     * The id of {@link ITree#NO_LABEL} in every dictionary.
+     */
+    public static final int NO_LABEL_ID = 0;
+
+    private final Interner<String> labels = new Interner<>((label, id) -> label, label -> label);
+
+    public LabelSet() {
+        id(ITree.NO_LABEL);
+    }
+
+    /**
+     * Returns the id of the given label, adding it to the dictionary if needed.
+     * A null label is considered as {@link ITree#NO_LABEL}.
+     */
+    public int id(String label) {
+        if (label == null)
+            return NO_LABEL_ID;
+        return labels.id(label);
+    }
+
+    /**
+     * Returns the label with the given id.
+     */
+    public String label(int id) {
+        if (id < 0 || id >= labels.size())
+            throw new IllegalArgumentException("Unknown label id: " + id);
+        return labels.get(id);
+    }
+
+    /**
+     * Returns the number of labels in the dictionary.
+     */
+    public int size() {
+        return labels.size();
+    }
+}
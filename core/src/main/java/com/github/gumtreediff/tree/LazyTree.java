@@ -0,0 +1,465 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * A node whose children are only created when they are first accessed. The types, labels,
+ * positions and metadata of all the nodes are read from the source in a single pass, together
+ * with their metrics, such as their fingerprint, size and height. Identical subtrees are then
+ * compared on these arrays, and can be mapped without creating their descendants, see
+ * {@link #getNode(int)}. Once created, a lazy node behaves like a regular tree.
+ * @see Builder
+ */
+public final class LazyTree extends Tree {
+    private final Source source;
+
+    private final int index;
+
+    /**
+     * Set after the children list, so that the children of a node can be read concurrently.
+     */
+    private volatile boolean expanded;
+
+    private LazyTree(Source source, int index, LazyTree parent) {
+        super(TypeSet.type(source.types[index]), source.labels.label(source.labelIds[index]), source.labels);
+        this.source = source;
+        this.index = index;
+        this.children = null;
+        this.parent = parent;
+        setPos(source.positions[index]);
+        setLength(source.lengths[index]);
+        if (source.metadata != null && source.metadata[index] != null) {
+            Iterator<Entry<String, Object>> it = source.metadata[index].iterator();
+            while (it.hasNext()) {
+                Entry<String, Object> e = it.next();
+                setMetadata(e.getKey(), e.getValue());
+            }
+        }
+        int position = index - source.depths[index] + source.sizes[index] - 1;
+        setMetrics(new TreeMetrics(source.sizes[index], source.heights[index], source.hashes[index],
+                source.structureHashes[index], source.fingerprints[index], source.structureFingerprints[index],
+                source.depths[index], position));
+        this.state = source.state;
+    }
+
+    /**
+     * Returns the pre-order index of this node in its source.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the node with the given pre-order index in the source of this node, creating it and
+     * its ancestors if needed. The node may have been moved or removed since it was created.
+     */
+    public LazyTree getNode(int index) {
+        return source.node(index);
+    }
+
+    /**
+     * Returns true if the given node has been read from the same source as this node.
+     */
+    public boolean hasSameSource(LazyTree other) {
+        return source == other.source;
+    }
+
+    /**
+     * Returns true if no node of the tree read from the source of this node has been modified, so that
+     * the nodes are still numbered in pre-order as in their source.
+     */
+    public boolean isUnmodified() {
+        return !source.state.modified;
+    }
+
+    /**
+     * Returns the ancestor index of the tree read from the source of this node, built on its arrays.
+     */
+    AncestorIndex newAncestorIndex() {
+        return new AncestorIndex(source.nodes[0], source.parents, source.depths, source.sizes);
+    }
+
+    /**
+     * Returns true if the children of this node have been created.
+     */
+    public boolean isExpanded() {
+        return expanded;
+    }
+
+    @Override
+    public List<ITree> getChildren() {
+        if (!expanded)
+            expand();
+        return children;
+    }
+
+    private void expand() {
+        synchronized (source) {
+            if (expanded)
+                return;
+            List<ITree> nodes = new ArrayList<>();
+            int end = index + source.sizes[index];
+            for (int i = index + 1; i < end; i += source.sizes[i])
+                nodes.add(source.create(i, this));
+            children = new TrackedChildrenList(nodes);
+            expanded = true;
+        }
+    }
+
+    @Override
+    public boolean isLeaf() {
+        if (!expanded)
+            return source.sizes[index] == 1;
+        return children.isEmpty();
+    }
+
+    @Override
+    public ITree getDescendant(int index) {
+        if (!isUnmodified())
+            return super.getDescendant(index);
+        int size = source.sizes[this.index];
+        if (index < 0 || index >= size - 1)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (size - 1));
+        return source.node(this.index + 1 + index);
+    }
+
+    @Override
+    public void setChildren(List<ITree> children) {
+        getChildren();
+        super.setChildren(children);
+    }
+
+    @Override
+    public void addChild(ITree t) {
+        getChildren();
+        super.addChild(t);
+    }
+
+    @Override
+    public void insertChild(ITree t, int position) {
+        getChildren();
+        super.insertChild(t, position);
+    }
+
+    /**
+     * Compares the descendants of unexpanded nodes in their sources, without creating them.
+     */
+    @Override
+    public boolean isIsomorphicTo(ITree tree) {
+        if (expanded || !(tree instanceof LazyTree) || ((LazyTree) tree).expanded)
+            return super.isIsomorphicTo(tree);
+        LazyTree other = (LazyTree) tree;
+        return getMetrics().fingerprint == other.getMetrics().fingerprint && hasSameTypeAndLabel(other)
+                && source.hasSameDescendants(index, other.source, other.index, true);
+    }
+
+    @Override
+    public boolean isIsoStructuralTo(ITree tree) {
+        if (expanded || !(tree instanceof LazyTree) || ((LazyTree) tree).expanded)
+            return super.isIsoStructuralTo(tree);
+        LazyTree other = (LazyTree) tree;
+        return getMetrics().structureFingerprint == other.getMetrics().structureFingerprint
+                && getType() == other.getType()
+                && source.hasSameDescendants(index, other.source, other.index, false);
+    }
+
+    /**
+     * The nodes of a source and their metrics, shared by the lazy nodes created from it.
+     */
+    private static final class Source {
+        final int[] parents;
+
+        final int[] types;
+
+        final int[] labelIds;
+
+        final int[] positions;
+
+        final int[] lengths;
+
+        final AssociationMap[] metadata;
+
+        final int[] sizes;
+
+        final int[] heights;
+
+        final int[] hashes;
+
+        final int[] structureHashes;
+
+        final long[] fingerprints;
+
+        final long[] structureFingerprints;
+
+        final int[] depths;
+
+        final LabelSet labels;
+
+        final TreeState state = new TreeState();
+
+        /**
+         * The created nodes, by index. The children of a node are all created together, therefore
+         * the nearest created ancestor of a node which has not been created is not expanded.
+         */
+        final LazyTree[] nodes;
+
+        Source(Builder builder) {
+            int size = builder.size;
+            parents = Arrays.copyOf(builder.parents, size);
+            types = Arrays.copyOf(builder.types, size);
+            labelIds = Arrays.copyOf(builder.labelIds, size);
+            positions = Arrays.copyOf(builder.positions, size);
+            lengths = Arrays.copyOf(builder.lengths, size);
+            metadata = builder.metadata == null ? null : Arrays.copyOf(builder.metadata, size);
+            sizes = Arrays.copyOf(builder.sizes, size);
+            heights = Arrays.copyOf(builder.heights, size);
+            hashes = Arrays.copyOf(builder.hashes, size);
+            structureHashes = Arrays.copyOf(builder.structureHashes, size);
+            fingerprints = Arrays.copyOf(builder.fingerprints, size);
+            structureFingerprints = Arrays.copyOf(builder.structureFingerprints, size);
+            depths = Arrays.copyOf(builder.depths, size);
+            labels = builder.labels;
+            nodes = new LazyTree[size];
+        }
+
+        LazyTree create(int index, LazyTree parent) {
+            LazyTree t = new LazyTree(this, index, parent);
+            nodes[index] = t;
+            return t;
+        }
+
+        synchronized LazyTree node(int index) {
+            if (nodes[index] != null)
+                return nodes[index];
+            int ancestor = parents[index];
+            while (nodes[ancestor] == null)
+                ancestor = parents[ancestor];
+            LazyTree t = nodes[ancestor];
+            while (t.index != index) {
+                for (ITree c : t.getChildren()) {
+                    LazyTree child = (LazyTree) c;
+                    if (child.index <= index && index < child.index + sizes[child.index]) {
+                        t = child;
+                        break;
+                    }
+                }
+            }
+            return t;
+        }
+
+        /**
+         * Returns true if the descendants of the given nodes, in this source and the other one, have
+         * the same types, the same sizes, hence the same structure, and the same labels if requested.
+         */
+        boolean hasSameDescendants(int node, Source other, int otherNode, boolean compareLabels) {
+            int size = sizes[node];
+            if (size != other.sizes[otherNode])
+                return false;
+            for (int i = 1; i < size; i++) {
+                int a = node + i;
+                int b = otherNode + i;
+                if (types[a] != other.types[b] || sizes[a] != other.sizes[b])
+                    return false;
+                if (compareLabels && (labels == other.labels ? labelIds[a] != other.labelIds[b]
+                        : !labels.label(labelIds[a]).equals(other.labels.label(other.labelIds[b]))))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A builder reading the nodes of a source in pre-order and computing their metrics, without
+     * creating them. Each node is opened with {@link #startNode(Type, String)} and closed with
+     * {@link #endNode()}. The attributes set between these calls apply to the last opened node.
+     * The nodes are then created by the tree returned by {@link #build()}, when first accessed.
+     */
+    public static final class Builder {
+        private int size;
+
+        private int[] parents;
+
+        private int[] types;
+
+        private int[] labelIds;
+
+        private int[] positions;
+
+        private int[] lengths;
+
+        private AssociationMap[] metadata;
+
+        private int[] sizes;
+
+        private int[] heights;
+
+        private int[] hashes;
+
+        private int[] structureHashes;
+
+        private long[] fingerprints;
+
+        private long[] structureFingerprints;
+
+        private int[] depths;
+
+        private int[] opened = new int[16];
+
+        private int depth;
+
+        private final LabelSet labels;
+
+        /**
+         * @param expectedSize a hint on the number of nodes of the tree.
+         * @param labels the label dictionary where the labels of the tree are stored.
+         */
+        public Builder(int expectedSize, LabelSet labels) {
+            this.labels = labels;
+            int capacity = Math.max(expectedSize, 1);
+            parents = new int[capacity];
+            types = new int[capacity];
+            labelIds = new int[capacity];
+            positions = new int[capacity];
+            lengths = new int[capacity];
+            sizes = new int[capacity];
+            heights = new int[capacity];
+            hashes = new int[capacity];
+            structureHashes = new int[capacity];
+            fingerprints = new long[capacity];
+            structureFingerprints = new long[capacity];
+            depths = new int[capacity];
+        }
+
+        /**
+         * Open a new node, child of the currently opened node.
+         * @return the pre-order index of the new node.
+         */
+        public int startNode(Type type, String label) {
+            if (depth == 0 && size > 0)
+                throw new IllegalStateException("A lazy tree can only have one root");
+            if (size == types.length)
+                grow();
+            if (depth == opened.length)
+                opened = Arrays.copyOf(opened, depth * 2);
+            int node = size++;
+            parents[node] = depth == 0 ? -1 : opened[depth - 1];
+            types[node] = type.id;
+            labelIds[node] = labels.id(label);
+            depths[node] = depth;
+            opened[depth++] = node;
+            return node;
+        }
+
+        /**
+         * Close the currently opened node. Until then, the hashes and the height of the node
+         * accumulate those of its children.
+         */
+        public void endNode() {
+            checkOpened();
+            int node = opened[--depth];
+            String label = labels.label(labelIds[node]);
+            Type type = TypeSet.type(types[node]);
+            int sumSize = size - node - 1;
+            sizes[node] = sumSize + 1;
+            heights[node] = sumSize == 0 ? 0 : heights[node] + 1;
+            hashes[node] = TreeMetricComputer.innerNodeHash(type, label, 2 * sumSize + 1, hashes[node]);
+            structureHashes[node] = TreeMetricComputer.innerNodeStructureHash(
+                    type, 2 * sumSize + 1, structureHashes[node]);
+            fingerprints[node] = TreeMetricComputer.innerNodeFingerprint(
+                    type, label, 2 * sumSize + 1, fingerprints[node]);
+            structureFingerprints[node] = TreeMetricComputer.innerNodeStructureFingerprint(
+                    type, 2 * sumSize + 1, structureFingerprints[node]);
+            if (depth > 0) {
+                int parent = opened[depth - 1];
+                int exponent = 2 * (node - parent - 1) + 1;
+                int factor = TreeMetricComputer.hashFactor(exponent);
+                hashes[parent] += hashes[node] * factor;
+                structureHashes[parent] += structureHashes[node] * factor;
+                long fingerprintFactor = TreeMetricComputer.fingerprintFactor(exponent);
+                fingerprints[parent] += fingerprints[node] * fingerprintFactor;
+                structureFingerprints[parent] += structureFingerprints[node] * fingerprintFactor;
+                if (heights[node] > heights[parent])
+                    heights[parent] = heights[node];
+            }
+        }
+
+        public void setPos(int pos) {
+            checkOpened();
+            positions[opened[depth - 1]] = pos;
+        }
+
+        public void setLength(int length) {
+            checkOpened();
+            lengths[opened[depth - 1]] = length;
+        }
+
+        public void setMetadata(String key, Object value) {
+            setMetadata(MetadataKey.of(key), value);
+        }
+
+        public <T> void setMetadata(MetadataKey<T> key, T value) {
+            checkOpened();
+            int node = opened[depth - 1];
+            if (metadata == null)
+                metadata = new AssociationMap[types.length];
+            if (metadata[node] == null)
+                metadata[node] = new AssociationMap();
+            metadata[node].set(key, value);
+        }
+
+        /**
+         * Returns the root of the tree, whose descendants are created when first accessed.
+         */
+        public LazyTree build() {
+            if (size == 0 || depth != 0)
+                throw new IllegalStateException("The tree is empty or has opened nodes");
+            return new Source(this).create(0, null);
+        }
+
+        private void checkOpened() {
+            if (depth == 0)
+                throw new IllegalStateException("No opened node");
+        }
+
+        private void grow() {
+            int capacity = types.length * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            types = Arrays.copyOf(types, capacity);
+            labelIds = Arrays.copyOf(labelIds, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            if (metadata != null)
+                metadata = Arrays.copyOf(metadata, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            structureHashes = Arrays.copyOf(structureHashes, capacity);
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            structureFingerprints = Arrays.copyOf(structureFingerprints, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+    }
+}
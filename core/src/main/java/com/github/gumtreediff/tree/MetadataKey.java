@@ -0,0 +1,94 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+/**
+ * A typed key of node metadata. Like types, metadata names are registered once and receive
+ * a dense integer slot, so that nodes find their metadata by comparing integers.
+ * Keys are meant to be created once and kept in constants. This class is thread-safe.
+ * @param <T> the type of the values associated to this key.
+ */
+public final class MetadataKey<T> {
+    private static final Interner<MetadataKey<Object>> keys =
+            new Interner<>((name, slot) -> new MetadataKey<>(name, slot, Object.class), key -> key.name);
+
+    /**
+     * The key of the identifiers of declarations, such as methods or fields.
+     */
+    public static final MetadataKey<String> ID = of("id", String.class);
+
+    public final String name;
+
+    /**
+     * A dense integer identifying the name of this key.
+     */
+    public final int slot;
+
+    private final Class<T> type;
+
+    private MetadataKey(String name, int slot, Class<T> type) {
+        this.name = name;
+        this.slot = slot;
+        this.type = type;
+    }
+
+    /**
+     * Returns the untyped key with the given name, registering the name if needed.
+     */
+    public static MetadataKey<Object> of(String name) {
+        return keys.get(keys.id(name));
+    }
+
+    /**
+     * Returns a key with the given name, whose values are checked to be of the given type.
+     * Keys with the same name share the same slot, whatever their type.
+     */
+    public static <T> MetadataKey<T> of(String name, Class<T> type) {
+        MetadataKey<Object> key = of(name);
+        return new MetadataKey<>(name, key.slot, type);
+    }
+
+    /**
+     * Returns the untyped key with the given name, or null if the name has never been registered.
+     */
+    static MetadataKey<Object> find(String name) {
+        return keys.find(name);
+    }
+
+    /**
+     * Returns the name registered with the given slot.
+     */
+    static String name(int slot) {
+        return keys.get(slot).name;
+    }
+
+    /**
+     * Casts a metadata value to the type of this key.
+     * @throws ClassCastException if the value is not null and not of the type of this key.
+     */
+    public T cast(Object value) {
+        return type.cast(value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
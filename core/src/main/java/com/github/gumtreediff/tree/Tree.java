@@ -20,7 +20,7 @@
 
 package com.github.gumtreediff.tree;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -31,6 +31,10 @@ public class Tree extends AbstractTree implements ITree {
 
     private String label;
 
+    private LabelSet labels;
+
+    private int labelId;
+
     // Begin position of the tree in terms of absolute character index and length
     private int pos;
     private int length;
@@ -52,8 +56,30 @@ public class Tree extends AbstractTree implements ITree {
      */
     public Tree(Type type, String label) {
         this.type = type;
-        this.label = (label == null) ? NO_LABEL : label.intern();
-        this.children = new ArrayList<>();
+        this.label = (label == null) ? NO_LABEL : label;
+        this.children = new TrackedChildrenList();
+    }
+
+    /**
+     * Constructs a new node whose label is stored in the given label dictionary.
+     * @see TreeContext#createTree(Type, String)
+     */
+    Tree(Type type, String label, LabelSet labels) {
+        this(type, label, labels, false);
+    }
+
+    /**
+     * Constructs a new node whose label is stored in the given label dictionary. The children list
+     * of an open node is only allocated when its children are given to
+     * {@link #initChildren(ITree[], int, int)}, until then the node has no children and can not
+     * receive any.
+     */
+    Tree(Type type, String label, LabelSet labels, boolean open) {
+        this.type = type;
+        this.labels = labels;
+        this.labelId = labels.id(label);
+        this.label = labels.label(labelId);
+        this.children = open ? Collections.emptyList() : new TrackedChildrenList();
     }
 
     /**
@@ -62,17 +88,13 @@ public class Tree extends AbstractTree implements ITree {
     protected Tree(ITree other) {
         this.type = other.getType();
         this.label = other.getLabel();
+        if (other instanceof AbstractTree) {
+            this.labels = ((AbstractTree) other).getLabelSet();
+            this.labelId = ((AbstractTree) other).getLabelId();
+        }
         this.pos = other.getPos();
         this.length = other.getLength();
-        this.children = new ArrayList<>();
-    }
-
-    @Override
-    public ITree deepCopy() {
-        ITree copy = new Tree(this);
-        for (ITree child : getChildren())
-            copy.addChild(child.deepCopy());
-        return copy;
+        this.children = new TrackedChildrenList();
     }
 
     @Override
@@ -97,22 +119,54 @@ public class Tree extends AbstractTree implements ITree {
 
     @Override
     public void setLabel(String label) {
-        this.label = label;
+        checkNotFrozen();
+        storeLabel(label);
+        invalidateMetrics();
+    }
+
+    private void storeLabel(String label) {
+        if (labels == null)
+            this.label = label;
+        else {
+            labelId = labels.id(label);
+            this.label = labels.label(labelId);
+        }
+    }
+
+    @Override
+    LabelSet getLabelSet() {
+        return labels;
+    }
+
+    @Override
+    int getLabelId() {
+        return labelId;
+    }
+
+    @Override
+    void setLabelSet(LabelSet labels) {
+        checkNotFrozen();
+        this.labels = labels;
+        storeLabel(label);
     }
 
     @Override
     public void setLength(int length) {
+        checkNotFrozen();
         this.length = length;
     }
 
     @Override
     public void setPos(int pos) {
+        checkNotFrozen();
         this.pos = pos;
     }
 
     @Override
     public void setType(Type type) {
+        checkNotFrozen();
         this.type = type;
+        invalidateMetrics();
     }
 
     @Override
@@ -124,6 +178,28 @@ public class Tree extends AbstractTree implements ITree {
 
     @Override
     public Object setMetadata(String key, Object value) {
+        checkNotFrozen();
+        if (value == null) {
+            if (metadata == null)
+                return null;
+            else
+                return metadata.remove(key);
+        }
+        if (metadata == null)
+            metadata = new AssociationMap();
+        return metadata.set(key, value);
+    }
+
+    @Override
+    public <T> T getMetadata(MetadataKey<T> key) {
+        if (metadata == null)
+            return null;
+        return metadata.get(key);
+    }
+
+    @Override
+    public <T> T setMetadata(MetadataKey<T> key, T value) {
+        checkNotFrozen();
         if (value == null) {
             if (metadata == null)
                 return null;
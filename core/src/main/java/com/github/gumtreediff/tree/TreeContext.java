@@ -35,14 +35,30 @@ public class TreeContext {
 
     private final MetadataSerializers serializers = new MetadataSerializers();
 
+    private LabelSet labels;
+
     private ITree root;
 
+    private boolean frozen;
+
+    public TreeContext() {
+        this(new LabelSet());
+    }
+
+    /**
+     * Creates a context whose trees store their labels in the given label dictionary.
+     */
+    public TreeContext(LabelSet labels) {
+        this.labels = labels;
+    }
+
     @Override
     public String toString() {
         return TreeIoUtils.toText(this).toString();
     }
 
     public void setRoot(ITree root) {
+        checkNotFrozen();
         this.root = root;
     }
 
@@ -50,12 +66,63 @@ public class TreeContext {
         return root;
     }
 
+    /**
+     * Returns the ancestor index of the tree of this context.
+     * @see AncestorIndex#of(ITree)
+     */
+    public AncestorIndex getAncestorIndex() {
+        return AncestorIndex.of(root);
+    }
+
     public ITree createTree(Type type, String label) {
-        return new Tree(type, label);
+        return new Tree(type, label, labels);
     }
 
     public ITree createTree(Type type) {
-        return new Tree(type);
+        return new Tree(type, ITree.NO_LABEL, labels);
+    }
+
+    /**
+     * Returns a builder creating the tree of this context in pre-order.
+     */
+    public Builder builder() {
+        return builder(16);
+    }
+
+    /**
+     * Returns a builder creating the tree of this context in pre-order.
+     * @param expectedSize a hint on the number of nodes of the tree, bounding the initial size of the
+     *     buffer of pending children.
+     */
+    public Builder builder(int expectedSize) {
+        checkNotFrozen();
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * Returns the label dictionary of this context.
+     */
+    public LabelSet getLabels() {
+        return labels;
+    }
+
+    /**
+     * Moves the labels of the trees of this context to the given dictionary.
+     * Giving the same dictionary to the contexts of a source and a destination tree
+     * allows to compare their labels using integers.
+     */
+    public void setLabels(LabelSet labels) {
+        if (labels == this.labels)
+            return;
+        checkNotFrozen();
+        if (root instanceof CompactTree)
+            ((CompactTree) root).setLabelSet(labels);
+        else if (root != null) {
+            for (ITree t : root.preOrder())
+                if (t instanceof AbstractTree)
+                    ((AbstractTree) t).setLabelSet(labels);
+        }
+        this.labels = labels;
     }
 
     public ITree createFakeTree(ITree... trees) {
@@ -95,6 +162,7 @@ public class TreeContext {
      * @return the previous value of metadata if existed or null
      */
     public Object setMetadata(String key, Object value) {
+        checkNotFrozen();
         return metadata.put(key, value);
     }
 
@@ -131,24 +199,60 @@ public class TreeContext {
     }
 
     public TreeContext export(MetadataSerializers s) {
+        checkNotFrozen();
         serializers.addAll(s);
         return this;
     }
 
     public TreeContext export(String key, MetadataSerializer s) {
+        checkNotFrozen();
         serializers.add(key, s);
         return this;
     }
 
+    /**
+     * Exports the metadata of the given key with the given serializer.
+     */
+    public TreeContext export(MetadataKey<?> key, MetadataSerializer s) {
+        checkNotFrozen();
+        serializers.add(key.name, s);
+        return this;
+    }
+
     public TreeContext export(String... name) {
+        checkNotFrozen();
         for (String n : name)
             serializers.add(n, x -> x.toString());
         return this;
     }
 
+    /**
+     * Freezes the tree and the metadata of this context, so that they can be shared by concurrent threads.
+     * @see AbstractTree#freeze()
+     */
+    public void freeze() {
+        if (root instanceof AbstractTree)
+            ((AbstractTree) root).freeze();
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen)
+            throw new UnsupportedOperationException("A frozen context can not be modified");
+    }
+
+    /**
+     * Returns a new context whose tree is derived from the tree of this context, which is never
+     * modified by the new context. The derived nodes read the attributes of the original nodes,
+     * which are only copied when modified, so that deriving a big tree to apply a few changes is cheap.
+     */
     public TreeContext deriveTree() { // FIXME Should we refactor TreeContext class to allow shared metadata etc ...
-        TreeContext newContext = new TreeContext();
-        newContext.setRoot(getRoot().deepCopy());
+        TreeContext newContext = new TreeContext(labels);
+        newContext.setRoot(new CopyOnWriteTree(getRoot()));
         newContext.metadata.putAll(metadata);
         newContext.serializers.addAll(serializers);
         return newContext;
@@ -164,13 +268,19 @@ public class TreeContext {
         return new Iterator<Entry<String, Object>>() {
             final Iterator<Entry<String, Object>> localIterator = node.getMetadata();
             final Iterator<Entry<String, Object>> globalIterator = getMetadata();
-            final Set<String> seenKeys = new HashSet<>();
 
-            Iterator<Entry<String, Object>> currentIterator = localIterator;
-            Entry<String, Object> nextEntry;
+            Entry<String, Object> nextEntry = findNext();
 
-            {
-                next();
+            // The global metadata overridden by the node are skipped by looking them up in the node.
+            private Entry<String, Object> findNext() {
+                if (localIterator.hasNext())
+                    return localIterator.next();
+                while (globalIterator.hasNext()) {
+                    Entry<String, Object> e = globalIterator.next();
+                    if (e.getValue() != null && node.getMetadata(e.getKey()) == null)
+                        return e;
+                }
+                return null;
             }
 
             @Override
@@ -181,31 +291,109 @@ public class TreeContext {
             @Override
             public Entry<String, Object> next() {
                 Entry<String, Object> n = nextEntry;
-                if (currentIterator == localIterator) {
-                    if (localIterator.hasNext()) {
-                        nextEntry = localIterator.next();
-                        seenKeys.add(nextEntry.getKey());
-                        return n;
-                    } else {
-                        currentIterator = globalIterator;
-                    }
-                }
-                nextEntry = null;
-                while (globalIterator.hasNext()) {
-                    Entry<String, Object> e = globalIterator.next();
-                    if (!(seenKeys.contains(e.getKey()) || (e.getValue() == null))) {
-                        nextEntry = e;
-                        seenKeys.add(nextEntry.getKey());
-                        break;
-                    }
-                }
+                if (n == null)
+                    throw new NoSuchElementException();
+                nextEntry = findNext();
                 return n;
             }
         };
     }
 
+    /**
+     * A builder creating the tree of a context in pre-order. Each node is opened with
+     * {@link #startNode(Type, String, int, int)} and closed with {@link #endNode()}.
+     * The children of the opened nodes are kept in a single buffer, reused for the whole tree. An
+     * opened node has no children list yet, and receives all its children at once when closed, in
+     * the only list allocated for it, of the exact size. The first opened node becomes the root of
+     * the context. A closed node can be modified like any other tree.
+     */
+    public final class Builder {
+        private static final int MAX_INITIAL_CHILDREN = 256;
+
+        private ITree[] children;
+
+        private int childCount;
+
+        private ITree[] opened;
+
+        private int[] firstChildren;
+
+        private int depth;
+
+        private boolean started;
+
+        private Builder(int expectedSize) {
+            children = new ITree[Math.max(Math.min(expectedSize, MAX_INITIAL_CHILDREN), 1)];
+            opened = new ITree[16];
+            firstChildren = new int[16];
+        }
+
+        /**
+         * Opens a new node, child of the currently opened node.
+         * @return the new node.
+         * @throws IllegalStateException if the root has already been closed.
+         */
+        public ITree startNode(Type type, String label, int pos, int length) {
+            if (depth == 0 && started)
+                throw new IllegalStateException("A built tree can only have one root");
+            started = true;
+            ITree t = new Tree(type, label, labels, true);
+            t.setPos(pos);
+            t.setLength(length);
+            if (depth == 0)
+                setRoot(t);
+            else {
+                t.setParent(opened[depth - 1]);
+                if (childCount == children.length)
+                    children = Arrays.copyOf(children, childCount * 2);
+                children[childCount++] = t;
+            }
+            if (depth == opened.length) {
+                opened = Arrays.copyOf(opened, depth * 2);
+                firstChildren = Arrays.copyOf(firstChildren, depth * 2);
+            }
+            opened[depth] = t;
+            firstChildren[depth] = childCount;
+            depth++;
+            return t;
+        }
+
+        /**
+         * Closes the currently opened node.
+         * @return the closed node.
+         */
+        public ITree endNode() {
+            if (depth == 0)
+                throw new IllegalStateException("No opened node");
+            ITree t = opened[--depth];
+            opened[depth] = null;
+            int first = firstChildren[depth];
+            ((AbstractTree) t).initChildren(children, first, childCount);
+            Arrays.fill(children, first, childCount, null);
+            childCount = first;
+            return t;
+        }
+
+        /**
+         * Returns the currently opened node, or null if there is none.
+         */
+        public ITree getCurrent() {
+            return depth == 0 ? null : opened[depth - 1];
+        }
+
+        /**
+         * Closes all the opened nodes.
+         * @return the context of the tree.
+         */
+        public TreeContext build() {
+            while (depth > 0)
+                endNode();
+            return TreeContext.this;
+        }
+    }
+
     public static class Marshallers<E> {
-        Map<String, E> serializers = new HashMap<>();
+        Map<String, E> serializers = new LinkedHashMap<>();
 
         public static final Pattern valid_id = Pattern.compile("[a-zA-Z0-9_]*");
 
@@ -230,6 +418,16 @@ public class TreeContext {
         public Set<String> exports() {
             return serializers.keySet();
         }
+
+        /**
+         * Returns the keys of the exported metadata, in export order.
+         */
+        public List<MetadataKey<Object>> keys() {
+            List<MetadataKey<Object>> keys = new ArrayList<>(serializers.size());
+            for (String name : serializers.keySet())
+                keys.add(MetadataKey.of(name));
+            return keys;
+        }
     }
 
     public static class MetadataSerializers extends Marshallers<MetadataSerializer> {
@@ -239,6 +437,13 @@ public class TreeContext {
             if (s != null)
                 formatter.serializeAttribute(key, s.toString(value));
         }
+
+        /**
+         * Returns the serializer of the given metadata, or null if it is not exported.
+         */
+        public MetadataSerializer get(String key) {
+            return serializers.get(key);
+        }
     }
 
     public static class MetadataUnserializers extends Marshallers<MetadataUnserializer> {
@@ -251,7 +456,31 @@ public class TreeContext {
                 else if (key.equals("length"))
                     tree.setLength(Integer.parseInt(value));
                 else
-                    tree.setMetadata(key, s.fromString(value));
+                    tree.setMetadata(MetadataKey.of(key), s.fromString(value));
+            }
+        }
+
+        public void load(CompactTreeStore.Builder builder, String key, String value) throws Exception {
+            MetadataUnserializer s = serializers.get(key);
+            if (s != null) {
+                if (key.equals("pos"))
+                    builder.setPos(Integer.parseInt(value));
+                else if (key.equals("length"))
+                    builder.setLength(Integer.parseInt(value));
+                else
+                    builder.setMetadata(MetadataKey.of(key), s.fromString(value));
+            }
+        }
+
+        public void load(LazyTree.Builder builder, String key, String value) throws Exception {
+            MetadataUnserializer s = serializers.get(key);
+            if (s != null) {
+                if (key.equals("pos"))
+                    builder.setPos(Integer.parseInt(value));
+                else if (key.equals("length"))
+                    builder.setLength(Integer.parseInt(value));
+                else
+                    builder.setMetadata(MetadataKey.of(key), s.fromString(value));
             }
         }
     }
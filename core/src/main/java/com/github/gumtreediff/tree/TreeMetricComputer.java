@@ -20,6 +20,9 @@
 
 package com.github.gumtreediff.tree;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.Objects;
 
 public class TreeMetricComputer extends TreeVisitor.InnerNodesAndLeavesVisitor {
@@ -27,6 +30,20 @@ public class TreeMetricComputer extends TreeVisitor.InnerNodesAndLeavesVisitor {
     public static final String LEAVE = "leave";
     public static final int BASE = 33;
 
+    /**
+     * The base of the 64-bit fingerprints, which are computed like the hashes but are
+     * derived only from type names and labels, so they are stable across JVM runs.
+     */
+    public static final long FINGERPRINT_BASE = 0x9E3779B97F4A7C15L;
+
+    private static final int ENTER_HASH = ENTER.hashCode();
+    private static final int LEAVE_HASH = LEAVE.hashCode();
+
+    private static final long ENTER_FINGERPRINT = stringFingerprint(ENTER);
+    private static final long LEAVE_FINGERPRINT = stringFingerprint(LEAVE);
+
+    private final TreeState state = new TreeState();
+
     int currentDepth = 0;
     int currentPosition = 0;
 
@@ -37,36 +54,163 @@ public class TreeMetricComputer extends TreeVisitor.InnerNodesAndLeavesVisitor {
 
     @Override
     public void visitLeave(ITree tree) {
-        tree.setMetrics(new TreeMetrics(1, 0, leafHash(tree), leafStructureHash(tree), currentDepth, currentPosition));
+        bind(tree, new MetricsBuilder(tree).build(currentDepth, currentPosition), state);
         currentPosition++;
     }
 
     @Override
     public void endInnerNode(ITree tree) {
         currentDepth--;
-        int sumSize = 0;
-        int maxHeight = 0;
-        int currentHash = 0;
-        int currentStructureHash = 0;
-        for (ITree child : tree.getChildren()) {
-            TreeMetrics metrics = child.getMetrics();
+        MetricsBuilder builder = new MetricsBuilder(tree);
+        for (ITree child : tree.getChildren())
+            builder.addChild(child.getMetrics());
+        bind(tree, builder.build(currentDepth, currentPosition), state);
+        currentPosition++;
+    }
+
+    /**
+     * Updates the outdated metrics of the given tree. The modified nodes and their ancestors are
+     * recomputed from their children, the unmodified subtrees whose depth or position changed are
+     * shifted, and the other subtrees are skipped.
+     */
+    static void update(ITree root) {
+        TreeState state = root instanceof AbstractTree ? ((AbstractTree) root).state : null;
+        if (state == null)
+            state = new TreeState();
+        new MetricsUpdater(state).update(root);
+        state.pending = false;
+        state.nodes = null;
+        state.ancestors = null;
+    }
+
+    private static void bind(ITree tree, TreeMetrics metrics, TreeState state) {
+        tree.setMetrics(metrics);
+        if (tree instanceof AbstractTree)
+            ((AbstractTree) tree).state = state;
+    }
+
+    private static final class MetricsUpdater {
+        private final TreeState state;
+
+        private final Deque<MetricsBuilder> stack = new ArrayDeque<>();
+
+        private int position = 0;
+
+        MetricsUpdater(TreeState state) {
+            this.state = state;
+        }
+
+        void update(ITree root) {
+            enter(root, 0);
+            while (!stack.isEmpty()) {
+                MetricsBuilder builder = stack.peek();
+                if (builder.children.hasNext()) {
+                    TreeMetrics metrics = enter(builder.children.next(), builder.depth + 1);
+                    if (metrics != null)
+                        builder.addChild(metrics);
+                } else {
+                    stack.pop();
+                    TreeMetrics metrics = builder.build(builder.depth, position++);
+                    bind(builder.tree, metrics, state);
+                    if (!stack.isEmpty())
+                        stack.peek().addChild(metrics);
+                }
+            }
+        }
+
+        /**
+         * Returns the metrics of the given tree if its subtree has not been modified,
+         * otherwise starts to recompute them and returns null.
+         */
+        private TreeMetrics enter(ITree tree, int depth) {
+            if (tree instanceof AbstractTree) {
+                AbstractTree t = (AbstractTree) tree;
+                TreeMetrics metrics = t.metrics;
+                if (metrics != null && !t.metricsDirty) {
+                    // A frozen subtree wrapped in another tree keeps its own numbering.
+                    if (t.isFrozen()) {
+                        position += metrics.size;
+                        return metrics;
+                    }
+                    int newPosition = position + metrics.size - 1;
+                    if (t.state != state || metrics.depth != depth || metrics.position != newPosition)
+                        shift(t, depth - metrics.depth, newPosition - metrics.position);
+                    position += metrics.size;
+                    return t.metrics;
+                }
+            }
+            MetricsBuilder builder = new MetricsBuilder(tree);
+            builder.depth = depth;
+            stack.push(builder);
+            return null;
+        }
+
+        private void shift(ITree tree, int depthOffset, int positionOffset) {
+            for (ITree t : tree.preOrder()) {
+                TreeMetrics m = t instanceof AbstractTree ? ((AbstractTree) t).metrics : t.getMetrics();
+                if (depthOffset != 0 || positionOffset != 0)
+                    m = new TreeMetrics(m.size, m.height, m.hash, m.structureHash,
+                            m.fingerprint, m.structureFingerprint, m.depth + depthOffset, m.position + positionOffset);
+                bind(t, m, state);
+            }
+        }
+    }
+
+    /**
+     * Computes the metrics of a node from the metrics of its children.
+     */
+    private static final class MetricsBuilder {
+        final ITree tree;
+
+        final Iterator<ITree> children;
+
+        int depth;
+
+        private boolean leaf = true;
+
+        private int sumSize = 0;
+
+        private int maxHeight = 0;
+
+        private int currentHash = 0;
+
+        private int currentStructureHash = 0;
+
+        private long currentFingerprint = 0L;
+
+        private long currentStructureFingerprint = 0L;
+
+        MetricsBuilder(ITree tree) {
+            this.tree = tree;
+            this.children = tree.getChildren().iterator();
+        }
+
+        void addChild(TreeMetrics metrics) {
             int exponent = 2 * sumSize + 1;
             currentHash += metrics.hash * hashFactor(exponent);
             currentStructureHash += metrics.structureHash * hashFactor(exponent);
+            long factor = fingerprintFactor(exponent);
+            currentFingerprint += metrics.fingerprint * factor;
+            currentStructureFingerprint += metrics.structureFingerprint * factor;
             sumSize += metrics.size;
             if (metrics.height > maxHeight)
                 maxHeight = metrics.height;
+            leaf = false;
+        }
+
+        TreeMetrics build(int depth, int position) {
+            return new TreeMetrics(
+                    sumSize + 1,
+                    leaf ? 0 : maxHeight + 1,
+                    innerNodeHash(tree, 2 * sumSize + 1, currentHash),
+                    innerNodeStructureHash(tree, 2 * sumSize + 1, currentStructureHash),
+                    innerNodeFingerprint(tree.getType(), tree.getLabel(), 2 * sumSize + 1, currentFingerprint),
+                    innerNodeStructureFingerprint(tree.getType(), 2 * sumSize + 1, currentStructureFingerprint),
+                    depth, position);
         }
-        tree.setMetrics(new TreeMetrics(
-                sumSize + 1,
-                maxHeight + 1,
-                innerNodeHash(tree, 2 * sumSize + 1, currentHash),
-                innerNodeStructureHash(tree, 2 * sumSize + 1, currentStructureHash),
-                currentDepth, currentPosition));
-        currentPosition++;
     }
 
-    private static int hashFactor(int exponent) {
+    static int hashFactor(int exponent) {
         return fastExponentiation(BASE, exponent);
     }
 
@@ -85,23 +229,82 @@ public class TreeMetricComputer extends TreeVisitor.InnerNodesAndLeavesVisitor {
         return result;
     }
 
+    static long fingerprintFactor(int exponent) {
+        long base = FINGERPRINT_BASE;
+        long result = 1L;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0)
+                result *= base;
+            exponent >>= 1;
+            base *= base;
+        }
+        return result;
+    }
+
     private static int innerNodeHash(ITree tree, int size, int middleHash) {
-        return Objects.hash(tree.getType(), tree.getLabel(), ENTER)
-                + middleHash
-                + Objects.hash(tree.getType(), tree.getLabel(), LEAVE) * hashFactor(size);
+        return innerNodeHash(tree.getType(), tree.getLabel(), size, middleHash);
     }
 
     private static int innerNodeStructureHash(ITree tree, int size, int middleHash) {
-        return Objects.hash(tree.getType(), ENTER)
+        return innerNodeStructureHash(tree.getType(), size, middleHash);
+    }
+
+    static int innerNodeHash(Type type, String label, int size, int middleHash) {
+        return hash(type, label, ENTER_HASH)
+                + middleHash
+                + hash(type, label, LEAVE_HASH) * hashFactor(size);
+    }
+
+    static int innerNodeStructureHash(Type type, int size, int middleHash) {
+        return hash(type, ENTER_HASH)
                + middleHash
-               + Objects.hash(tree.getType(), LEAVE) * hashFactor(size);
+               + hash(type, LEAVE_HASH) * hashFactor(size);
+    }
+
+    // Same values as Objects.hash(type, label, marker), without allocating the varargs array.
+    private static int hash(Type type, String label, int markerHash) {
+        return 31 * (31 * (31 + Objects.hashCode(type)) + Objects.hashCode(label)) + markerHash;
+    }
+
+    // Same values as Objects.hash(type, marker).
+    private static int hash(Type type, int markerHash) {
+        return 31 * (31 + Objects.hashCode(type)) + markerHash;
+    }
+
+    static long innerNodeFingerprint(Type type, String label, int size, long middleFingerprint) {
+        long node = mix(typeFingerprint(type) * 31 + stringFingerprint(label));
+        return mix(node ^ ENTER_FINGERPRINT)
+                + middleFingerprint
+                + mix(node ^ LEAVE_FINGERPRINT) * fingerprintFactor(size);
+    }
+
+    static long innerNodeStructureFingerprint(Type type, int size, long middleFingerprint) {
+        long node = mix(typeFingerprint(type));
+        return mix(node ^ ENTER_FINGERPRINT)
+                + middleFingerprint
+                + mix(node ^ LEAVE_FINGERPRINT) * fingerprintFactor(size);
+    }
+
+    private static long typeFingerprint(Type type) {
+        return stringFingerprint(type == null ? null : type.name);
     }
 
-    private static int leafHash(ITree tree) {
-        return innerNodeHash(tree, 1, 0);
+    // 64-bit FNV-1a on the characters of the string.
+    private static long stringFingerprint(String s) {
+        long h = 0xcbf29ce484222325L;
+        if (s == null)
+            return h;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
     }
 
-    private static int leafStructureHash(ITree tree) {
-        return innerNodeStructureHash(tree, 1, 0);
+    // Finalizer of the SplitMix64 generator, spreading all input bits.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 }
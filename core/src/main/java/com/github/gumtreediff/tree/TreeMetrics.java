@@ -29,16 +29,36 @@ public class TreeMetrics {
 
     public final int structureHash;
 
+    /**
+     * A 64-bit fingerprint of the subtree (types and labels), stable across JVM runs.
+     */
+    public final long fingerprint;
+
+    /**
+     * A 64-bit fingerprint of the structure of the subtree (types only), stable across JVM runs.
+     */
+    public final long structureFingerprint;
+
     public final int depth;
 
     public final int position;
 
-    public TreeMetrics(int size, int height, int hash, int structureHash, int depth, int position) {
+    /**
+     * The number of the node in a pre-order of its tree. The descendants of the node are
+     * numbered from {@code preOrder + 1} to {@code preOrder + size - 1}.
+     */
+    public final int preOrder;
+
+    public TreeMetrics(int size, int height, int hash, int structureHash,
+                       long fingerprint, long structureFingerprint, int depth, int position) {
         this.size = size;
         this.height = height;
         this.hash = hash;
         this.structureHash = structureHash;
+        this.fingerprint = fingerprint;
+        this.structureFingerprint = structureFingerprint;
         this.depth = depth;
         this.position = position;
+        this.preOrder = position + depth - size + 1;
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.*;
+
+/**
+ * A copy-on-write overlay on the structure and the labels of a tree. The nodes are shared with the
+ * original tree, which is never modified and can therefore be frozen: the overlay only records the
+ * children lists and the labels that are actually changed, so that its size depends on the size of
+ * the modifications rather than on the size of the tree. Nodes created by the caller, such as
+ * inserted nodes, can be added to the overlay. Nodes are compared by identity.
+ */
+public final class TreeOverlay {
+    private final ITree root;
+
+    private final Map<ITree, ITree> parents = new IdentityHashMap<>();
+
+    private final Map<ITree, Children> children = new IdentityHashMap<>();
+
+    private final Map<ITree, String> labels = new IdentityHashMap<>();
+
+    /**
+     * Creates an overlay on the tree rooted at the given node, which has no parent in the overlay.
+     */
+    public TreeOverlay(ITree root) {
+        this.root = root;
+        parents.put(root, null);
+    }
+
+    public ITree getRoot() {
+        return root;
+    }
+
+    public ITree getParent(ITree tree) {
+        ITree parent = parents.get(tree);
+        if (parent != null || parents.containsKey(tree))
+            return parent;
+        return tree.getParent();
+    }
+
+    /**
+     * Returns an unmodifiable list of the children of the given node in the overlay.
+     */
+    public List<ITree> getChildren(ITree tree) {
+        Children c = children.get(tree);
+        return c == null ? Collections.unmodifiableList(tree.getChildren()) : c.view;
+    }
+
+    /**
+     * Returns the position of the given node in the children of its parent, or -1 if it has no parent.
+     */
+    public int positionInParent(ITree tree) {
+        ITree parent = getParent(tree);
+        if (parent == null)
+            return -1;
+        Children c = children.get(parent);
+        return c == null ? parent.getChildPosition(tree) : c.indexOf(tree);
+    }
+
+    public String getLabel(ITree tree) {
+        String label = labels.get(tree);
+        return label == null ? tree.getLabel() : label;
+    }
+
+    public void setLabel(ITree tree, String label) {
+        labels.put(tree, label);
+    }
+
+    /**
+     * Returns true if the given node has, in the overlay, the same label as the other given node.
+     */
+    public boolean hasSameLabel(ITree tree, ITree other) {
+        if (labels.containsKey(tree))
+            return labels.get(tree).equals(other.getLabel());
+        return tree.hasSameLabel(other);
+    }
+
+    /**
+     * Inserts a node in the children of the given parent. The node must not have a parent in the overlay.
+     */
+    public void insertChild(ITree parent, ITree child, int position) {
+        materialize(parent).add(position, child);
+        parents.put(child, parent);
+    }
+
+    /**
+     * Removes the child at the given position of the given parent, and returns it.
+     */
+    public ITree removeChild(ITree parent, int position) {
+        ITree child = materialize(parent).remove(position);
+        parents.put(child, null);
+        return child;
+    }
+
+    /**
+     * Returns the node and its descendants in the overlay, in post-order.
+     */
+    public List<ITree> postOrder(ITree tree) {
+        List<ITree> trees = new ArrayList<>();
+        Deque<Iterator<ITree>> stack = new ArrayDeque<>();
+        Deque<ITree> path = new ArrayDeque<>();
+        path.push(tree);
+        stack.push(getChildren(tree).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<ITree> it = stack.peek();
+            if (it.hasNext()) {
+                ITree child = it.next();
+                path.push(child);
+                stack.push(getChildren(child).iterator());
+            } else {
+                stack.pop();
+                trees.add(path.pop());
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * Returns the number of nodes whose children or label have been changed.
+     */
+    public int getChangedNodeCount() {
+        Set<ITree> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        changed.addAll(children.keySet());
+        changed.addAll(labels.keySet());
+        return changed.size();
+    }
+
+    private Children materialize(ITree tree) {
+        Children c = children.get(tree);
+        if (c == null) {
+            c = new Children(tree.getChildren());
+            children.put(tree, c);
+        }
+        return c;
+    }
+
+    /**
+     * A copy of a children list. The positions of the children are recorded lazily, from the first
+     * modified position, so that positions are found in constant time between modifications.
+     */
+    private static final class Children {
+        final List<ITree> list;
+
+        final List<ITree> view;
+
+        final Map<ITree, Integer> positions = new IdentityHashMap<>();
+
+        int numbered;
+
+        Children(List<ITree> children) {
+            list = new ArrayList<>(children);
+            view = Collections.unmodifiableList(list);
+        }
+
+        int indexOf(ITree child) {
+            Integer position = positions.get(child);
+            if (position != null && position < numbered && list.get(position) == child)
+                return position;
+            while (numbered < list.size()) {
+                ITree c = list.get(numbered);
+                positions.put(c, numbered);
+                if (c == child)
+                    return numbered++;
+                numbered++;
+            }
+            return -1;
+        }
+
+        void add(int position, ITree child) {
+            list.add(position, child);
+            numbered = Math.min(numbered, position);
+        }
+
+        ITree remove(int position) {
+            ITree child = list.remove(position);
+            positions.remove(child);
+            numbered = Math.min(numbered, position);
+            return child;
+        }
+    }
+}
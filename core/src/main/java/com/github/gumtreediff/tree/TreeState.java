@@ -0,0 +1,53 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+/**
+ * State shared by the nodes of a tree whose metrics have been computed together.
+ */
+final class TreeState {
+    /**
+     * Indicates whether or not the tree has been modified since its metrics have been computed.
+     * In this case, the depth and position of the unmodified nodes may be outdated too.
+     */
+    boolean pending;
+
+    /**
+     * Indicates whether or not the tree has ever been modified since the state was created.
+     * The nodes of an unmodified lazy tree are still numbered as in their source.
+     */
+    boolean modified;
+
+    /**
+     * The nodes of the tree in pre-order, built when first requested.
+     */
+    ITree[] nodes;
+
+    /**
+     * The ancestor index of the tree, built when first requested.
+     */
+    AncestorIndex ancestors;
+
+    /**
+     * Indicates whether or not the tree can still be modified.
+     * @see AbstractTree#freeze()
+     */
+    boolean frozen;
+}
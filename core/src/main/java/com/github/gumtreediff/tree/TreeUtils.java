@@ -22,47 +22,143 @@ package com.github.gumtreediff.tree;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import com.github.gumtreediff.utils.Pair;
 
 public final class TreeUtils {
+    private static final int INITIAL_STACK_CAPACITY = 32;
+
     private TreeUtils() {
     }
 
+    /**
+     * Visits the tree in depth-first order, calling {@link TreeVisitor#startTree(ITree)} when
+     * entering a node and {@link TreeVisitor#endTree(ITree)} when leaving it. The traversal uses
+     * an explicit stack, hence it handles trees of any depth, and it does not allocate anything per node.
+     * The tree must not be modified during the traversal.
+     */
+    public static void depthFirst(ITree tree, TreeVisitor visitor) {
+        ITree[] nodes = new ITree[INITIAL_STACK_CAPACITY];
+        int[] nextChildren = new int[INITIAL_STACK_CAPACITY];
+        int top = 0;
+        nodes[0] = tree;
+        visitor.startTree(tree);
+        while (top >= 0) {
+            ITree node = nodes[top];
+            List<ITree> children = node.getChildren();
+            int next = nextChildren[top];
+            if (next < children.size()) {
+                ITree child = children.get(next);
+                nextChildren[top] = next + 1;
+                top++;
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    nextChildren = Arrays.copyOf(nextChildren, top * 2);
+                }
+                nodes[top] = child;
+                nextChildren[top] = 0;
+                visitor.startTree(child);
+            } else {
+                nodes[top--] = null;
+                visitor.endTree(node);
+            }
+        }
+    }
+
+    /**
+     * Calls the given consumer on every subtree of the tree, in pre-order.
+     * @see #depthFirst(ITree, TreeVisitor)
+     */
+    public static void preOrder(ITree tree, Consumer<ITree> consumer) {
+        depthFirst(tree, new TreeVisitor.DefaultTreeVisitor() {
+            @Override
+            public void startTree(ITree t) {
+                consumer.accept(t);
+            }
+        });
+    }
+
+    /**
+     * Calls the given consumer on every subtree of the tree, in post-order.
+     * @see #depthFirst(ITree, TreeVisitor)
+     */
+    public static void postOrder(ITree tree, Consumer<ITree> consumer) {
+        depthFirst(tree, new TreeVisitor.DefaultTreeVisitor() {
+            @Override
+            public void endTree(ITree t) {
+                consumer.accept(t);
+            }
+        });
+    }
+
+    /**
+     * Calls the given consumer on every subtree of the tree, in breadth-first order.
+     */
+    public static void breadthFirst(ITree tree, Consumer<ITree> consumer) {
+        Deque<ITree> queue = new ArrayDeque<>();
+        queue.add(tree);
+        while (!queue.isEmpty()) {
+            ITree t = queue.poll();
+            consumer.accept(t);
+            List<ITree> children = t.getChildren();
+            for (int i = 0; i < children.size(); i++)
+                queue.add(children.get(i));
+        }
+    }
+
+    /**
+     * Returns a deep copy of the tree, built without recursion.
+     * @see ITree#deepCopy()
+     */
+    static ITree deepCopy(AbstractTree tree) {
+        ITree root = tree.copyNode();
+        Deque<ITree> originals = new ArrayDeque<>();
+        Deque<ITree> copies = new ArrayDeque<>();
+        originals.push(tree);
+        copies.push(root);
+        while (!originals.isEmpty()) {
+            List<ITree> children = originals.pop().getChildren();
+            ITree copy = copies.pop();
+            for (int i = 0; i < children.size(); i++) {
+                ITree child = children.get(i);
+                if (child instanceof AbstractTree) {
+                    ITree childCopy = ((AbstractTree) child).copyNode();
+                    copy.addChild(childCopy);
+                    originals.push(child);
+                    copies.push(childCopy);
+                } else
+                    copy.addChild(child.deepCopy());
+            }
+        }
+        return root;
+    }
+
     /**
      * Returns a list of every subtrees and the tree ordered using a pre-order.
      * @param tree a Tree.
      */
     public static List<ITree> preOrder(ITree tree) {
         List<ITree> trees = new ArrayList<>();
-        preOrder(tree, trees);
+        preOrder(tree, trees::add);
         return trees;
     }
 
-    private static void preOrder(ITree tree, List<ITree> trees) {
-        trees.add(tree);
-        if (!tree.isLeaf())
-            for (ITree c: tree.getChildren())
-                preOrder(c, trees);
-    }
-
     /**
      * Returns a list of every subtrees and the tree ordered using a breadth-first order.
      * @param tree a Tree.
      */
     public static List<ITree> breadthFirst(ITree tree) {
         List<ITree> trees = new ArrayList<>();
-        List<ITree> currents = new ArrayList<>();
-        currents.add(tree);
-        while (currents.size() > 0) {
-            ITree c = currents.remove(0);
-            trees.add(c);
-            currents.addAll(c.getChildren());
-        }
+        trees.add(tree);
+        for (int i = 0; i < trees.size(); i++)
+            trees.addAll(trees.get(i).getChildren());
         return trees;
     }
 
@@ -113,18 +209,20 @@ public final class TreeUtils {
      */
     public static List<ITree> postOrder(ITree tree) {
         List<ITree> trees = new ArrayList<>();
-        postOrder(tree, trees);
+        postOrder(tree, trees::add);
         return trees;
     }
 
-    private static void postOrder(ITree tree, List<ITree> trees) {
-        if (!tree.isLeaf())
-            for (ITree c: tree.getChildren())
-                postOrder(c, trees);
-        trees.add(tree);
+    public static Iterator<ITree> postOrderIterator(final ITree tree) {
+        return postOrderIterator(tree, t -> false);
     }
 
-    public static Iterator<ITree> postOrderIterator(final ITree tree) {
+    /**
+     * Returns an iterator over the tree and its subtrees in post-order, skipping the subtrees
+     * whose root is accepted by the given predicate. The predicate is tested on each subtree
+     * before its children are read, and never on the tree itself.
+     */
+    public static Iterator<ITree> postOrderIterator(final ITree tree, Predicate<ITree> skipped) {
         return new Iterator<ITree>() {
             Deque<Pair<ITree, Iterator<ITree>>> stack = new ArrayDeque<>();
             {
@@ -144,12 +242,15 @@ public final class TreeUtils {
             }
 
             ITree selectNextChild(Iterator<ITree> it) {
-                if (!it.hasNext())
-                    return stack.pop().first;
-                ITree item = it.next();
-                if (item.isLeaf())
-                    return item;
-                return selectNextChild(push(item));
+                while (it.hasNext()) {
+                    ITree item = it.next();
+                    if (skipped.test(item))
+                        continue;
+                    if (item.isLeaf())
+                        return item;
+                    it = push(item);
+                }
+                return stack.pop().first;
             }
 
             private Iterator<ITree> push(ITree item) {
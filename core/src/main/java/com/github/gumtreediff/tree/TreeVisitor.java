@@ -19,29 +19,12 @@
  */
 package com.github.gumtreediff.tree;
 
-import com.github.gumtreediff.utils.Pair;
-
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.Iterator;
-
 public interface TreeVisitor {
+    /**
+     * @see TreeUtils#depthFirst(ITree, TreeVisitor)
+     */
     static void visitTree(ITree root, TreeVisitor visitor) {
-        Deque<Pair<ITree, Iterator<ITree>>> stack = new ArrayDeque<>();
-        stack.push(new Pair<>(root, root.getChildren().iterator()));
-        visitor.startTree(root);
-        while (!stack.isEmpty()) {
-            Pair<ITree, Iterator<ITree>> it = stack.peek();
-
-            if (!it.second.hasNext()) {
-                visitor.endTree(it.first);
-                stack.pop();
-            } else {
-                ITree child = it.second.next();
-                stack.push(new Pair<>(child, child.getChildren().iterator()));
-                visitor.startTree(child);
-            }
-        }
+        TreeUtils.depthFirst(root, visitor);
     }
 
     void startTree(ITree tree);
@@ -25,10 +25,17 @@ public final class Type {
 
     public final String name;
 
+    /**
+     * A dense integer identifying the type, to be used as an array index.
+     * @see TypeSet#type(int)
+     */
+    public final int id;
+
     public static final Type NO_TYPE = type("");
 
-    private Type(String value) {
+    private Type(String value, int id) {
         name = value;
+        this.id = id;
     }
 
     public boolean isEmpty() {
@@ -48,8 +55,8 @@ public final class Type {
     static class TypeFactory {
         protected TypeFactory() {}
 
-        protected Type makeType(String name) {
-            return new Type(name);
+        protected Type makeType(String name, int id) {
+            return new Type(name, id);
         }
     }
 }
@@ -18,9 +18,10 @@
  */
 package com.github.gumtreediff.tree;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * The registry of all types. Types are interned: there is only one type object by name.
+ * Each type receives a dense integer id, in creation order. This class is thread-safe.
+ */
 public class TypeSet {
     private static final TypeFactoryImplementation implementation = new TypeFactoryImplementation();
 
@@ -28,21 +29,40 @@ public class TypeSet {
         return implementation.makeOrGetType(value);
     }
 
+    /**
+     * Returns the type with the given id.
+     * @see Type#id
+     */
+    public static Type type(int id) {
+        return implementation.getType(id);
+    }
+
+    /**
+     * Returns the number of types created so far. All type ids are lower than this number.
+     */
+    public static int size() {
+        return implementation.size();
+    }
+
     private static class TypeFactoryImplementation extends Type.TypeFactory {
-        private final Map<String, Type> types = new HashMap<>();
+        // Creating the first type initializes Type, which creates Type.NO_TYPE in turn.
+        private final Interner<Type> types = new Interner<>(this::makeType, type -> type.name);
 
         public Type makeOrGetType(String name) {
-//            return types.computeIfAbsent(name == null ? "" : name, (key) -> makeType(key));
             if (name == null)
                 name = "";
 
-            Type sym = types.get(name);
-            if (sym == null) {
-                sym = makeType(name);
-                types.put(name, sym);
-            }
+            return types.get(types.id(name));
+        }
+
+        public Type getType(int id) {
+            if (id < 0 || id >= types.size())
+                throw new IllegalArgumentException("Unknown type id: " + id);
+            return types.get(id);
+        }
 
-            return sym;
+        public int size() {
+            return types.size();
         }
     }
 }
@@ -0,0 +1,279 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtreediff.utils;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem on a sparse bipartite graph: rows are assigned to columns along
+ * the given edges, so that as many rows as possible are assigned and, among such assignments, the
+ * total cost is minimal. The rows are assigned one by one along shortest augmenting paths, in the
+ * manner of Jonker and Volgenant, which only visit the edges of the rows reached. The graph is
+ * kept in primitive arrays.
+ * The graphs with more edges than a cap are assigned greedily instead, by increasing cost, which
+ * is fast but not optimal.
+ */
+public class SparseAssignment {
+    public static final int DEFAULT_MAX_EDGES = 1 << 20;
+
+    private static final int NONE = -1;
+
+    private final int rows;
+
+    private final int columns;
+
+    private int[] edgeRows = new int[16];
+
+    private int[] edgeColumns = new int[16];
+
+    private double[] edgeCosts = new double[16];
+
+    private int edges;
+
+    private int maxEdges = DEFAULT_MAX_EDGES;
+
+    public SparseAssignment(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Adds an edge between the given row and column, with the given cost.
+     */
+    public void addEdge(int row, int column, double cost) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            throw new IndexOutOfBoundsException("Edge (" + row + ", " + column + ") out of "
+                    + rows + "x" + columns);
+        if (edges == edgeRows.length) {
+            edgeRows = Arrays.copyOf(edgeRows, edges * 2);
+            edgeColumns = Arrays.copyOf(edgeColumns, edges * 2);
+            edgeCosts = Arrays.copyOf(edgeCosts, edges * 2);
+        }
+        edgeRows[edges] = row;
+        edgeColumns[edges] = column;
+        edgeCosts[edges++] = cost;
+    }
+
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    /**
+     * Sets the number of edges above which the assignment is greedy.
+     */
+    public void setMaxEdges(int maxEdges) {
+        this.maxEdges = maxEdges;
+    }
+
+    /**
+     * Returns the column assigned to each row, or -1 for the unassigned rows.
+     */
+    public int[] execute() {
+        return edges > maxEdges ? executeGreedily() : executeOptimally();
+    }
+
+    private int[] executeOptimally() {
+        // Each row also gets its own dummy column, meaning that the row is unassigned, so that every
+        // row can be assigned. The cost of the dummy columns is high enough for any assignment
+        // with more real columns to be cheaper.
+        double minCost = 0D;
+        double maxCost = 0D;
+        for (int e = 0; e < edges; e++) {
+            minCost = Math.min(minCost, edgeCosts[e]);
+            maxCost = Math.max(maxCost, edgeCosts[e]);
+        }
+        double unassignedCost = Math.min(rows, columns) * (maxCost - minCost) + maxCost + 1D;
+
+        // The edges grouped by row, in the order they were added, followed by the dummy column.
+        int[] offsets = new int[rows + 1];
+        for (int e = 0; e < edges; e++)
+            offsets[edgeRows[e] + 1]++;
+        for (int i = 0; i < rows; i++)
+            offsets[i + 1] += offsets[i] + 1;
+        int[] targets = new int[edges + rows];
+        double[] costs = new double[edges + rows];
+        int[] next = Arrays.copyOf(offsets, rows);
+        for (int e = 0; e < edges; e++) {
+            int k = next[edgeRows[e]]++;
+            targets[k] = edgeColumns[e];
+            costs[k] = edgeCosts[e];
+        }
+        for (int i = 0; i < rows; i++) {
+            targets[next[i]] = columns + i;
+            costs[next[i]] = unassignedCost;
+        }
+
+        Solver solver = new Solver(offsets, targets, costs);
+        for (int row = 0; row < rows; row++)
+            solver.augment(row);
+        int[] columnOfRow = solver.columnOfRow;
+        for (int row = 0; row < rows; row++)
+            if (columnOfRow[row] >= columns)
+                columnOfRow[row] = NONE;
+        return columnOfRow;
+    }
+
+    private final class Solver {
+        final int[] offsets;
+
+        final int[] targets;
+
+        final double[] costs;
+
+        final double[] rowPotentials = new double[rows];
+
+        final double[] columnPotentials = new double[columns + rows];
+
+        final int[] columnOfRow = new int[rows];
+
+        final int[] rowOfColumn = new int[columns + rows];
+
+        // The shortest path found to each column, and the row preceding the column on this path.
+        final double[] shortest = new double[columns + rows];
+
+        final int[] path = new int[columns + rows];
+
+        final boolean[] scanned = new boolean[columns + rows];
+
+        // The columns reached but not scanned, the scanned columns and the rows on the paths.
+        final int[] reached = new int[columns + rows];
+
+        final int[] scannedColumns = new int[columns + rows];
+
+        final int[] pathRows = new int[rows];
+
+        Solver(int[] offsets, int[] targets, double[] costs) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.costs = costs;
+            Arrays.fill(columnOfRow, NONE);
+            Arrays.fill(rowOfColumn, NONE);
+            Arrays.fill(shortest, Double.POSITIVE_INFINITY);
+        }
+
+        void augment(int start) {
+            int reachedCount = 0;
+            int scannedCount = 0;
+            int pathRowCount = 0;
+            double minDistance = 0D;
+            int row = start;
+            int sink = NONE;
+            while (sink == NONE) {
+                pathRows[pathRowCount++] = row;
+                for (int e = offsets[row]; e < offsets[row + 1]; e++) {
+                    int column = targets[e];
+                    if (scanned[column])
+                        continue;
+                    double distance = minDistance + costs[e] - rowPotentials[row] - columnPotentials[column];
+                    if (distance < shortest[column]) {
+                        if (shortest[column] == Double.POSITIVE_INFINITY)
+                            reached[reachedCount++] = column;
+                        shortest[column] = distance;
+                        path[column] = row;
+                    }
+                }
+
+                // The closest reached column, preferably an unassigned one.
+                int best = NONE;
+                for (int k = 0; k < reachedCount; k++) {
+                    int column = reached[k];
+                    if (best == NONE || shortest[column] < shortest[reached[best]]
+                            || shortest[column] == shortest[reached[best]] && rowOfColumn[column] == NONE)
+                        best = k;
+                }
+                int column = reached[best];
+                reached[best] = reached[--reachedCount];
+                scanned[column] = true;
+                scannedColumns[scannedCount++] = column;
+                minDistance = shortest[column];
+                if (rowOfColumn[column] == NONE)
+                    sink = column;
+                else
+                    row = rowOfColumn[column];
+            }
+
+            rowPotentials[start] += minDistance;
+            for (int k = 1; k < pathRowCount; k++)
+                rowPotentials[pathRows[k]] += minDistance - shortest[columnOfRow[pathRows[k]]];
+            for (int k = 0; k < scannedCount; k++)
+                columnPotentials[scannedColumns[k]] -= minDistance - shortest[scannedColumns[k]];
+
+            int column = sink;
+            while (true) {
+                row = path[column];
+                rowOfColumn[column] = row;
+                int previous = columnOfRow[row];
+                columnOfRow[row] = column;
+                if (row == start)
+                    break;
+                column = previous;
+            }
+            reset(reachedCount, scannedCount);
+        }
+
+        private void reset(int reachedCount, int scannedCount) {
+            for (int k = 0; k < reachedCount; k++)
+                shortest[reached[k]] = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < scannedCount; k++) {
+                shortest[scannedColumns[k]] = Double.POSITIVE_INFINITY;
+                scanned[scannedColumns[k]] = false;
+            }
+        }
+    }
+
+    private int[] executeGreedily() {
+        int[] order = new int[edges];
+        for (int e = 0; e < edges; e++)
+            order[e] = e;
+        sortByCost(order, new int[edges], 0, edges);
+
+        int[] columnOfRow = new int[rows];
+        boolean[] assignedColumns = new boolean[columns];
+        Arrays.fill(columnOfRow, NONE);
+        for (int e : order) {
+            if (columnOfRow[edgeRows[e]] == NONE && !assignedColumns[edgeColumns[e]]) {
+                columnOfRow[edgeRows[e]] = edgeColumns[e];
+                assignedColumns[edgeColumns[e]] = true;
+            }
+        }
+        return columnOfRow;
+    }
+
+    // A stable merge sort of edge indexes by increasing cost.
+    private void sortByCost(int[] values, int[] buffer, int from, int to) {
+        if (to - from < 2)
+            return;
+        int middle = (from + to) >>> 1;
+        sortByCost(values, buffer, from, middle);
+        sortByCost(values, buffer, middle, to);
+        if (edgeCosts[values[middle - 1]] <= edgeCosts[values[middle]])
+            return;
+        System.arraycopy(values, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j >= to || i < middle && edgeCosts[buffer[i]] <= edgeCosts[buffer[j]])
+                values[k] = buffer[i++];
+            else
+                values[k] = buffer[j++];
+        }
+    }
+}
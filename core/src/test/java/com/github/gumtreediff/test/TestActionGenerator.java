@@ -31,6 +31,7 @@ import com.github.gumtreediff.tree.TreeContext;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -113,6 +114,59 @@ public class TestActionGenerator {
         assertEquals("i", d.getNode().getLabel());
     }
 
+    @Test
+    public void testWithReorderedChildren() {
+        ITree src = new Tree(TypeSet.type("root"));
+        for (String label : new String[] {"a", "b", "c"})
+            src.addChild(new Tree(TypeSet.type("leaf"), label));
+        ITree left = new Tree(TypeSet.type("root"));
+        for (String label : new String[] {"c", "a", "b"})
+            left.addChild(new Tree(TypeSet.type("leaf"), label));
+        ITree right = new Tree(TypeSet.type("root"));
+        for (String label : new String[] {"b", "c", "a"})
+            right.addChild(new Tree(TypeSet.type("leaf"), label));
+
+        MappingStore ms = new MappingStore(src, left);
+        ms.addMapping(src, left);
+        for (int i = 0; i < 3; i++)
+            ms.addMapping(src.getChild(i), left.getChild((i + 1) % 3));
+        EditScript actions = new ChawatheScriptGenerator().computeActions(ms);
+        assertEquals(1, actions.size());
+        assertEquals(new Move(src.getChild(2), src, 0), actions.get(0));
+
+        ms = new MappingStore(src, right);
+        ms.addMapping(src, right);
+        for (int i = 0; i < 3; i++)
+            ms.addMapping(src.getChild(i), right.getChild((i + 2) % 3));
+        actions = new ChawatheScriptGenerator().computeActions(ms);
+        assertEquals(1, actions.size());
+        assertEquals(new Move(src.getChild(0), src, 2), actions.get(0));
+        assertEquals("a", src.getChild(0).getLabel());
+    }
+
+    @Test
+    public void testWithFrozenTrees() {
+        ITree src = new Tree(TypeSet.type("root"));
+        for (String label : new String[] {"a", "b", "c"})
+            src.addChild(new Tree(TypeSet.type("leaf"), label));
+        ITree dst = new Tree(TypeSet.type("root"));
+        for (String label : new String[] {"a", "b", "d"})
+            dst.addChild(new Tree(TypeSet.type("leaf"), label));
+        MappingStore ms = new MappingStore(src, dst);
+        ms.addMapping(src, dst);
+        for (int i = 0; i < 3; i++)
+            ms.addMapping(src.getChild(i), dst.getChild(i));
+        ((Tree) src).freeze();
+        ((Tree) dst).freeze();
+
+        EditScript actions = new ChawatheScriptGenerator().computeActions(ms);
+        assertEquals(1, actions.size());
+        assertEquals(new Update(src.getChild(2), "d"), actions.get(0));
+        assertEquals("c", src.getChild(2).getLabel());
+        assertNull(src.getParent());
+        assertNull(dst.getParent());
+    }
+
     @Test
     public void testWithUnmappedRoot() {
         ITree src = new Tree(TypeSet.type("foo"), "");
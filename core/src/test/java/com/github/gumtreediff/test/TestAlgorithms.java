@@ -21,6 +21,7 @@ package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.utils.HungarianAlgorithm;
 import com.github.gumtreediff.utils.SequenceAlgorithms;
+import com.github.gumtreediff.utils.SparseAssignment;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.List;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
 public class TestAlgorithms {
 
@@ -61,4 +63,44 @@ public class TestAlgorithms {
         assertThat(result[1], is(1));
         assertThat(result[2], is(2));
     }
+
+    @Test
+    public void testSparseAssignment() {
+        SparseAssignment a = new SparseAssignment(3, 3);
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                a.addEdge(i, j, i == j ? 2D : 3D);
+        assertArrayEquals(new int[] {0, 1, 2}, a.execute());
+
+        // The cheapest assignments of the first rows are not part of the best one.
+        SparseAssignment b = new SparseAssignment(5, 2);
+        b.addEdge(0, 1, -1D);
+        b.addEdge(1, 0, 4D);
+        b.addEdge(1, 1, 0D);
+        b.addEdge(2, 0, 6D);
+        b.addEdge(2, 1, -3D);
+        b.addEdge(3, 0, 2D);
+        b.addEdge(4, 0, 4D);
+        b.addEdge(4, 1, 5D);
+        assertArrayEquals(new int[] {-1, -1, 1, 0, -1}, b.execute());
+
+        // A larger assignment is preferred to a cheaper one.
+        SparseAssignment c = new SparseAssignment(2, 2);
+        c.addEdge(0, 0, 1D);
+        c.addEdge(0, 1, 2D);
+        c.addEdge(1, 0, 100D);
+        assertArrayEquals(new int[] {1, 0}, c.execute());
+    }
+
+    @Test
+    public void testGreedySparseAssignment() {
+        SparseAssignment a = new SparseAssignment(2, 2);
+        a.addEdge(0, 0, 1D);
+        a.addEdge(0, 1, 2D);
+        a.addEdge(1, 0, 2D);
+        a.addEdge(1, 1, 100D);
+        assertArrayEquals(new int[] {1, 0}, a.execute());
+        a.setMaxEdges(3);
+        assertArrayEquals(new int[] {0, 1}, a.execute());
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.github.gumtreediff.actions.EditScript;
+import com.github.gumtreediff.actions.SimplifiedChawatheScriptGenerator;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.tree.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompactTree {
+    @Test
+    public void testLoadCompact() {
+        ITree tree = TreeLoader.load("/Dummy_v0.xml").getRoot();
+        ITree compact = TreeLoader.loadCompact("/Dummy_v0.xml").getRoot();
+        assertTrue(compact instanceof CompactTree);
+        assertTrue(tree.isIsomorphicTo(compact));
+        Iterator<ITree> it = compact.preOrder().iterator();
+        for (ITree t : tree.preOrder()) {
+            ITree c = it.next();
+            assertEquals(t.getPos(), c.getPos());
+            assertEquals(t.getLength(), c.getLength());
+            assertEquals(t.positionInParent(), c.positionInParent());
+            assertEquals(t.getMetrics().size, c.getMetrics().size);
+            assertEquals(t.getMetrics().height, c.getMetrics().height);
+            assertEquals(t.getMetrics().hash, c.getMetrics().hash);
+            assertEquals(t.getMetrics().structureHash, c.getMetrics().structureHash);
+            assertEquals(t.getMetrics().fingerprint, c.getMetrics().fingerprint);
+            assertEquals(t.getMetrics().structureFingerprint, c.getMetrics().structureFingerprint);
+            assertEquals(t.getMetrics().depth, c.getMetrics().depth);
+            assertEquals(t.getMetrics().position, c.getMetrics().position);
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testCompactStructure() {
+        ITree tree = TreeLoader.getDummySrc();
+        tree.getChild(0).setMetadata("foo", "bar");
+        CompactTreeStore store = CompactTreeStore.fromTree(tree);
+        assertEquals(tree.getMetrics().size, store.size());
+        ITree root = store.getRoot();
+        assertSame(root, store.getNode(0));
+        assertNull(root.getParent());
+        assertEquals(-1, root.positionInParent());
+        ITree b = root.getChild(0);
+        assertSame(b, root.getChild("0"));
+        assertSame(root, b.getParent());
+        assertEquals("bar", b.getMetadata("foo"));
+        ITree e = root.getChild(1);
+        assertEquals(1, e.positionInParent());
+        assertEquals(1, root.getChildPosition(e));
+        assertEquals(1, root.getChildren().indexOf(e));
+        assertEquals(-1, root.getChildPosition(root));
+        assertEquals("c", root.getChild("0.0").getLabel());
+        assertTrue(root.getChild("0.0").isLeaf());
+
+        e.setLabel("foo");
+        assertEquals("foo", e.getLabel());
+        assertThrows(UnsupportedOperationException.class, () -> b.addChild(new Tree(b.getType())));
+        assertThrows(UnsupportedOperationException.class, () -> b.setParent(null));
+        assertThrows(UnsupportedOperationException.class, () -> b.getChildren().remove(0));
+
+        ITree copy = root.deepCopy();
+        assertTrue(copy instanceof Tree);
+        assertTrue(copy.isIsomorphicTo(root));
+    }
+
+    @Test
+    public void testCompositeMatchersOnCompactTrees() {
+        List<Matcher> matchers = new ArrayList<>();
+        matchers.add(new CompositeMatchers.ClassicGumtree());
+        matchers.add(new CompositeMatchers.SimpleGumtree());
+        matchers.add(new CompositeMatchers.SimpleIdGumtree());
+        matchers.add(new CompositeMatchers.CompleteGumtreeMatcher());
+        matchers.add(new CompositeMatchers.ChangeDistiller());
+        matchers.add(new CompositeMatchers.XyMatcher());
+        matchers.add(new CompositeMatchers.CdabcdefSeq());
+        matchers.add(new CompositeMatchers.CdabcdefPar());
+        matchers.add(new CompositeMatchers.Gtbcdef());
+        matchers.add(new CompositeMatchers.Rtedacdef());
+
+        for (Matcher matcher : matchers) {
+            ITree src = TreeLoader.load("/Dummy_v0.xml").getRoot();
+            ITree dst = TreeLoader.load("/Dummy_v1.xml").getRoot();
+            ITree compactSrc = TreeLoader.loadCompact("/Dummy_v0.xml").getRoot();
+            ITree compactDst = TreeLoader.loadCompact("/Dummy_v1.xml").getRoot();
+            MappingStore ms = matcher.match(src, dst);
+            MappingStore compactMs = matcher.match(compactSrc, compactDst);
+            assertEquals(ms.size(), compactMs.size(), matcher.getClass().getSimpleName());
+            for (Mapping m : compactMs) {
+                CompactTree first = (CompactTree) m.first;
+                CompactTree second = (CompactTree) m.second;
+                assertTrue(ms.has(TreeUtils.preOrder(src).get(first.getIndex()),
+                        TreeUtils.preOrder(dst).get(second.getIndex())), matcher.getClass().getSimpleName());
+            }
+            EditScript script = new SimplifiedChawatheScriptGenerator().computeActions(compactMs);
+            assertEquals(new SimplifiedChawatheScriptGenerator().computeActions(ms).size(), script.size());
+        }
+    }
+}
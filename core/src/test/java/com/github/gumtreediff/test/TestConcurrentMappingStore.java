@@ -0,0 +1,172 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.ConcurrentMappingStore;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TypeSet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestConcurrentMappingStore {
+    private static final int THREADS = 8;
+
+    @Test
+    public void testConcurrentMappingStore() {
+        ITree src = TreeLoader.getDummySrc();
+        ITree dst = TreeLoader.getDummySrc();
+        ConcurrentMappingStore ms = new ConcurrentMappingStore(src, dst);
+        assertTrue(ms.isMappingAllowed(src, dst));
+        assertFalse(ms.tryAddMapping(src, dst.getChild(0)));
+        assertTrue(ms.tryAddMapping(src, dst));
+        assertFalse(ms.tryAddMapping(src, dst));
+        assertTrue(ms.has(src, dst));
+        assertSame(dst, ms.getDstForSrc(src));
+        assertSame(src, ms.getSrcForDst(dst));
+        assertFalse(ms.isMappingAllowed(src, dst));
+        assertTrue(ms.tryAddMapping(src.getChild(0), dst.getChild(0)));
+        assertEquals(2, ms.size());
+
+        assertFalse(ms.removeMapping(src, dst.getChild(0)));
+        assertTrue(ms.removeMapping(src, dst));
+        assertFalse(ms.isSrcMapped(src));
+        assertFalse(ms.isDstMapped(dst));
+        assertEquals(1, ms.size());
+
+        MappingStore copy = ms.toMappingStore();
+        assertEquals(1, copy.size());
+        assertTrue(copy.has(src.getChild(0), dst.getChild(0)));
+        assertEquals(1, new ConcurrentMappingStore(copy).size());
+        assertThrows(IllegalArgumentException.class, () -> ms.isSrcMapped(new Tree(TypeSet.type("foo"))));
+    }
+
+    @Test
+    public void testContendedClaims() throws Exception {
+        ITree src = wideTree(THREADS);
+        ITree dst = wideTree(THREADS);
+        for (int round = 0; round < 200; round++) {
+            ConcurrentMappingStore ms = new ConcurrentMappingStore(src, dst);
+            AtomicInteger winners = new AtomicInteger();
+            // Every thread claims the same src node with its own dst node, only one may win.
+            runConcurrently(thread -> {
+                if (ms.tryAddMapping(src.getChild(0), dst.getChild(thread)))
+                    winners.incrementAndGet();
+            });
+            assertEquals(1, winners.get());
+            assertEquals(1, ms.size());
+            assertEquals(1, ms.toMappingStore().size());
+        }
+    }
+
+    @Test
+    public void testStress() throws Exception {
+        int width = 64;
+        ITree src = wideTree(width);
+        ITree dst = wideTree(width);
+        ConcurrentMappingStore ms = new ConcurrentMappingStore(src, dst);
+        AtomicInteger balance = new AtomicInteger();
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 20000; i++) {
+                ITree s = src.getChild(random.nextInt(width));
+                ITree d = dst.getChild(random.nextInt(width));
+                if (random.nextInt(3) == 0) {
+                    if (ms.removeMapping(s, d))
+                        balance.decrementAndGet();
+                } else if (ms.tryAddMapping(s, d))
+                    balance.incrementAndGet();
+            }
+        });
+        assertEquals(balance.get(), ms.size());
+        MappingStore copy = ms.toMappingStore();
+        assertEquals(ms.size(), copy.size());
+        for (ITree s : src.getChildren()) {
+            ITree d = ms.getDstForSrc(s);
+            assertSame(d, copy.getDstForSrc(s));
+            if (d != null)
+                assertSame(s, ms.getSrcForDst(d));
+        }
+
+        // Without removals, each node is claimed at most once.
+        ConcurrentMappingStore claims = new ConcurrentMappingStore(src, dst);
+        AtomicIntegerArray srcClaims = new AtomicIntegerArray(width);
+        AtomicIntegerArray dstClaims = new AtomicIntegerArray(width);
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 2000; i++) {
+                int s = random.nextInt(width);
+                int d = random.nextInt(width);
+                if (claims.tryAddMapping(src.getChild(s), dst.getChild(d))) {
+                    srcClaims.incrementAndGet(s);
+                    dstClaims.incrementAndGet(d);
+                }
+            }
+        });
+        for (int i = 0; i < width; i++) {
+            assertEquals(claims.isSrcMapped(src.getChild(i)) ? 1 : 0, srcClaims.get(i));
+            assertEquals(claims.isDstMapped(dst.getChild(i)) ? 1 : 0, dstClaims.get(i));
+        }
+    }
+
+    private static ITree wideTree(int width) {
+        ITree root = new Tree(TypeSet.type("root"));
+        for (int i = 0; i < width; i++)
+            root.addChild(new Tree(TypeSet.type("leaf"), Integer.toString(i)));
+        root.getMetrics();
+        return root;
+    }
+
+    private interface Task {
+        void run(int thread);
+    }
+
+    private static void runConcurrently(Task task) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        Thread[] threads = new Thread[THREADS];
+        Throwable[] failures = new Throwable[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable t) {
+                    failures[thread] = t;
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+            if (failures[i] != null)
+                throw new AssertionError(failures[i]);
+        }
+    }
+}
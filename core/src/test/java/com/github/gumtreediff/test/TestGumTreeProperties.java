@@ -157,12 +157,15 @@ class TestGumTreeProperties {
 
         final Integer nl = 10;
         properties.put(ConfigurationOptions.GT_STM_MH, nl);
+        properties.put(ConfigurationOptions.GT_STM_PAR, 4);
         matcher.configure(properties);
         assertEquals(nl, matcher.getMin_height());
+        assertEquals(4, matcher.getParallelism());
 
         Set<ConfigurationOptions> options = matcher.getApplicableOptions();
-        assertEquals(1, options.size());
+        assertEquals(2, options.size());
         assertTrue(options.contains(ConfigurationOptions.GT_STM_MH));
+        assertTrue(options.contains(ConfigurationOptions.GT_STM_PAR));
 
     }
 
@@ -257,7 +260,7 @@ class TestGumTreeProperties {
         assertFalse(composite.getApplicableOptions().isEmpty());
 
         int optionsFromGreedySubMatcher = opGreedySubTree.get().getApplicableOptions().size();
-        assertEquals(1, optionsFromGreedySubMatcher);
+        assertEquals(2, optionsFromGreedySubMatcher);
 
         int optionsFromGreedyBottomUpMatcher = opGreedyBottomUp.get().getApplicableOptions().size();
         assertEquals(2, optionsFromGreedyBottomUpMatcher);
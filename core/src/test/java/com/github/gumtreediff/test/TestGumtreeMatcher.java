@@ -23,15 +23,23 @@ package com.github.gumtreediff.test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 import com.github.gumtreediff.matchers.GumTreeProperties;
 import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.heuristic.gt.AbstractSubtreeMatcher;
+import com.github.gumtreediff.matchers.heuristic.gt.CliqueSubtreeMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.GreedyBottomUpMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
 import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.tree.TypeSet;
 import com.github.gumtreediff.utils.Pair;
 
 public class TestGumtreeMatcher {
@@ -106,4 +114,70 @@ public class TestGumtreeMatcher {
         assertTrue(ms3.has(t1.getChild("0.1"), t2.getChild("0.1")));
         assertTrue(ms3.has(t1.getChild("0.2"), t2.getChild("0.2")));
     }
+
+    @Test
+    public void testParallelSubtreeMatching() {
+        Random random = new Random(1);
+        ITree src = new Tree(TypeSet.type("file"));
+        for (int i = 0; i < 2000; i++) {
+            ITree statement = new Tree(TypeSet.type("statement"));
+            ITree call = new Tree(TypeSet.type("call"), "f" + random.nextInt(40));
+            call.addChild(new Tree(TypeSet.type("name"), "v" + random.nextInt(20)));
+            statement.addChild(call);
+            src.addChild(statement);
+        }
+        ITree dst = src.deepCopy();
+        for (ITree t : dst.getDescendants())
+            if (t.isLeaf() && random.nextInt(10) == 0)
+                t.setLabel("changed");
+
+        for (AbstractSubtreeMatcher matcher : new AbstractSubtreeMatcher[] {
+                new GreedySubtreeMatcher(), new CliqueSubtreeMatcher() }) {
+            List<Mapping> sequential = new ArrayList<>(matcher.match(src, dst).asSet());
+            matcher.setParallelism(4);
+            List<Mapping> parallel = new ArrayList<>(matcher.match(src, dst).asSet());
+            assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void testAmbiguousSubtreesWithParents() {
+        ITree src = new Tree(TypeSet.type("root"));
+        ITree p2 = new Tree(TypeSet.type("block"));
+        ITree a2 = subtree();
+        p2.addChild(a2);
+        p2.addChild(new Tree(TypeSet.type("name"), "m"));
+        ITree p1 = new Tree(TypeSet.type("block"));
+        ITree k1 = new Tree(TypeSet.type("name"), "k");
+        p1.addChild(k1);
+        ITree a1 = subtree();
+        p1.addChild(a1);
+        src.addChild(p2);
+        src.addChild(p1);
+
+        ITree dst = new Tree(TypeSet.type("root"));
+        ITree q = new Tree(TypeSet.type("block"));
+        ITree b = subtree();
+        q.addChild(b);
+        ITree k2 = new Tree(TypeSet.type("name"), "k");
+        q.addChild(k2);
+        dst.addChild(q);
+
+        // Only the parent of a1 shares a mapped node with the parent of b, which lies outside the
+        // matched subtree, so a1 is preferred over a2 despite its position.
+        MappingStore ms = new MappingStore(src, dst);
+        ms.addMapping(k1, k2);
+        GreedySubtreeMatcher matcher = new GreedySubtreeMatcher();
+        matcher.setMin_height(1);
+        matcher.match(src, b, ms);
+        assertTrue(ms.has(a1, b));
+        assertTrue(ms.has(a1.getChild(0), b.getChild(0)));
+        assertEquals(3, ms.size());
+    }
+
+    private static ITree subtree() {
+        ITree t = new Tree(TypeSet.type("call"), "f");
+        t.addChild(new Tree(TypeSet.type("name"), "x"));
+        return t;
+    }
 }
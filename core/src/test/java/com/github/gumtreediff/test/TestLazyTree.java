@@ -0,0 +1,136 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2020 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ */
+
+
+package com.github.gumtreediff.test;
+
+import java.util.Iterator;
+
+import com.github.gumtreediff.actions.EditScript;
+import com.github.gumtreediff.actions.SimplifiedChawatheScriptGenerator;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
+import com.github.gumtreediff.tree.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLazyTree {
+    @Test
+    public void testLoadLazy() {
+        ITree tree = TreeLoader.load("/Dummy_big.xml").getRoot();
+        ITree lazy = TreeLoader.loadLazy("/Dummy_big.xml").getRoot();
+        assertTrue(lazy instanceof LazyTree);
+        assertTrue(tree.isIsomorphicTo(lazy));
+        Iterator<ITree> it = lazy.preOrder().iterator();
+        for (ITree t : tree.preOrder()) {
+            ITree l = it.next();
+            assertEquals(t.getType(), l.getType());
+            assertEquals(t.getLabel(), l.getLabel());
+            assertEquals(t.getPos(), l.getPos());
+            assertEquals(t.getLength(), l.getLength());
+            assertEquals(t.positionInParent(), l.positionInParent());
+            assertEquals(t.getMetrics().size, l.getMetrics().size);
+            assertEquals(t.getMetrics().height, l.getMetrics().height);
+            assertEquals(t.getMetrics().hash, l.getMetrics().hash);
+            assertEquals(t.getMetrics().structureHash, l.getMetrics().structureHash);
+            assertEquals(t.getMetrics().fingerprint, l.getMetrics().fingerprint);
+            assertEquals(t.getMetrics().structureFingerprint, l.getMetrics().structureFingerprint);
+            assertEquals(t.getMetrics().depth, l.getMetrics().depth);
+            assertEquals(t.getMetrics().position, l.getMetrics().position);
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testLazyExpansion() {
+        ITree tree = TreeLoader.getDummySrc();
+        LazyTree root = (LazyTree) TreeLoader.loadLazy("/Dummy_v0.xml").getRoot();
+        assertFalse(root.isExpanded());
+        assertEquals(tree.getMetrics().size, root.getMetrics().size);
+        assertEquals(tree.getMetrics().height, root.getMetrics().height);
+        assertEquals(tree.getMetrics().fingerprint, root.getMetrics().fingerprint);
+        assertFalse(root.isLeaf());
+        assertFalse(root.isExpanded());
+
+        LazyTree b = (LazyTree) root.getChild(0);
+        assertTrue(root.isExpanded());
+        assertFalse(b.isExpanded());
+        assertEquals(1, b.getIndex());
+        assertEquals("b", b.getLabel());
+        assertSame(root, b.getParent());
+        assertEquals(tree.getChild(0).getMetrics().fingerprint, b.getMetrics().fingerprint);
+        assertEquals(4, ((LazyTree) root.getChild(1)).getIndex());
+        assertTrue(root.getChild(1).isLeaf());
+
+        b.addChild(new Tree(TypeSet.type("foo"), "bar"));
+        tree.getChild(0).addChild(new Tree(TypeSet.type("foo"), "bar"));
+        assertEquals(3, b.getChildren().size());
+        assertEquals(tree.getMetrics().size, root.getMetrics().size);
+        assertEquals(tree.getMetrics().fingerprint, root.getMetrics().fingerprint);
+        assertEquals(tree.getChild(1).getMetrics().position, root.getChild(1).getMetrics().position);
+    }
+
+    @Test
+    public void testMatchLazyTrees() {
+        Matcher matcher = new CompositeMatchers.ClassicGumtree();
+        ITree src = TreeLoader.load("/action_v0.xml").getRoot();
+        ITree dst = TreeLoader.load("/action_v1.xml").getRoot();
+        ITree lazySrc = TreeLoader.loadLazy("/action_v0.xml").getRoot();
+        ITree lazyDst = TreeLoader.loadLazy("/action_v1.xml").getRoot();
+        MappingStore ms = matcher.match(src, dst);
+        MappingStore lazyMs = matcher.match(lazySrc, lazyDst);
+        assertEquals(ms.size(), lazyMs.size());
+        for (Mapping m : lazyMs) {
+            LazyTree first = (LazyTree) m.first;
+            LazyTree second = (LazyTree) m.second;
+            assertTrue(ms.has(TreeUtils.preOrder(src).get(first.getIndex()),
+                    TreeUtils.preOrder(dst).get(second.getIndex())));
+        }
+        EditScript script = new SimplifiedChawatheScriptGenerator().computeActions(lazyMs);
+        assertEquals(new SimplifiedChawatheScriptGenerator().computeActions(ms).size(), script.size());
+    }
+
+    @Test
+    public void testMapIdenticalLazyTreesWithoutCreatingThem() {
+        LazyTree src = (LazyTree) TreeLoader.loadLazy("/Dummy_big.xml").getRoot();
+        LazyTree dst = (LazyTree) TreeLoader.loadLazy("/Dummy_big.xml").getRoot();
+        MappingStore ms = new GreedySubtreeMatcher().match(src, dst);
+        assertEquals(src.getMetrics().size, ms.size());
+        assertFalse(src.isExpanded());
+        assertFalse(dst.isExpanded());
+
+        int index = src.getMetrics().size / 2;
+        LazyTree t = src.getNode(index);
+        assertEquals(index, t.getIndex());
+        assertSame(t, src.getDescendant(index - 1));
+        assertTrue(ms.isSrcMapped(t));
+        assertSame(dst.getNode(index), ms.getDstForSrc(t));
+        assertSame(t, ms.getSrcForDst(dst.getNode(index)));
+        assertTrue(src.isExpanded());
+
+        ITree copy = TreeLoader.load("/Dummy_big.xml").getRoot();
+        assertTrue(src.isIsomorphicTo(copy));
+        assertTrue(copy.getChild(0).isIsomorphicTo(dst.getChild(0)));
+        assertFalse(src.getChild(0).isIsomorphicTo(dst.getChild(1)));
+    }
+}
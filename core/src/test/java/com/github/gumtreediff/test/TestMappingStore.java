@@ -28,7 +28,12 @@ import com.github.gumtreediff.tree.TypeSet;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,6 +73,89 @@ public class TestMappingStore {
         assertTrue(ms.has(t3, t4));
     }
 
+    @Test
+    public void testNumberedMappings() {
+        ITree src = TreeLoader.getDummySrc();
+        ITree dst = TreeLoader.getDummyDst();
+        MappingStore ms = new MappingStore(src, dst);
+        ms.addMapping(src.getChild("0.1"), dst.getChild("0.0.0"));
+        ms.addMapping(src.getChild(0), dst.getChild(0));
+        ms.addMapping(src, dst);
+
+        int[] expected = {0, 1, 3};
+        int n = 0;
+        for (int i = ms.nextMappedSrc(0); i != MappingStore.NO_NODE; i = ms.nextMappedSrc(i + 1)) {
+            assertEquals(expected[n++], i);
+            assertSame(ms.getDstForSrc(ms.getSrc(i)), ms.getDstForSrc(i));
+        }
+        assertEquals(3, n);
+        int d = ms.nextMappedDst(0);
+        assertSame(dst, ms.getDst(d));
+        assertSame(src, ms.getSrcForDst(d));
+
+        ITree other = new Tree(TypeSet.type("foo"));
+        ms.addMapping(other, dst.getChild(1));
+        assertTrue(ms.has(other, dst.getChild(1)));
+        assertFalse(ms.isSrcMapped(src.getChild(1)));
+        assertEquals(4, ms.size());
+
+        ms.addMapping(src.getChild(0), dst.getChild(1));
+        assertEquals(3, ms.size());
+        assertFalse(ms.isSrcMapped(other));
+        assertFalse(ms.isDstMapped(dst.getChild(0)));
+        assertTrue(ms.has(src.getChild(0), dst.getChild(1)));
+
+        ITree b = src.getChild(0);
+        ITree d1 = src.getChild("0.1");
+        src.insertChild(new Tree(TypeSet.type("foo")), 0);
+        assertTrue(ms.has(src, dst));
+        assertTrue(ms.has(b, dst.getChild(1)));
+        assertTrue(ms.has(d1, dst.getChild("0.0.0")));
+        assertFalse(ms.isSrcMapped(src.getChild(0)));
+        assertEquals(3, ms.asSet().size());
+    }
+
+    @Test
+    public void testJournal() {
+        ITree src = TreeLoader.getDummySrc();
+        ITree dst = TreeLoader.getDummyDst();
+        MappingStore ms = new MappingStore(src, dst);
+        List<String> changes = new ArrayList<>();
+        ms.addListener(new MappingStore.Listener() {
+            @Override
+            public void mappingAdded(ITree src, ITree dst) {
+                changes.add("+" + src.getLabel() + dst.getLabel());
+            }
+
+            @Override
+            public void mappingRemoved(ITree src, ITree dst) {
+                changes.add("-" + src.getLabel() + dst.getLabel());
+            }
+        });
+        ms.addMapping(src, dst);
+        int first = ms.mark();
+        ms.addMapping(src.getChild(0), dst.getChild(0));
+        int second = ms.mark();
+        ms.addMapping(src.getChild(0), dst.getChild(1));
+        ms.removeMapping(src, dst);
+        assertEquals(1, ms.size());
+
+        ms.rollbackTo(second);
+        assertEquals(2, ms.size());
+        assertTrue(ms.has(src, dst));
+        assertTrue(ms.has(src.getChild(0), dst.getChild(0)));
+        ms.addMapping(src.getChild(1), dst.getChild(1));
+        ms.rollbackTo(first);
+        assertEquals(1, ms.size());
+        assertTrue(ms.has(src, dst));
+        assertEquals(Arrays.asList("+aa", "+bf", "-bf", "+bi", "-aa", "+aa", "-bi", "+bf", "+ei", "-ei", "-bf"),
+                changes);
+        assertThrows(IllegalArgumentException.class, () -> ms.rollbackTo(second));
+
+        ms.discardJournal();
+        assertThrows(IllegalArgumentException.class, () -> ms.rollbackTo(first));
+    }
+
     @Test
     public void testMultiMappingStore() {
         MultiMappingStore ms = new MultiMappingStore();
@@ -100,4 +188,75 @@ public class TestMappingStore {
         assertTrue(ms.isSrcUnique(t3));
         assertTrue(ms.isDstUnique(t4));
     }
+
+    @Test
+    public void testMultiMappingStoreNumbers() {
+        MultiMappingStore ms = new MultiMappingStore();
+        ITree t1 = new Tree(TypeSet.type("foo"));
+        ITree t2 = new Tree(TypeSet.type("foo"));
+        ITree t3 = new Tree(TypeSet.type("foo"));
+        assertFalse(ms.has(t1, t2));
+        assertTrue(ms.getDsts(t1).isEmpty());
+        assertEquals(0, ms.getDstCount(t1));
+
+        int s1 = ms.addSrc(t1);
+        int d2 = ms.addDst(t2);
+        int d3 = ms.addDst(t3);
+        assertEquals(s1, ms.addSrc(t1));
+        assertFalse(ms.hasSrc(t1));
+        ms.addMapping(s1, d3);
+        ms.addMapping(s1, d2);
+        ms.addMapping(s1, d3);
+        ms.addMapping(t3, t2);
+        assertEquals(3, ms.size());
+        assertEquals(2, ms.getDstCount(t1));
+        assertSame(t2, ms.getDst(t1, 0));
+        assertSame(t3, ms.getDst(t1, 1));
+        assertEquals(2, ms.getSrcCount(t2));
+        assertSame(t1, ms.getSrc(t2, 0));
+        assertSame(t3, ms.getSrc(t2, 1));
+        assertTrue(ms.getDsts(t1).contains(t3));
+        assertFalse(ms.getSrcs(t3).contains(t3));
+        assertEquals(2, ms.allMappedSrcs().size());
+        assertEquals(2, ms.allMappedDsts().size());
+        assertFalse(ms.has(t2, t1));
+
+        ms.removeMapping(t3, t2);
+        assertEquals(2, ms.size());
+        assertFalse(ms.hasSrc(t3));
+        assertEquals(1, ms.allMappedSrcs().size());
+        assertTrue(ms.isDstUnique(t2));
+    }
+
+    @Test
+    public void testMultiMappingStoreRemovals() {
+        ITree[] nodes = new ITree[6];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = new Tree(TypeSet.type("foo"));
+        MultiMappingStore ms = new MultiMappingStore();
+        Set<Mapping> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            ITree src = nodes[random.nextInt(nodes.length)];
+            ITree dst = nodes[random.nextInt(nodes.length)];
+            if (random.nextInt(3) == 0) {
+                ms.removeMapping(src, dst);
+                expected.remove(new Mapping(src, dst));
+            }
+            else {
+                ms.addMapping(src, dst);
+                expected.add(new Mapping(src, dst));
+            }
+            assertEquals(expected.size(), ms.size());
+            assertEquals(expected, ms.getMappings());
+            for (ITree t : nodes) {
+                long dstCount = expected.stream().filter(m -> m.first == t).count();
+                assertEquals(dstCount, ms.getDstCount(t));
+                assertEquals(dstCount > 0, ms.allMappedSrcs().contains(t));
+                assertEquals(expected.stream().filter(m -> m.second == t).count(), ms.getSrcs(t).size());
+            }
+            assertEquals(expected.stream().map(m -> m.first).distinct().count(), ms.allMappedSrcs().size());
+            assertEquals(expected.stream().map(m -> m.second).distinct().count(), ms.allMappedDsts().size());
+        }
+    }
 }
@@ -21,7 +21,11 @@
 package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.tree.AssociationMap;
+import com.github.gumtreediff.tree.CompactTreeStore;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.ImmutableTree;
+import com.github.gumtreediff.tree.MetadataKey;
 import com.github.gumtreediff.tree.TreeContext;
 import com.google.common.collect.Sets;
 import org.junit.jupiter.api.BeforeEach;
@@ -88,6 +92,33 @@ public class TestMetadata {
         assertEquals(v1, tc.getMetadata(key));
     }
 
+    @Test
+    public void testTypedKeys() throws Exception {
+        MetadataKey<Integer> count = MetadataKey.of("count", Integer.class);
+        assertSame(MetadataKey.of("count"), MetadataKey.of("count"));
+        assertEquals(MetadataKey.of("count").slot, count.slot);
+        assertNull(someNode.getMetadata(count));
+        assertNull(someNode.setMetadata(count, 1));
+        assertEquals(1, someNode.getMetadata(count));
+        assertEquals(1, someNode.getMetadata("count"));
+        assertEquals(1, someNode.setMetadata(count, 2));
+        someNode.setMetadata(key, v1);
+        MetadataKey<Integer> wrong = MetadataKey.of(key, Integer.class);
+        assertThrows(ClassCastException.class, () -> someNode.getMetadata(wrong));
+        assertEquals(2, someNode.setMetadata(count, null));
+        assertNull(someNode.getMetadata("count"));
+        assertEquals(v1, someNode.getMetadata(key));
+
+        someNode.setMetadata(MetadataKey.ID, "Type Foo");
+        tc.export(MetadataKey.ID, x -> x.toString());
+        ITree compact = CompactTreeStore.fromTree(someNode).getRoot();
+        assertEquals("Type Foo", compact.getMetadata(MetadataKey.ID));
+        assertEquals(v1, compact.setMetadata(MetadataKey.of(key, String.class), v2));
+        assertEquals(v2, compact.getMetadata(key));
+        assertEquals("Type Foo", new ImmutableTree(someNode).getMetadata(MetadataKey.ID));
+        assertEquals("(() (type0 \"\" ((0 0)(:id \"Type Foo\") ) ())", TreeIoUtils.toLisp(tc).toString());
+    }
+
     @Test
     public void testLocalIterator() throws Exception {
         String[] keys = {key, v1, v2, v3};
@@ -112,6 +143,27 @@ public class TestMetadata {
         assertEquals(0, seen.size(),"Some metadata are not iterated");
     }
 
+    @Test
+    public void testAssociationMap() throws Exception {
+        AssociationMap map = new AssociationMap();
+        String[] keys = {key, v1, v2, v3};
+        for (int i = 0; i < keys.length; i++)
+            map.set(keys[i], i);
+        assertEquals(1, map.remove(v1));
+        assertNull(map.remove(v1));
+        Iterator<Entry<String, Object>> it = map.iterator();
+        assertEquals(key, it.next().getKey());
+        assertEquals(v2, it.next().getKey());
+        assertEquals(v3, it.next().getKey());
+        assertFalse(it.hasNext());
+
+        MetadataKey<String> wrong = MetadataKey.of(v2, String.class);
+        assertThrows(ClassCastException.class, () -> map.set(wrong, "foo"));
+        assertEquals(2, map.get(v2));
+        assertThrows(ClassCastException.class, () -> map.remove(wrong));
+        assertEquals(2, map.get(v2));
+    }
+
     @Test
     public void testGlobalIterator() throws Exception {
         final String v4 = "lastkey";
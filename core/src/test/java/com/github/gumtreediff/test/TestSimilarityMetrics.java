@@ -19,13 +19,19 @@
 
 package com.github.gumtreediff.test;
 
+import com.github.gumtreediff.matchers.CandidateIndex;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.SimilarityMetrics;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.Tree;
+import com.github.gumtreediff.tree.TreeUtils;
 import com.github.gumtreediff.tree.TypeSet;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TestSimilarityMetrics {
@@ -53,6 +59,89 @@ public class TestSimilarityMetrics {
         assertEquals(0.75D, SimilarityMetrics.overlapSimilarity(ms.src, ms.dst, ms));
     }
 
+    @Test
+    public void testCommonDescendantsFollowMappings() {
+        MappingStore ms = getTestData();
+        ITree b1 = ms.src.getChild(0);
+        ITree b2 = ms.dst.getChild(0);
+        assertEquals(3, ms.numberOfCommonDescendants(ms.src, ms.dst));
+        assertEquals(2, ms.numberOfCommonDescendants(b1, b2));
+        assertEquals(0, ms.numberOfCommonDescendants(b1, ms.dst.getChild(2)));
+        assertFalse(ms.hasUnmappedSrcChildren(b1));
+        assertTrue(ms.hasUnmappedSrcChildren(ms.src));
+
+        ms.removeMapping(b1.getChild(0), b2.getChild(0));
+        assertEquals(1, ms.numberOfCommonDescendants(b1, b2));
+        assertTrue(ms.hasUnmappedDstChildren(b2));
+        ms.addMapping(ms.src.getChild(1), ms.dst.getChild(2));
+        ms.addMapping(b1.getChild(0), ms.dst.getChild(1));
+        assertEquals(4, ms.numberOfCommonDescendants(ms.src, ms.dst));
+        assertEquals(1, ms.numberOfCommonDescendants(b1, b2));
+        assertEquals(0.5D, SimilarityMetrics.diceSimilarity(b1, b2, ms));
+
+        ITree other = new Tree(TypeSet.type("y"), "y");
+        other.addChild(new Tree(TypeSet.type("z"), "z"));
+        ms.addMapping(other.getChild(0), b2.getChild(0));
+        assertEquals(1, ms.numberOfCommonDescendants(other, b2));
+        assertEquals(4, ms.numberOfCommonDescendants(ms.src, ms.dst));
+    }
+
+    @Test
+    public void testCommonDescendantsOfRandomMappings() {
+        Random random = new Random(7);
+        ITree src = randomTree(random, 200);
+        ITree dst = randomTree(random, 200);
+        List<ITree> srcs = TreeUtils.preOrder(src);
+        List<ITree> dsts = TreeUtils.preOrder(dst);
+        MappingStore ms = new MappingStore(src, dst);
+        for (int round = 0; round < 300; round++) {
+            ITree s = srcs.get(random.nextInt(srcs.size()));
+            ITree d = dsts.get(random.nextInt(dsts.size()));
+            if (random.nextInt(4) == 0)
+                ms.removeMapping(s, ms.getDstForSrc(s));
+            else
+                ms.addMapping(s, d);
+            int expected = 0;
+            for (ITree t : s.getDescendants()) {
+                ITree m = ms.getDstForSrc(t);
+                if (m != null && m.isDescendantOf(d))
+                    expected++;
+            }
+            assertEquals(expected, ms.numberOfCommonDescendants(s, d));
+        }
+    }
+
+    private static ITree randomTree(Random random, int size) {
+        List<ITree> nodes = new ArrayList<>();
+        nodes.add(new Tree(TypeSet.type("a")));
+        while (nodes.size() < size) {
+            ITree t = new Tree(TypeSet.type("a"));
+            nodes.get(random.nextInt(nodes.size())).addChild(t);
+            nodes.add(t);
+        }
+        return nodes.get(0);
+    }
+
+    @Test
+    public void testCandidateIndex() {
+        MappingStore ms = getTestData();
+        CandidateIndex candidates = new CandidateIndex(ms);
+        assertEquals(1, candidates.find(ms.src));
+        assertSame(ms.dst, candidates.getCandidate(0));
+        assertEquals(3, candidates.getCommonDescendants(0));
+        assertEquals(0.6D, SimilarityMetrics.chawatheSimilarity(ms.src, ms.dst, candidates.getCommonDescendants(0)));
+
+        ITree b1 = ms.src.getChild(0);
+        ITree b2 = ms.dst.getChild(0);
+        assertEquals(0, candidates.find(b1));
+        ms.removeMapping(b1, b2);
+        assertEquals(1, candidates.find(b1));
+        assertSame(b2, candidates.getCandidate(0));
+        assertEquals(2, candidates.getCommonDescendants(0));
+        assertEquals(ms.numberOfCommonDescendants(b1, b2), candidates.getCommonDescendants(0));
+        assertEquals(0, candidates.find(b1.getChild(0)));
+    }
+
     private static MappingStore getTestData() {
         ITree t1 = TreeLoader.getDummySrc();
         ITree t2 = TreeLoader.getDummySrc();
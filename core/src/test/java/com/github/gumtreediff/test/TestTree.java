@@ -20,9 +20,15 @@
 
 package com.github.gumtreediff.test;
 
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
 
+import com.github.gumtreediff.actions.SimplifiedChawatheScriptGenerator;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.*;
 import org.junit.jupiter.api.Test;
 
@@ -94,6 +100,153 @@ public class TestTree {
         assertEquals(0, t2.getChildPosition(t4));
     }
 
+    @Test
+    public void testChildPositions() {
+        ITree root = new Tree(TypeSet.type("foo"));
+        for (int i = 0; i < 10000; i++)
+            root.addChild(new Tree(TypeSet.type("bar"), Integer.toString(i)));
+        ITree last = root.getChild(9999);
+        assertEquals(9999, last.positionInParent());
+        ITree inserted = new Tree(TypeSet.type("bar"));
+        root.insertChild(inserted, 10);
+        assertEquals(10, inserted.positionInParent());
+        assertEquals(10000, last.positionInParent());
+        root.getChildren().remove(0);
+        assertEquals(9, root.getChildPosition(inserted));
+        assertEquals(9999, root.getChildren().indexOf(last));
+        ITree replacement = new Tree(TypeSet.type("bar"));
+        replacement.setParent(root);
+        ITree replaced = root.getChildren().set(9, replacement);
+        assertEquals(-1, root.getChildPosition(replaced));
+        assertFalse(root.getChildren().contains(replaced));
+        for (int i = 0; i < root.getChildren().size(); i++)
+            assertEquals(i, root.getChild(i).positionInParent());
+
+        ITree fake = new FakeTree(last);
+        assertEquals(0, fake.getChildPosition(last));
+        assertEquals(9999, last.positionInParent());
+        assertEquals(0, fake.getChildPosition(last));
+        assertEquals(-1, fake.getChildPosition(root.getChild(0)));
+
+        ITree immutable = new ImmutableTree(TreeLoader.getDummySrc());
+        assertEquals(1, immutable.getChild(1).positionInParent());
+    }
+
+    @Test
+    public void testAncestorIndex() {
+        TreeContext ctx = TreeLoader.load("/Dummy_v0.xml");
+        assertAncestorQueries(ctx.getAncestorIndex(), ctx.getRoot());
+        ITree compact = TreeLoader.loadCompact("/Dummy_v0.xml").getRoot();
+        assertAncestorQueries(AncestorIndex.of(compact), compact);
+
+        ITree root = TreeLoader.getDummySrc();
+        AncestorIndex index = AncestorIndex.of(root.getChild("0.0"));
+        assertSame(root, index.getRoot());
+        assertSame(index, AncestorIndex.of(root));
+        ITree c = root.getChild("0.0");
+        ITree e = root.getChild(1);
+        assertSame(root.getChild(0), index.getLowestCommonAncestor(c, root.getChild("0.1")));
+        assertSame(root, index.getLowestCommonAncestor(c, e));
+        assertNull(index.getAncestor(c, 3));
+        c.setParentAndUpdateChildren(e);
+        AncestorIndex updated = AncestorIndex.of(root);
+        assertNotSame(index, updated);
+        assertSame(e, updated.getLowestCommonAncestor(c, e));
+        assertSame(e, updated.getAncestor(c, 1));
+        assertTrue(updated.isAncestorOf(e, c));
+        assertThrows(IllegalArgumentException.class, () -> updated.getDepth(new Tree(TypeSet.type("foo"))));
+
+        ITree[] chain = new ITree[1000];
+        chain[0] = new Tree(TypeSet.type("foo"));
+        for (int i = 1; i < chain.length; i++) {
+            chain[i] = new Tree(TypeSet.type("foo"));
+            chain[i - 1].addChild(chain[i]);
+        }
+        ITree branch = new Tree(TypeSet.type("bar"));
+        chain[357].addChild(branch);
+        AncestorIndex deep = AncestorIndex.of(branch);
+        for (int i = 0; i < chain.length; i++) {
+            assertSame(chain[i], deep.getAncestor(chain[chain.length - 1], chain.length - 1 - i));
+            assertSame(chain[Math.min(i, 357)], deep.getLowestCommonAncestor(chain[i], branch));
+        }
+    }
+
+    private static void assertAncestorQueries(AncestorIndex index, ITree root) {
+        List<ITree> nodes = TreeUtils.preOrder(root);
+        assertEquals(nodes.size(), index.size());
+        for (ITree t : nodes) {
+            List<ITree> parents = t.getParents();
+            assertEquals(parents.size(), index.getDepth(t));
+            assertSame(t, index.getNode(index.getId(t)));
+            assertSame(t, index.getAncestor(t, 0));
+            for (int k = 0; k < parents.size(); k++)
+                assertSame(parents.get(k), index.getAncestor(t, k + 1));
+            for (ITree other : nodes) {
+                assertEquals(parents.contains(other), index.isAncestorOf(other, t));
+                ITree lca = other;
+                while (lca != t && !parents.contains(lca))
+                    lca = lca.getParent();
+                assertSame(lca, index.getLowestCommonAncestor(t, other));
+            }
+        }
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        TreeContext ctx = TreeLoader.load("/Dummy_v0.xml");
+        ITree root = ctx.getRoot();
+        ITree child = root.getChild(0);
+        ctx.freeze();
+        assertTrue(ctx.isFrozen());
+        assertTrue(((AbstractTree) child).isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> child.setLabel("foo"));
+        assertThrows(UnsupportedOperationException.class, () -> child.setType(TypeSet.type("foo")));
+        assertThrows(UnsupportedOperationException.class, () -> child.setPos(12));
+        assertThrows(UnsupportedOperationException.class, () -> child.setMetadata("foo", "bar"));
+        assertThrows(UnsupportedOperationException.class, () -> child.setParent(null));
+        assertThrows(UnsupportedOperationException.class, () -> root.addChild(new Tree(TypeSet.type("foo"))));
+        assertThrows(UnsupportedOperationException.class, () -> root.getChildren().remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> ctx.setMetadata("foo", "bar"));
+        assertThrows(UnsupportedOperationException.class, () -> ctx.setRoot(child));
+        assertEquals(0, child.positionInParent());
+        assertTrue(child.getChild(0).isDescendantOf(root));
+
+        ITree copy = root.deepCopy();
+        assertTrue(copy.isIsomorphicTo(root));
+        assertDoesNotThrow(() -> copy.getChild(0).setLabel("foo"));
+        Iterator<ITree> it = TreeUtils.preOrderIterator(root);
+        for (ITree t : TreeUtils.preOrder(root))
+            assertSame(t, it.next());
+        assertEquals(0, child.positionInParent());
+
+        ITree compact = TreeLoader.loadCompact("/Dummy_v0.xml").getRoot();
+        ((AbstractTree) compact).freeze();
+        assertThrows(UnsupportedOperationException.class, () -> compact.getChild(0).setLabel("foo"));
+        assertEquals(root.getMetrics().hash, compact.getMetrics().hash);
+
+        int expected = new CompositeMatchers.ClassicGumtree().match(TreeLoader.getDummySrc(),
+                TreeLoader.getDummyDst()).size();
+        Thread[] threads = new Thread[4];
+        int[] sizes = new int[threads.length];
+        ITree frozenSrc = TreeLoader.getDummySrc();
+        ((AbstractTree) frozenSrc).freeze();
+        for (int i = 0; i < threads.length; i++) {
+            int n = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    MappingStore ms = new CompositeMatchers.ClassicGumtree().match(frozenSrc, TreeLoader.getDummyDst());
+                    new SimplifiedChawatheScriptGenerator().computeActions(ms);
+                    sizes[n] = ms.size();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        for (int size : sizes)
+            assertEquals(expected, size);
+    }
+
     @Test
     public void testDeepCopy() {
         ITree root = TreeLoader.getDummySrc();
@@ -114,6 +267,61 @@ public class TestTree {
         assertNotEquals(rootWithFake.getChild(0), rootWithFakeCpy.getChild(0));
     }
 
+    @Test
+    public void testDeriveTree() {
+        TreeContext context = TreeLoader.load("/Dummy_v0.xml");
+        ITree root = context.getRoot();
+        root.getChild(0).setMetadata("foo", "bar");
+        String before = root.toTreeString();
+        context.freeze();
+
+        TreeContext derived = context.deriveTree();
+        ITree copy = derived.getRoot();
+        assertTrue(root.isIsomorphicTo(copy));
+        assertNotEquals(root.getChild(0), copy.getChild(0));
+        assertEquals("bar", copy.getChild(0).getMetadata("foo"));
+
+        copy.getChild("0.1").setLabel("z");
+        copy.getChild(0).setMetadata("foo", null);
+        copy.getChild(1).addChild(new Tree(TypeSet.type("3"), "f"));
+        copy.getChildren().remove(0);
+        assertEquals(3, copy.getMetrics().size);
+        assertEquals("f", copy.getChild("0.0").getLabel());
+        assertEquals(before, root.toTreeString());
+        assertEquals("bar", root.getChild(0).getMetadata("foo"));
+    }
+
+    @Test
+    public void testContextBuilder() {
+        TreeContext context = new TreeContext();
+        TreeContext.Builder builder = context.builder(2);
+        ITree root = builder.startNode(TypeSet.type("0"), "a", 0, 10);
+        builder.startNode(TypeSet.type("1"), "b", 0, 5);
+        builder.startNode(TypeSet.type("3"), "c", 0, 1);
+        builder.endNode();
+        ITree d = builder.startNode(TypeSet.type("3"), "d", 2, 1);
+        assertSame(d, builder.getCurrent());
+        builder.endNode();
+        assertEquals(2, builder.endNode().getChildren().size());
+        builder.startNode(TypeSet.type("2"), "e", 6, 4);
+        assertSame(context, builder.build());
+        assertNull(builder.getCurrent());
+        assertThrows(IllegalStateException.class, builder::endNode);
+        assertThrows(IllegalStateException.class, () -> builder.startNode(TypeSet.type("0"), "h", 0, 0));
+
+        assertSame(root, context.getRoot());
+        assertTrue(root.isIsomorphicTo(TreeLoader.getDummySrc()));
+        assertSame(root, d.getParent().getParent());
+        assertEquals(1, d.positionInParent());
+        assertEquals(10, root.getChild(1).getEndPos());
+
+        // The closed nodes, leaves included, can receive new children.
+        d.addChild(new Tree(TypeSet.type("4"), "f"));
+        root.addChild(new Tree(TypeSet.type("4"), "g"));
+        assertEquals(d, d.getChild(0).getParent());
+        assertEquals(2, root.getChild(2).positionInParent());
+    }
+
     @Test
     public void testIsomophism() {
         ITree root = TreeLoader.getDummySrc();
@@ -185,6 +393,99 @@ public class TestTree {
         assertFalse(t1.hasSameTypeAndLabel(t4));
     }
 
+    @Test
+    public void testLabelDictionary() {
+        TreeContext ctx1 = new TreeContext();
+        TreeContext ctx2 = new TreeContext();
+        ITree t1 = ctx1.createTree(TypeSet.type("foo"), "hello");
+        ITree t2 = ctx1.createTree(TypeSet.type("foo"), new String("hello"));
+        ITree t3 = ctx2.createTree(TypeSet.type("foo"), "hello");
+        ITree t4 = ctx1.createTree(TypeSet.type("foo"));
+        ctx1.setRoot(t1);
+        t1.addChild(t2);
+        t1.addChild(t4);
+        ctx2.setRoot(t3);
+        assertSame(t1.getLabel(), t2.getLabel());
+        assertEquals(2, ctx1.getLabels().size());
+        assertEquals(LabelSet.NO_LABEL_ID, ctx1.getLabels().id(t4.getLabel()));
+        assertTrue(t1.hasSameTypeAndLabel(t2));
+        assertTrue(t1.hasSameTypeAndLabel(t3));
+        assertFalse(t1.hasSameLabel(t4));
+        t4.setLabel("hello");
+        assertTrue(t1.hasSameLabel(t4));
+        assertEquals(2, ctx1.getLabels().size());
+        assertTrue(t1.hasSameLabel(new Tree(TypeSet.type("foo"), "hello")));
+
+        ctx2.setLabels(ctx1.getLabels());
+        assertSame(ctx1.getLabels(), ctx2.getLabels());
+        assertSame(t1.getLabel(), t3.getLabel());
+        assertTrue(t3.hasSameLabel(t1));
+        assertTrue(t1.deepCopy().hasSameLabel(t3));
+    }
+
+    @Test
+    public void testTypeIds() throws Exception {
+        Type foo = TypeSet.type("foo");
+        assertSame(foo, TypeSet.type(foo.id));
+        assertSame(Type.NO_TYPE, TypeSet.type(Type.NO_TYPE.id));
+        assertTrue(foo.id < TypeSet.size());
+        assertThrows(IllegalArgumentException.class, () -> TypeSet.type(TypeSet.size()));
+
+        int before = TypeSet.size();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++)
+                    TypeSet.type("concurrent_type_" + j);
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertEquals(before + 100, TypeSet.size());
+        for (int j = 0; j < 100; j++) {
+            Type t = TypeSet.type("concurrent_type_" + j);
+            assertSame(t, TypeSet.type(t.id));
+        }
+    }
+
+    @Test
+    public void testTypeInitializationFromSeveralThreads() throws Exception {
+        // Each loader initializes Type and TypeSet anew, one thread starting from each class.
+        URL classes = TypeSet.class.getProtectionDomain().getCodeSource().getLocation();
+        for (int i = 0; i < 50; i++) {
+            ClassLoader loader = new URLClassLoader(new URL[] {classes}, ClassLoader.getPlatformClassLoader());
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread[] threads = new Thread[] {
+                new Thread(() -> {
+                    try {
+                        barrier.await();
+                        Class.forName(TypeSet.class.getName(), true, loader)
+                                .getMethod("type", String.class).invoke(null, "foo");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }),
+                new Thread(() -> {
+                    try {
+                        barrier.await();
+                        Class.forName(Type.class.getName(), true, loader);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+            };
+            for (Thread t : threads) {
+                t.setDaemon(true);
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join(5000);
+                assertFalse(t.isAlive());
+            }
+        }
+    }
+
     @Test
     public void testToString() {
         ITree t1 = new Tree(TypeSet.type("foo"));
@@ -22,6 +22,7 @@ package com.github.gumtreediff.test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -41,6 +42,36 @@ public class TestTreeUtils {
         assertEquals(3, root.getChild(1).getMetrics().position);
     }
 
+    @Test
+    public void testPreOrderNumbering() {
+        ITree big = TreeLoader.getDummyBig();
+        ITree compact = CompactTreeStore.fromTree(big).getRoot();
+        for (ITree root : new ITree[] {big, compact}) {
+            List<ITree> nodes = TreeUtils.preOrder(root);
+            for (int i = 0; i < nodes.size(); i++) {
+                ITree t = nodes.get(i);
+                assertEquals(i, t.getMetrics().preOrder);
+                List<ITree> descendants = t.getDescendants();
+                assertEquals(t.getMetrics().size - 1, descendants.size());
+                for (int j = 0; j < descendants.size(); j++) {
+                    assertEquals(nodes.get(i + 1 + j), descendants.get(j));
+                    assertEquals(nodes.get(i + 1 + j), t.getDescendant(j));
+                }
+                for (ITree other : nodes)
+                    assertEquals(other.getParents().contains(t), other.isDescendantOf(t));
+            }
+        }
+
+        ITree f = big.getChild(2);
+        assertTrue(big.getChild("2.1.0").isDescendantOf(f));
+        big.getChild(0).addChild(f.getChildren().remove(1));
+        assertFalse(big.getChild("0.2.0").isDescendantOf(f));
+        assertTrue(big.getChild("0.2.0").isDescendantOf(big.getChild(0)));
+        assertEquals(4, big.getChild(0).getDescendants().size());
+        assertEquals("m", big.getChild(0).getDescendant(3).getLabel());
+        assertEquals(7, big.getChild(2).getMetrics().preOrder);
+    }
+
     @Test
     public void testDepth() {
         ITree root = TreeLoader.getDummySrc();
@@ -123,6 +154,28 @@ public class TestTreeUtils {
         assertNotEquals(t0.getMetrics().structureHash, t3.getMetrics().structureHash);
     }
 
+    @Test
+    public void testFingerprint() {
+        ITree t0 = TreeLoader.getDummySrc();
+        ITree t1 = TreeLoader.getDummySrc();
+        ITree t2 = t1.deepCopy();
+        t2.setLabel("foo");
+        ITree t3 = t2.deepCopy();
+        t3.addChild(new Tree(TypeSet.type("foo")));
+        ITree t4 = t1.deepCopy();
+        t4.getChildren().add(t4.getChildren().remove(0));
+        assertEquals(t0.getMetrics().fingerprint, t1.getMetrics().fingerprint);
+        assertNotEquals(t0.getMetrics().fingerprint, t2.getMetrics().fingerprint);
+        assertNotEquals(t0.getMetrics().fingerprint, t3.getMetrics().fingerprint);
+        assertNotEquals(t0.getMetrics().fingerprint, t4.getMetrics().fingerprint);
+        assertEquals(t0.getMetrics().structureFingerprint, t1.getMetrics().structureFingerprint);
+        assertEquals(t0.getMetrics().structureFingerprint, t2.getMetrics().structureFingerprint);
+        assertNotEquals(t0.getMetrics().structureFingerprint, t3.getMetrics().structureFingerprint);
+        assertNotEquals(t0.getMetrics().fingerprint, t0.getMetrics().structureFingerprint);
+        // Fingerprints only depend on type names and labels, not on the JVM run.
+        assertEquals(-1552552492744962923L, t0.getMetrics().fingerprint);
+    }
+
     @Test
     public void testHeight() {
         ITree root = TreeLoader.getDummySrc();
@@ -133,6 +186,50 @@ public class TestTreeUtils {
         assertEquals(0, root.getChild(1).getMetrics().height); // depth of e
     }
 
+    @Test
+    public void testIncrementalMetrics() {
+        ITree root = TreeLoader.getDummyBig();
+        root.getMetrics();
+        TreeMetrics unchanged = root.getChild(0).getMetrics();
+
+        root.getChild("2.0.0").setLabel("foo");
+        assertSameMetrics(root);
+        assertSame(unchanged, root.getChild(0).getMetrics());
+
+        root.getChild(1).addChild(new Tree(TypeSet.type("foo"), "bar"));
+        root.getChild(0).insertChild(new Tree(TypeSet.type("foo")), 0);
+        root.getChild("2.0").setType(TypeSet.type("bar"));
+        assertSameMetrics(root);
+
+        ITree moved = root.getChild(0).getChildren().remove(1);
+        root.getChild("2.0").insertChild(moved, 0);
+        root.getChild(1).setParentAndUpdateChildren(root.getChild(0));
+        root.updateMetrics();
+        assertSameMetrics(root);
+
+        ITree removed = root.getChild(0);
+        root.getChildren().remove(0);
+        assertEquals(1, removed.getChild(0).getMetrics().depth);
+        assertSameMetrics(removed);
+        assertSameMetrics(root);
+    }
+
+    private static void assertSameMetrics(ITree tree) {
+        Iterator<ITree> copies = TreeUtils.preOrderIterator(tree.deepCopy());
+        for (ITree t : tree.preOrder()) {
+            TreeMetrics expected = copies.next().getMetrics();
+            TreeMetrics actual = t.getMetrics();
+            assertEquals(expected.size, actual.size);
+            assertEquals(expected.height, actual.height);
+            assertEquals(expected.hash, actual.hash);
+            assertEquals(expected.structureHash, actual.structureHash);
+            assertEquals(expected.fingerprint, actual.fingerprint);
+            assertEquals(expected.structureFingerprint, actual.structureFingerprint);
+            assertEquals(expected.depth, actual.depth);
+            assertEquals(expected.position, actual.position);
+        }
+    }
+
     @Test
     public void testPostOrder() {
         ITree src = TreeLoader.getDummySrc();
@@ -187,6 +284,48 @@ public class TestTreeUtils {
                 "f", "g", "h", "i", "j", "k", "l", "m");
     }
 
+    @Test
+    public void testTraversalCallbacks() {
+        ITree src = TreeLoader.getDummySrc();
+        StringBuilder events = new StringBuilder();
+        TreeUtils.depthFirst(src, new TreeVisitor() {
+            @Override
+            public void startTree(ITree tree) {
+                events.append('+').append(tree.getLabel());
+            }
+
+            @Override
+            public void endTree(ITree tree) {
+                events.append('-').append(tree.getLabel());
+            }
+        });
+        assertEquals("+a+b+c-c+d-d-b+e-e-a", events.toString());
+        List<ITree> bfs = new ArrayList<>();
+        TreeUtils.breadthFirst(TreeLoader.getDummyBig(), bfs::add);
+        compareListIterator(bfs.iterator(), "a", "b", "e", "f", "c", "d", "g", "l", "h", "m", "i", "j", "k");
+    }
+
+    @Test
+    public void testDeepTree() {
+        int depth = 100000;
+        ITree root = new Tree(TypeSet.type("foo"));
+        ITree leaf = root;
+        for (int i = 1; i < depth; i++) {
+            ITree child = new Tree(TypeSet.type("foo"));
+            leaf.addChild(child);
+            leaf = child;
+        }
+        assertEquals(depth, TreeUtils.preOrder(root).size());
+        assertEquals(leaf, TreeUtils.postOrder(root).get(0));
+        assertEquals(depth - 1, leaf.getParents().size());
+        assertEquals(depth, root.getMetrics().size);
+        assertEquals(depth - 1, leaf.getMetrics().depth);
+        ITree copy = root.deepCopy();
+        assertTrue(root.isIsomorphicTo(copy));
+        assertTrue(root.isIsoStructuralTo(copy));
+        assertTrue(new ImmutableTree(root).isIsomorphicTo(copy));
+    }
+
     void compareListIterator(List<ITree> lst, Iterator<ITree> it) {
         for (ITree i: lst) {
             assertEquals(i, it.next());
@@ -20,6 +20,7 @@
 
 package com.github.gumtreediff.test;
 
+import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
@@ -28,7 +29,10 @@ import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.tree.TreeContext;
 import org.junit.jupiter.api.Test;
 
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestZsMatcher {
@@ -63,4 +67,58 @@ public class TestZsMatcher {
         assertTrue(mappings.has(src.getChild("0.2"), dst.getChild(2)));
     }
 
+    @Test
+    public void testReusedMatcher() {
+        ZsMatcher matcher = new ZsMatcher();
+        Pair<TreeContext, TreeContext> custom = TreeLoader.getZsCustomPair();
+        Pair<TreeContext, TreeContext> slide = TreeLoader.getZsSlidePair();
+        for (int i = 0; i < 2; i++) {
+            MappingStore mappings = matcher.match(custom.first.getRoot(), custom.second.getRoot());
+            assertEquals(new ZsMatcher().match(custom.first.getRoot(), custom.second.getRoot()).asSet(),
+                    mappings.asSet());
+            assertEquals(6, mappings.size());
+            assertEquals(5, matcher.match(slide.first.getRoot(), slide.second.getRoot()).size());
+        }
+    }
+
+    @Test
+    public void testSharedMatcher() throws Exception {
+        ZsMatcher matcher = new ZsMatcher();
+        Pair<TreeContext, TreeContext> custom = TreeLoader.getZsCustomPair();
+        Pair<TreeContext, TreeContext> slide = TreeLoader.getZsSlidePair();
+        Set<Mapping> expectedCustom = new ZsMatcher().match(custom.first.getRoot(), custom.second.getRoot()).asSet();
+        Set<Mapping> expectedSlide = new ZsMatcher().match(slide.first.getRoot(), slide.second.getRoot()).asSet();
+        boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    if (!expectedCustom.equals(matcher.match(custom.first.getRoot(),
+                            custom.second.getRoot()).asSet()))
+                        failed[0] = true;
+                    if (!expectedSlide.equals(matcher.match(slide.first.getRoot(), slide.second.getRoot()).asSet()))
+                        failed[0] = true;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertFalse(failed[0]);
+    }
+
+    @Test
+    public void testAddAllowedMappings() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getZsSlidePair();
+        ITree src = trees.first.getRoot();
+        ITree dst = trees.second.getRoot();
+        MappingStore mappings = new MappingStore(src, dst);
+        mappings.addMapping(src.getChild("0.0.0"), dst.getChild(2));
+        new ZsMatcher().addAllowedMappings(src, dst, mappings);
+        assertEquals(4, mappings.size());
+        assertTrue(mappings.has(src, dst));
+        assertTrue(mappings.has(src.getChild("0.0.0"), dst.getChild(2)));
+        assertTrue(mappings.has(src.getChild("0.0"), dst.getChild(0)));
+        assertTrue(mappings.has(src.getChild("0.1"), dst.getChild("1.0")));
+    }
 }
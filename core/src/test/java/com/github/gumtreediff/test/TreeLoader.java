@@ -139,4 +139,20 @@ public class TreeLoader {
             throw new RuntimeException(String.format("Unable to load test ressorce: %s", name), e);
         }
     }
+
+    public static TreeContext loadCompact(String name) {
+        try {
+            return TreeIoUtils.fromCompactXml().generateFrom().stream(TreeLoader.class.getResourceAsStream(name));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to load test ressorce: %s", name), e);
+        }
+    }
+
+    public static TreeContext loadLazy(String name) {
+        try {
+            return TreeIoUtils.fromLazyXml().generateFrom().stream(TreeLoader.class.getResourceAsStream(name));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to load test ressorce: %s", name), e);
+        }
+    }
 }
@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.List;
 import java.util.Map;
 
 import com.github.gumtreediff.gen.SyntaxException;
@@ -39,7 +38,7 @@ import com.github.gumtreediff.tree.TreeContext;
 
 public abstract class AbstractAntlr3TreeGenerator<L extends Lexer, P extends Parser> extends TreeGenerator {
 
-    private Deque<ITree> trees = new ArrayDeque<>();
+    private static final CommonTree END_OF_NODE = new CommonTree();
 
     protected static Map<Integer, Integer> chars;
 
@@ -95,31 +94,31 @@ public abstract class AbstractAntlr3TreeGenerator<L extends Lexer, P extends Par
         return type(names[tokenType]);
     }
 
-    @SuppressWarnings("unchecked")
-    protected void buildTree(TreeContext context, CommonTree ct) {
-        int type = ct.getType();
-        Type tokenName = getTokenName(type);
-        String label = ct.getText();
-        if (tokenName.name.equals(label)) // FIXME
-            label = ITree.NO_LABEL;
-
-        ITree t = context.createTree(tokenName, label);
-
-        int start = startPos(ct.getTokenStartIndex());
-        int stop = stopPos(ct.getTokenStopIndex());
-        t.setPos(start);
-        t.setLength(stop - start + 1); // FIXME check if this + 1 make sense ?
-
-        if (trees.isEmpty())
-            context.setRoot(t);
-        else
-            t.setParentAndUpdateChildren(trees.peek());
-
-        if (ct.getChildCount() > 0) {
-            trees.push(t);
-            for (CommonTree cct : (List<CommonTree>) ct.getChildren())
-                buildTree(context, cct);
-            trees.pop();
+    protected void buildTree(TreeContext context, CommonTree root) {
+        TreeContext.Builder builder = context.builder(tokens.size());
+        // Nodes are processed with an explicit stack, since deep parse trees overflow the call stack.
+        // A node is closed when the marker pushed below its children is popped.
+        Deque<CommonTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            CommonTree ct = stack.pop();
+            if (ct == END_OF_NODE) {
+                builder.endNode();
+                continue;
+            }
+            int type = ct.getType();
+            Type tokenName = getTokenName(type);
+            String label = ct.getText();
+            if (tokenName.name.equals(label)) // FIXME
+                label = ITree.NO_LABEL;
+
+            int start = startPos(ct.getTokenStartIndex());
+            int stop = stopPos(ct.getTokenStopIndex());
+            builder.startNode(tokenName, label, start, stop - start + 1); // FIXME check if this + 1 make sense ?
+
+            stack.push(END_OF_NODE);
+            for (int i = ct.getChildCount() - 1; i >= 0; i--)
+                stack.push((CommonTree) ct.getChild(i));
         }
     }
 
@@ -32,6 +32,7 @@ import com.github.gumtreediff.tree.Type;
 import com.github.gumtreediff.tree.TreeContext;
 
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.Token;
@@ -41,7 +42,7 @@ import static com.github.gumtreediff.tree.TypeSet.type;
 
 public abstract class AbstractAntlr4TreeGenerator extends TreeGenerator {
 
-    private Deque<ITree> trees = new ArrayDeque<>();
+    private static final ParseTree END_OF_NODE = new ParserRuleContext();
 
     protected static Map<Integer, Integer> chars;
 
@@ -84,38 +85,38 @@ public abstract class AbstractAntlr4TreeGenerator extends TreeGenerator {
         return type(names[ruleType]);
     }
 
-    @SuppressWarnings("unchecked")
-    protected void buildTree(TreeContext context, ParseTree pt) {
-        Object payload = pt.getPayload(); //makeOrGetType();
-        Type type = null;
-        if (payload instanceof Token)
-            type = getTokenName(((Token)payload).getType());
-        else if (payload instanceof RuleContext)
-            type = getRuleName(((RuleContext)payload).getRuleIndex());
-
-        String label = pt.getText();
-        if (type.name.equals(label)) // FIXME
-            label = ITree.NO_LABEL;
-
-        ITree t = context.createTree(type, label);
-
-//        int start = startPos(pt.getSourceInterval().a);
-//        int stop = stopPos(pt.getSourceInterval().b);
-        int start = pt.getSourceInterval().a;
-        int stop = pt.getSourceInterval().b;
-        t.setPos(start);
-        t.setLength(stop - start + 1); // FIXME check if this + 1 make sense ?
-
-        if (trees.isEmpty())
-            context.setRoot(t);
-        else
-            t.setParentAndUpdateChildren(trees.peek());
-
-        if (pt.getChildCount() > 0) {
-            trees.push(t);
-            for (int i = 0; i < pt.getChildCount(); i ++)
-                buildTree(context, pt.getChild(i));
-            trees.pop();
+    protected void buildTree(TreeContext context, ParseTree root) {
+        TreeContext.Builder builder = context.builder(root.getSourceInterval().length());
+        // Nodes are processed with an explicit stack, since deep parse trees overflow the call stack.
+        // A node is closed when the marker pushed below its children is popped.
+        Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ParseTree pt = stack.pop();
+            if (pt == END_OF_NODE) {
+                builder.endNode();
+                continue;
+            }
+            Object payload = pt.getPayload(); //makeOrGetType();
+            Type type = null;
+            if (payload instanceof Token)
+                type = getTokenName(((Token)payload).getType());
+            else if (payload instanceof RuleContext)
+                type = getRuleName(((RuleContext)payload).getRuleIndex());
+
+            String label = pt.getText();
+            if (type.name.equals(label)) // FIXME
+                label = ITree.NO_LABEL;
+
+//            int start = startPos(pt.getSourceInterval().a);
+//            int stop = stopPos(pt.getSourceInterval().b);
+            int start = pt.getSourceInterval().a;
+            int stop = pt.getSourceInterval().b;
+            builder.startNode(type, label, start, stop - start + 1); // FIXME check if this + 1 make sense ?
+
+            stack.push(END_OF_NODE);
+            for (int i = pt.getChildCount() - 1; i >= 0; i--)
+                stack.push(pt.getChild(i));
         }
     }
 
@@ -20,8 +20,6 @@
 
 package com.github.gumtreediff.gen.jdt;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.List;
 
 import com.github.gumtreediff.gen.jdt.cd.EntityType;
@@ -39,14 +37,14 @@ public abstract class AbstractJdtVisitor extends ASTVisitor {
 
     protected TreeContext context = new TreeContext();
 
-    protected Deque<ITree> trees = new ArrayDeque<>();
+    protected TreeContext.Builder builder = context.builder();
 
     public AbstractJdtVisitor() {
         super(true);
     }
 
     public TreeContext getTreeContext() {
-        return context;
+        return builder.build();
     }
 
     protected void pushNode(ASTNode n, String label) {
@@ -59,27 +57,16 @@ public abstract class AbstractJdtVisitor extends ASTVisitor {
     }
 
     protected void push(ASTNode n, Type type, String label, int startPosition, int length) {
-        ITree t = context.createTree(type, label);
-        t.setPos(startPosition);
-        t.setLength(length);
-
-        if (trees.isEmpty())
-            context.setRoot(t);
-        else {
-            ITree parent = trees.peek();
-            t.setParentAndUpdateChildren(parent);
-        }
+        ITree t = builder.startNode(type, label, startPosition, length);
 
         if (n instanceof TypeDeclaration)
-            t.setMetadata("id", getId((TypeDeclaration) n));
+            t.setMetadata(MetadataKey.ID, getId((TypeDeclaration) n));
         else if (n instanceof MethodDeclaration)
-            t.setMetadata("id", getId((MethodDeclaration) n));
+            t.setMetadata(MetadataKey.ID, getId((MethodDeclaration) n));
         else if (n instanceof FieldDeclaration)
-            t.setMetadata("id", getId((FieldDeclaration) n));
+            t.setMetadata(MetadataKey.ID, getId((FieldDeclaration) n));
         else if (n instanceof EnumDeclaration)
-            t.setMetadata("id", getId((EnumDeclaration) n));
-
-        trees.push(t);
+            t.setMetadata(MetadataKey.ID, getId((EnumDeclaration) n));
     }
 
     private String getId(TypeDeclaration d) {
@@ -105,11 +92,15 @@ public abstract class AbstractJdtVisitor extends ASTVisitor {
     }
 
     protected ITree getCurrentParent() {
-        return trees.peek();
+        return builder.getCurrent();
     }
 
-    protected void popNode() {
-        trees.pop();
+    /**
+     * Closes the current node, which receives its children.
+     * @return the closed node.
+     */
+    protected ITree popNode() {
+        return builder.endNode();
     }
 
     protected static Type nodeAsSymbol(ASTNode node) {
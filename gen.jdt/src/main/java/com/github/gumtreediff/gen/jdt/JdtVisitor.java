@@ -118,24 +118,22 @@ public class JdtVisitor  extends AbstractJdtVisitor {
 
     @Override
     public void postVisit(ASTNode n) {
+        ITree t = popNode();
         if (n instanceof TypeDeclaration)
-            handlePostVisit((TypeDeclaration) n);
+            handlePostVisit((TypeDeclaration) n, t);
         else if (n instanceof InfixExpression)
-            handlePostVisit((InfixExpression) n);
+            handlePostVisit((InfixExpression) n, t);
         else if (n instanceof Assignment)
-            handlePostVisit((Assignment)  n);
+            handlePostVisit((Assignment)  n, t);
         else if (n instanceof PrefixExpression)
-            handlePostVisit((PrefixExpression) n);
+            handlePostVisit((PrefixExpression) n, t);
         else if (n instanceof PostfixExpression)
-            handlePostVisit((PostfixExpression) n);
+            handlePostVisit((PostfixExpression) n, t);
         else if (n instanceof ArrayCreation)
-            handlePostVisit((ArrayCreation) n);
-
-        popNode();
+            handlePostVisit((ArrayCreation) n, t);
     }
 
-    private void handlePostVisit(ArrayCreation c) {
-        ITree t = this.trees.peek();
+    private void handlePostVisit(ArrayCreation c, ITree t) {
         if (t.getChild(1).getType() == ARRAY_INITIALIZER)
             return;
         for (int i = 1; i < t.getChild(0).getChildren().size(); i++) {
@@ -147,19 +145,17 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         }
     }
 
-    private void handlePostVisit(PostfixExpression e) {
-        ITree t = this.trees.peek();
+    private void handlePostVisit(PostfixExpression e, ITree t) {
         String label  = e.getOperator().toString();
         ITree s = context.createTree(POSTFIX_EXPRESSION_OPERATOR, label);
-        PosAndLength pl = searchPostfixExpressionPosition(e);
+        PosAndLength pl = searchPostfixExpressionPosition(e, t);
         s.setPos(pl.pos);
         s.setLength(pl.length);
         t.getChildren().add(1, s);
         s.setParent(t);
     }
 
-    private PosAndLength searchPostfixExpressionPosition(PostfixExpression e) {
-        ITree t = this.trees.peek();
+    private PosAndLength searchPostfixExpressionPosition(PostfixExpression e, ITree t) {
         scanner.resetTo(t.getChild(0).getEndPos(), t.getEndPos());
         int pos = 0;
         int length = 0;
@@ -178,19 +174,17 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         return new PosAndLength(pos, length);
     }
 
-    private void handlePostVisit(PrefixExpression e) {
-        ITree t = this.trees.peek();
+    private void handlePostVisit(PrefixExpression e, ITree t) {
         String label  = e.getOperator().toString();
         ITree s = context.createTree(PREFIX_EXPRESSION_OPERATOR, label);
-        PosAndLength pl = searchPrefixExpressionPosition(e);
+        PosAndLength pl = searchPrefixExpressionPosition(e, t);
         s.setPos(pl.pos);
         s.setLength(pl.length);
         t.getChildren().add(0, s);
         s.setParent(t);
     }
 
-    private PosAndLength searchPrefixExpressionPosition(PrefixExpression e) {
-        ITree t = this.trees.peek();
+    private PosAndLength searchPrefixExpressionPosition(PrefixExpression e, ITree t) {
         scanner.resetTo(t.getPos(), t.getChild(0).getPos());
         int pos = 0;
         int length = 0;
@@ -209,19 +203,17 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         return new PosAndLength(pos, length);
     }
 
-    private void handlePostVisit(Assignment a) {
-        ITree t = this.trees.peek();
+    private void handlePostVisit(Assignment a, ITree t) {
         String label  = a.getOperator().toString();
         ITree s = context.createTree(ASSIGNMENT_OPERATOR, label);
-        PosAndLength pl = searchAssignmentOperatorPosition(a);
+        PosAndLength pl = searchAssignmentOperatorPosition(a, t);
         s.setPos(pl.pos);
         s.setLength(pl.length);
         t.getChildren().add(1, s);
         s.setParent(t);
     }
 
-    private PosAndLength searchAssignmentOperatorPosition(Assignment a) {
-        ITree t = this.trees.peek();
+    private PosAndLength searchAssignmentOperatorPosition(Assignment a, ITree t) {
         scanner.resetTo(t.getChild(0).getEndPos(), t.getChild(1).getPos());
         int pos = 0;
         int length = 0;
@@ -240,19 +232,17 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         return new PosAndLength(pos, length);
     }
 
-    private void handlePostVisit(InfixExpression e) {
-        ITree t = this.trees.peek();
+    private void handlePostVisit(InfixExpression e, ITree t) {
         String label  = e.getOperator().toString();
         ITree s = context.createTree(INFIX_EXPRESSION_OPERATOR, label);
-        PosAndLength pl = searchInfixOperatorPosition(e);
+        PosAndLength pl = searchInfixOperatorPosition(e, t);
         s.setPos(pl.pos);
         s.setLength(pl.length);
         t.getChildren().add(1, s);
         s.setParent(t);
     }
 
-    private PosAndLength searchInfixOperatorPosition(InfixExpression e) {
-        ITree t = this.trees.peek();
+    private PosAndLength searchInfixOperatorPosition(InfixExpression e, ITree t) {
         scanner.resetTo(t.getChild(0).getEndPos(), t.getChild(1).getPos());
         int pos = 0;
         int length = 0;
@@ -271,7 +261,7 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         return new PosAndLength(pos, length);
     }
 
-    private void handlePostVisit(TypeDeclaration d) {
+    private void handlePostVisit(TypeDeclaration d, ITree t) {
         String label = "class";
         if (d.isInterface())
             label = "interface";
@@ -281,7 +271,6 @@ public class JdtVisitor  extends AbstractJdtVisitor {
         s.setPos(pl.pos);
         s.setLength(pl.length);
         int index = 0;
-        ITree t = this.trees.peek();
         for (ITree c : t.getChildren()) {
             if (c.getType() != SIMPLE_NAME)
                 index++;
@@ -24,7 +24,6 @@ import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.Registry;
 import com.github.gumtreediff.gen.SyntaxException;
 import com.github.gumtreediff.gen.TreeGenerator;
-import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.Type;
 import com.github.gumtreediff.tree.TreeContext;
 import org.jrubyparser.CompatVersion;
@@ -34,6 +33,9 @@ import org.jrubyparser.parser.ParserConfiguration;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 
 import static com.github.gumtreediff.tree.TypeSet.type;
 
@@ -47,7 +49,7 @@ public class RubyTreeGenerator extends TreeGenerator {
         ParserConfiguration config = new ParserConfiguration(0, version);
         try {
             Node n = p.parse("<code>", r, config);
-            return extractTreeContext(new TreeContext(), n, null);
+            return extractTreeContext(new TreeContext(), n);
         }
         catch (org.jrubyparser.lexer.SyntaxException e) {
             throw new SyntaxException(
@@ -57,24 +59,33 @@ public class RubyTreeGenerator extends TreeGenerator {
         }
     }
 
-    private TreeContext extractTreeContext(TreeContext treeContext, Node node, ITree parent) {
+    private TreeContext extractTreeContext(TreeContext treeContext, Node root) {
+        TreeContext.Builder builder = treeContext.builder();
+        // Nodes are processed with an explicit stack, since deep Ruby ASTs overflow the call stack.
+        Deque<Iterator<Node>> stack = new ArrayDeque<>();
+        startNode(builder, root);
+        stack.push(root.childNodes().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Node> children = stack.peek();
+            if (children.hasNext()) {
+                Node node = children.next();
+                startNode(builder, node);
+                stack.push(node.childNodes().iterator());
+            } else {
+                stack.pop();
+                builder.endNode();
+            }
+        }
+
+        return treeContext;
+    }
+
+    private static void startNode(TreeContext.Builder builder, Node node) {
         Type type = type(node.getNodeType().name());
         String label = extractLabel(node);
-        ITree tree = treeContext.createTree(type, label);
-        if (parent == null)
-            treeContext.setRoot(tree);
-        else
-            tree.setParentAndUpdateChildren(parent);
-
         int pos = node.getPosition().getStartOffset();
         int length = node.getPosition().getEndOffset() - node.getPosition().getStartOffset();
-        tree.setPos(pos);
-        tree.setLength(length);
-
-        for (Node childNode: node.childNodes())
-            extractTreeContext(treeContext, childNode, tree);
-
-        return treeContext;
+        builder.startNode(type, label, pos, length);
     }
 
     private static String extractLabel(Node node) {
@@ -70,7 +70,7 @@ public abstract class AbstractSrcmlTreeGenerator extends ExternalProcessTreeGene
         context = new TreeContext();
         currentLabel = new StringBuilder();
         try {
-            ArrayDeque<ITree> trees = new ArrayDeque<>();
+            TreeContext.Builder builder = context.builder();
             XMLEventReader r = fact.createXMLEventReader(new StringReader(xml));
             while (r.hasNext()) {
                 XMLEvent ev = r.nextEvent();
@@ -78,33 +78,26 @@ public abstract class AbstractSrcmlTreeGenerator extends ExternalProcessTreeGene
                     StartElement s = ev.asStartElement();
                     Type type = type(s.getName().getLocalPart());
                     if (type.equals(position))
-                        setLength(trees.peekFirst(), s);
-                    else {
-                        ITree t = context.createTree(type, "");
-
-                        if (trees.isEmpty()) {
-                            context.setRoot(t);
-                            t.setPos(0);
-                        } else {
-                            t.setParentAndUpdateChildren(trees.peekFirst());
-                            setPos(t, s);
-                        }
-                        trees.addFirst(t);
-                    }
+                        setLength(builder.getCurrent(), s);
+                    else if (builder.getCurrent() == null)
+                        builder.startNode(type, "", 0, 0);
+                    else
+                        setPos(builder.startNode(type, "", 0, 0), s);
                 } else if (ev.isEndElement()) {
                     EndElement end = ev.asEndElement();
                     if (type(end.getName().getLocalPart()) != position) {
-                        if (isLabeled(trees))
-                            trees.peekFirst().setLabel(currentLabel.toString());
-                        trees.removeFirst();
+                        if (isLabeled(builder))
+                            builder.getCurrent().setLabel(currentLabel.toString());
+                        builder.endNode();
                         currentLabel = new StringBuilder();
                     }
                 } else if (ev.isCharacters()) {
                     Characters chars = ev.asCharacters();
-                    if (!chars.isWhiteSpace() && isLabeled(trees))
+                    if (!chars.isWhiteSpace() && isLabeled(builder))
                         currentLabel.append(chars.getData().trim());
                 }
             }
+            builder.build();
             fixPos(context);
             return context;
         } catch (Exception e) {
@@ -113,8 +106,8 @@ public abstract class AbstractSrcmlTreeGenerator extends ExternalProcessTreeGene
         return null;
     }
 
-    private boolean isLabeled(ArrayDeque<ITree> trees) {
-        return labeled.contains(trees.peekFirst().getType());
+    private boolean isLabeled(TreeContext.Builder builder) {
+        return labeled.contains(builder.getCurrent().getType());
     }
 
     private void fixPos(TreeContext ctx) {